@@ -0,0 +1,338 @@
+package graph;
+
+import ic.matrix.IMatrixCsr;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Базис циклов {@link SchemaGraph} минимальной (или близкой к минимальной) суммарной длины - алгоритм Хортона.
+ * <p>
+ * Фундаментальный базис обходом в ширину или в глубину ({@link SchemaGraphCycleBasis}) на сетях с большим количеством
+ * поперечных соединений дает длинные контуры: матрица K и произведение K&#215Z&#215K<sup>T</sup> становятся
+ * плотными. Здесь кандидаты - циклы <code>P(v, x) + (x, y) + P(y, v)</code>, где <code>P</code> - пути дерева
+ * кратчайших путей из вершины <code>v</code>, не имеющие общих вершин, кроме <code>v</code>. Кандидаты
+ * упорядочиваются по длине и жадно включаются в базис, если независимы от уже включенных (исключение Гаусса над
+ * GF(2); независимость над GF(2) влечет независимость над полем вещественных чисел, поэтому матрица контурных
+ * сопротивлений остается невырожденной). Длина цикла - количество ребер, так что минимизируется непосредственно
+ * количество ненулевых элементов K.
+ * </p>
+ * <p>
+ * Каждый цикл порождается только из своей вершины с наименьшим индексом (обход из <code>v</code> ограничен
+ * вершинами с индексами не меньше <code>v</code>), что вдвое в среднем сокращает количество кандидатов. Кандидаты
+ * длиннее самого длинного фундаментального цикла не строятся: жадно построенный минимальный базис не содержит
+ * циклов длиннее наибольшего цикла любого другого базиса. При совпадении длин кратчайших путей выбор пути зависит от
+ * порядка обхода, поэтому базис может быть не строго минимальным. Если кандидатов не хватило до полного ранга,
+ * базис дополняется независимыми фундаментальными циклами.
+ * </p>
+ * <p>
+ * Время построения кандидатов - <code>O(V&#183E)</code> в худшем случае. Строки базиса над GF(2) хранятся в
+ * разреженном виде. Если количество кандидатов превышает {@link #setMaxCandidates предел} или количество вершин либо
+ * ребер превышает 2<sup>21</sup>, возвращается фундаментальный базис.
+ * </p>
+ */
+public class HortonCycleBasis<V extends ICircuitNode, E extends ICircuitEdge>
+        implements CycleBasis<V, E, SchemaGraph<V, E>> {
+
+    private static final int BITS = 21;
+    private static final long MASK = (1L << BITS) - 1;
+    /** Предел количества кандидатов по умолчанию (128 МБ). */
+    public static final int DEFAULT_MAX_CANDIDATES = 1 << 24;
+
+    private SchemaGraph<?, ?> graph;
+    private final SchemaGraphCycleBasis<V, E> fundamental;
+    private IMatrixCsr fundamentalK;
+    /** Кандидаты: длина, корень и ребро, упакованные по {@link #BITS} бит. */
+    private long[] candidates = new long[0];
+    private int candidatesQty;
+    private int maxCandidates = DEFAULT_MAX_CANDIDATES;
+    private final DynamicIntArray dist = new DynamicIntArray(16);
+    private final DynamicIntArray branch = new DynamicIntArray(16);
+    private final DynamicIntArray order = new DynamicIntArray(16);
+    private final DynamicIntArray visited = new DynamicIntArray(16);
+    private final DynamicIntArray queue = new DynamicIntArray(16);
+    private ICircuitEdge[] parent = new ICircuitEdge[0];
+    private int mark;
+    /**
+     * Строки базиса над GF(2) в ступенчатом виде (номера столбцов единичных элементов) и номер строки для каждого
+     * ведущего столбца.
+     */
+    private final ArrayList<int[]> rows = new ArrayList<>();
+    private final DynamicIntArray pivots = new DynamicIntArray(16);
+    /** Приводимый вектор; вне {@link #isIndependent()} нулевой. */
+    private long[] vector = new long[0];
+    private final DynamicIntArray rowCols = new DynamicIntArray(16);
+    private final ArrayList<ICircuitEdge> left = new ArrayList<>(16);
+    private final ArrayList<ICircuitEdge> right = new ArrayList<>(16);
+
+    public HortonCycleBasis(SchemaGraph<V, E> graph) {
+        this.graph = graph;
+        this.fundamental = new SchemaGraphCycleBasis<>(graph);
+    }
+
+    /** Назначить граф для обработки. */
+    @Override
+    public void setGraph(@NotNull SchemaGraph<V, E> graph) {
+        this.graph = graph;
+        fundamental.setGraph(graph);
+    }
+
+    /**
+     * Предел количества кандидатов (память - 8 байт на кандидата). При превышении возвращается фундаментальный
+     * базис.
+     */
+    public void setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Найти базис циклов (см. описание класса) и сохранить в форме матрицы независимых контуров. Контуры
+     * упорядочены по неубыванию длины.
+     * @param traversing способ обхода графа для фундаментальных циклов, которыми базис дополняется при
+     *                   необходимости (см. описание класса).
+     */
+    @Override
+    @NotNull
+    public IMatrixCsr getCycles(@Nullable IMatrixCsr dest, Traversing traversing) {
+        fundamentalK = fundamental.getCycles(fundamentalK, traversing);
+        int rank = fundamentalK.numRows();
+        int vCnt = graph.getVertices().size();
+        int eCnt = graph.getEdges().size();
+        if (dest == null) {
+            dest = new IMatrixCsr(eCnt);
+        } else {
+            dest.reset(eCnt);
+        }
+        if (vCnt > MASK || eCnt > MASK) {
+            fundamentalK.copyTo(dest);
+            return dest;
+        }
+        init(vCnt, eCnt);
+        if (rank == 0) {
+            return dest;
+        }
+        int maxLen = 0;
+        for (int i = 0; i < rank; i++) {
+            maxLen = Math.max(maxLen, fundamentalK.end(i) - fundamentalK.begin(i));
+        }
+        for (int v = 0; v < vCnt; v++) {
+            if (!collectCandidates(v, bfs(v, maxLen / 2), maxLen)) {
+                fundamentalK.copyTo(dest);
+                return dest;
+            }
+        }
+        Arrays.sort(candidates, 0, candidatesQty);
+        int curLen = -1;
+        int curRoot = -1;
+        for (int k = 0; k < candidatesQty && rows.size() < rank; k++) {
+            long c = candidates[k];
+            int len = (int) (c >>> (2 * BITS));
+            int root = (int) ((c >>> BITS) & MASK);
+            ICircuitEdge e = graph.getEdges().get((int) (c & MASK));
+            if (len != curLen || root != curRoot) {
+                /* Вершины кандидатов длины len удалены от корня не более чем на len / 2. */
+                bfs(root, len / 2);
+                curLen = len;
+                curRoot = root;
+            }
+            collectPath(e);
+            if (isIndependent()) {
+                appendCycle(dest, graph.getVertices().get(root), e);
+            }
+        }
+        for (int i = 0; i < fundamentalK.numRows() && rows.size() < rank; i++) {
+            for (int k = fundamentalK.begin(i); k < fundamentalK.end(i); k++) {
+                int col = fundamentalK.col(k);
+                vector[col >>> 6] |= 1L << col;
+            }
+            if (isIndependent()) {
+                dest.addRow();
+                for (int k = fundamentalK.begin(i); k < fundamentalK.end(i); k++) {
+                    dest.append(fundamentalK.col(k), fundamentalK.value(k));
+                }
+            }
+        }
+        return dest;
+    }
+
+    private void init(int vCnt, int eCnt) {
+        dist.setSize(vCnt);
+        branch.setSize(vCnt);
+        order.setSize(vCnt);
+        visited.setSize(vCnt);
+        queue.setSize(vCnt);
+        Arrays.fill(visited.getData(), 0, vCnt, 0);
+        mark = 0;
+        if (parent.length < vCnt) {
+            parent = new ICircuitEdge[vCnt];
+        }
+        candidatesQty = 0;
+        rows.clear();
+        pivots.setSize(eCnt);
+        Arrays.fill(pivots.getData(), 0, eCnt, -1);
+        vector = new long[(eCnt + 63) >>> 6];
+    }
+
+    /**
+     * Обход в ширину из <code>root</code> по вершинам с индексами не меньше <code>root</code> на глубину не более
+     * <code>depth</code>. Обход детерминирован: ограничение глубины не меняет дерево в пределах этой глубины.
+     * @return количество посещенных вершин (они - в начале <code>queue</code> в порядке посещения).
+     */
+    private int bfs(int root, int depth) {
+        int[] q = queue.getData();
+        int head = 0;
+        int tail = 0;
+        mark++;
+        visited.set(root, mark);
+        dist.set(root, 0);
+        branch.set(root, -1);
+        order.set(root, 0);
+        parent[root] = null;
+        q[tail++] = root;
+        while (head < tail) {
+            int vi = q[head++];
+            int d = dist.get(vi);
+            if (d == depth) {
+                continue;
+            }
+            ICircuitNode v = graph.getVertices().get(vi);
+            for (int j = graph.getLoi().begin(vi); j < graph.getLoi().end(vi); j++) {
+                ICircuitEdge e = graph.getLoi().get(j);
+                int ui = oppositeVertex(v, e).getIndex();
+                if (ui > root && visited.get(ui) != mark) {
+                    visited.set(ui, mark);
+                    dist.set(ui, d + 1);
+                    branch.set(ui, vi == root ? ui : branch.get(vi));
+                    order.set(ui, tail);
+                    parent[ui] = e;
+                    q[tail++] = ui;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Записать кандидатов с корнем <code>root</code> длиной не более <code>maxLen</code> по дереву последнего обхода.
+     * @return <code>false</code>, если превышен {@link #setMaxCandidates предел} количества кандидатов.
+     */
+    private boolean collectCandidates(int root, int visitedQty, int maxLen) {
+        int[] q = queue.getData();
+        for (int i = 0; i < visitedQty; i++) {
+            int xi = q[i];
+            ICircuitNode x = graph.getVertices().get(xi);
+            for (int j = graph.getLoi().begin(xi); j < graph.getLoi().end(xi); j++) {
+                ICircuitEdge e = graph.getLoi().get(j);
+                int yi = oppositeVertex(x, e).getIndex();
+                /* Каждое ребро - один раз: со стороны вершины, посещенной раньше. */
+                if (visited.get(yi) != mark || order.get(yi) <= order.get(xi)
+                        || parent[yi] == e || branch.get(xi) == branch.get(yi)) {
+                    continue;
+                }
+                long len = dist.get(xi) + dist.get(yi) + 1;
+                if (len > maxLen) {
+                    continue;
+                }
+                if (candidatesQty == maxCandidates) {
+                    return false;
+                }
+                if (candidatesQty == candidates.length) {
+                    int capacity = (int) Math.min(maxCandidates, Math.max(64, 2L * candidates.length));
+                    candidates = Arrays.copyOf(candidates, capacity);
+                }
+                candidates[candidatesQty++] = (len << (2 * BITS)) | ((long) root << BITS) | e.getIndex();
+            }
+        }
+        return true;
+    }
+
+    /** Собрать пути от концов <code>e</code> к корню в <code>left</code> и <code>right</code> и вектор цикла. */
+    private void collectPath(ICircuitEdge e) {
+        setBit(e);
+        left.clear();
+        right.clear();
+        walkToRoot(e.getSourceNode(), left);
+        walkToRoot(e.getTargetNode(), right);
+    }
+
+    private void walkToRoot(ICircuitNode v, ArrayList<ICircuitEdge> path) {
+        for (ICircuitEdge pe = parent[v.getIndex()]; pe != null; pe = parent[v.getIndex()]) {
+            path.add(pe);
+            setBit(pe);
+            v = oppositeVertex(v, pe);
+        }
+    }
+
+    private void setBit(ICircuitEdge e) {
+        int i = e.getIndex();
+        vector[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Привести <code>vector</code> по строкам базиса. Если остаток ненулевой, он добавляется в базис. В любом случае
+     * <code>vector</code> обнуляется.
+     * @return <code>true</code>, если вектор не зависит от строк базиса.
+     */
+    private boolean isIndependent() {
+        for (int w = vector.length - 1; w >= 0; w--) {
+            while (vector[w] != 0) {
+                int col = (w << 6) + 63 - Long.numberOfLeadingZeros(vector[w]);
+                int row = pivots.get(col);
+                if (row < 0) {
+                    pivots.set(col, rows.size());
+                    rows.add(extractRow(w));
+                    return true;
+                }
+                for (int c : rows.get(row)) {
+                    vector[c >>> 6] ^= 1L << c;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Номера единичных столбцов <code>vector</code> (в словах <code>[0, w]</code>); <code>vector</code> обнуляется. */
+    private int[] extractRow(int w) {
+        rowCols.setSize(0);
+        for (; w >= 0; w--) {
+            long bits = vector[w];
+            while (bits != 0) {
+                int b = 63 - Long.numberOfLeadingZeros(bits);
+                rowCols.append((w << 6) + b);
+                bits &= ~(1L << b);
+            }
+            vector[w] = 0;
+        }
+        return Arrays.copyOf(rowCols.getData(), rowCols.getSize());
+    }
+
+    /** Добавить строку цикла: путь от корня к началу <code>e</code>, ребро <code>e</code>, путь от его конца к корню. */
+    private void appendCycle(IMatrixCsr dest, ICircuitNode root, ICircuitEdge e) {
+        dest.addRow();
+        for (int i = left.size() - 1; i >= 0; i--) {
+            root = appendEdge(dest, left.get(i), root);
+        }
+        root = appendEdge(dest, e, root);
+        for (ICircuitEdge pe : right) {
+            root = appendEdge(dest, pe, root);
+        }
+    }
+
+    private static ICircuitNode appendEdge(IMatrixCsr dest, ICircuitEdge e, ICircuitNode root) {
+        ICircuitNode src = e.getSourceNode();
+        if (src == root) {
+            dest.append(e.getIndex(), 1);
+            return e.getTargetNode();
+        }
+        dest.append(e.getIndex(), -1);
+        return src;
+    }
+
+    private static ICircuitNode oppositeVertex(ICircuitNode v, ICircuitEdge e) {
+        ICircuitNode src = e.getSourceNode();
+        return (v == src) ? e.getTargetNode() : src;
+    }
+}
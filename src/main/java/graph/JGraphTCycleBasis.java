@@ -33,7 +33,6 @@ public class JGraphTCycleBasis<V extends ICircuitNode, E extends ICircuitEdge>
         Set<List<E>> cycles = basis.getCycleBasis().getCycles();
         for (List<E> c : cycles) {
             dest.addRow();
-            var idx = dest.last(dest.rows);
             ICircuitEdge e1 = c.get(0);
             ICircuitEdge e2 = c.get(1);
             ICircuitNode src1 = e1.getSourceNode();
@@ -41,8 +40,6 @@ public class JGraphTCycleBasis<V extends ICircuitNode, E extends ICircuitEdge>
             ICircuitNode tgt1 = e1.getTargetNode();
             ICircuitNode tgt2 = e2.getTargetNode();
             ICircuitNode begin = (tgt1 == src2 || tgt1 == tgt2) ? src1 : tgt1;
-            dest.cols.setSize(dest.cols.getSize() + c.size());
-            dest.data.setSize(dest.data.getSize() + c.size());
             for (ICircuitEdge e : c) {
                 ICircuitNode src = e.getSourceNode();
                 ICircuitNode tgt = e.getTargetNode();
@@ -54,10 +51,8 @@ public class JGraphTCycleBasis<V extends ICircuitNode, E extends ICircuitEdge>
                     begin = src;
                     value = -1;
                 }
-                dest.cols.set(idx, e.getIndex());
-                dest.data.set(idx++, value);
+                dest.append(e.getIndex(), value);
             }
-            dest.incLast(dest.rows, c.size());
         }
         return dest;
     }
@@ -0,0 +1,406 @@
+package graph;
+
+import ic.matrix.IMatrixCsr;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jgrapht.alg.interfaces.PlanarityTestingAlgorithm;
+import org.jgrapht.alg.planar.BoyerMyrvoldPlanarityInspector;
+import org.jgrapht.graph.SimpleGraph;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Базис циклов {@link SchemaGraph} из граней плоской укладки.
+ * <p>
+ * Схемы, нарисованные вдоль линии, как правило, планарны. Границы граней плоской укладки без одной грани в каждой
+ * компоненте связности образуют базис циклов, причем контур грани имеет общие ребра только с контурами соседних
+ * граней: матрица K&#215Z&#215K<sup>T</sup> получается ленточно-разреженной. Исключить можно любую одну грань
+ * каждой компоненты; исключается самая длинная. Укладка строится алгоритмом Бойера - Мирволда
+ * ({@link BoyerMyrvoldPlanarityInspector}) для графа без кратных ребер и петель; каждое кратное ребро дает
+ * отдельный контур из двух ребер (двуугольник), петля - контур из одного ребра. Грани обходятся по системе
+ * вращений: из вершины, в которую привела дуга, выходит следующее по порядку укладки ребро. Ребро, пройденное
+ * гранью в обоих направлениях (мост), в ее контур не входит.
+ * </p>
+ * <p>
+ * Граф, не являющийся 3-связным, имеет несколько плоских укладок, и длины граней зависят от выбранной: например,
+ * перемычка двухпутного участка может оказаться по другую сторону от соседнего пути, и две соседние грани
+ * объединятся в одну. Поэтому контуры граней затем укорачиваются: контур заменяется суммой (разностью) с контуром,
+ * имеющим с ним общие ребра, если сумма короче. Такая замена - унимодулярное преобразование и сохраняет базис.
+ * </p>
+ * <p>
+ * Если граф не планарен, строится фундаментальный базис ({@link SchemaGraphCycleBasis}) с указанным способом
+ * обхода; результат проверки доступен через {@link #isPlanar()}.
+ * </p>
+ * <p>
+ * Укладка и результат проверки планарности зависят только от топологии и сохраняются между вызовами
+ * {@link #getCycles}: пока количество вершин и концы ребер не изменились, укладка заново не строится.
+ * </p>
+ */
+public class PlanarCycleBasis<V extends ICircuitNode, E extends ICircuitEdge>
+        implements CycleBasis<V, E, SchemaGraph<V, E>> {
+
+    private SchemaGraph<?, ?> graph;
+    private final SchemaGraphCycleBasis<V, E> fundamental;
+    private boolean planar;
+    /** Построена ли укладка для графа, концы ребер которого - в {@link #embeddedEnds}. */
+    private boolean embedded;
+    private int embeddedVertices;
+    /** Начало (<code>2e</code>) и конец (<code>2e + 1</code>) каждого ребра при построении укладки. */
+    private final DynamicIntArray embeddedEnds = new DynamicIntArray(16);
+    /** Для каждого ребра - ребро укладки с теми же концами (-1 для петли). */
+    private final DynamicIntArray representatives = new DynamicIntArray(16);
+    /** Контуры всех граней и компонента связности каждой грани. */
+    private final IMatrixCsr faces = new IMatrixCsr(0);
+    private final DynamicIntArray faceComponents = new DynamicIntArray(16);
+    /** Для каждой компоненты связности - номер исключаемой грани. */
+    private final DynamicIntArray dropped = new DynamicIntArray(16);
+    private final DynamicIntArray components = new DynamicIntArray(16);
+    /** Система вращений в формате CSR: ребра вокруг каждой вершины в порядке укладки. */
+    private final DynamicIntArray rotBegins = new DynamicIntArray(16);
+    private final DynamicIntArray rotEdges = new DynamicIntArray(16);
+    /** Позиция ребра в списке вращения его начала (<code>2e</code>) и конца (<code>2e + 1</code>). */
+    private final DynamicIntArray positions = new DynamicIntArray(16);
+    /** Пройденные дуги: <code>2e</code> - по направлению ребра, <code>2e + 1</code> - против. */
+    private final DynamicIntArray visitedDarts = new DynamicIntArray(16);
+    private final DynamicIntArray coefs = new DynamicIntArray(16);
+    private final DynamicIntArray walk = new DynamicIntArray(16);
+    /** Контуры при укорачивании: индексы ребер, <code>~e</code> для обратного направления. */
+    private final ArrayList<int[]> loops = new ArrayList<>();
+    private final DynamicIntArray loopBegins = new DynamicIntArray(16);
+    private final DynamicIntArray loopIndices = new DynamicIntArray(16);
+    private final DynamicIntArray combined = new DynamicIntArray(16);
+
+    public PlanarCycleBasis(SchemaGraph<V, E> graph) {
+        this.graph = graph;
+        this.fundamental = new SchemaGraphCycleBasis<>(graph);
+    }
+
+    /** Назначить граф для обработки. */
+    @Override
+    public void setGraph(@NotNull SchemaGraph<V, E> graph) {
+        this.graph = graph;
+        fundamental.setGraph(graph);
+        embedded = false;
+    }
+
+    /** Был ли планарным граф при последнем вызове {@link #getCycles}. */
+    public boolean isPlanar() {
+        return planar;
+    }
+
+    /**
+     * Найти контуры граней плоской укладки (см. описание класса) и сохранить в форме матрицы независимых контуров.
+     * @param traversing способ обхода графа для фундаментального базиса, если граф не планарен.
+     */
+    @Override
+    @NotNull
+    public IMatrixCsr getCycles(@Nullable IMatrixCsr dest, Traversing traversing) {
+        int vCnt = graph.getVertices().size();
+        int eCnt = graph.getEdges().size();
+        if (!embedded || !sameTopology(vCnt, eCnt)) {
+            embed(vCnt, eCnt);
+        }
+        if (!planar) {
+            return fundamental.getCycles(dest, traversing);
+        }
+        if (dest == null) {
+            dest = new IMatrixCsr(eCnt);
+        } else {
+            dest.reset(eCnt);
+        }
+        findComponents(vCnt);
+        traceFaces(eCnt);
+        loops.clear();
+        for (int f = 0; f < faces.numRows(); f++) {
+            if (dropped.get(faceComponents.get(f)) != f && faces.end(f) > faces.begin(f)) {
+                int[] loop = new int[faces.end(f) - faces.begin(f)];
+                for (int k = faces.begin(f); k < faces.end(f); k++) {
+                    loop[k - faces.begin(f)] = faces.value(k) < 0 ? ~faces.col(k) : faces.col(k);
+                }
+                loops.add(loop);
+            }
+        }
+        shorten(eCnt);
+        for (int[] loop : loops) {
+            dest.addRow();
+            for (int c : loop) {
+                dest.append(c ^ (c >> 31), (c >> 31) | 1);
+            }
+        }
+        appendParallelEdges(dest);
+        return dest;
+    }
+
+    /** Совпадает ли топология графа с топологией, для которой построена укладка. */
+    private boolean sameTopology(int vCnt, int eCnt) {
+        if (vCnt != embeddedVertices || 2 * eCnt != embeddedEnds.getSize()) {
+            return false;
+        }
+        int[] ends = embeddedEnds.getData();
+        for (ICircuitEdge e : graph.getEdges()) {
+            int i = e.getIndex();
+            if (ends[2 * i] != e.getSourceNode().getIndex() || ends[2 * i + 1] != e.getTargetNode().getIndex()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Проверить планарность и построить систему вращений для графа без кратных ребер и петель. */
+    private void embed(int vCnt, int eCnt) {
+        SimpleGraph<Integer, Integer> simple = new SimpleGraph<>(null, null, false);
+        for (int v = 0; v < vCnt; v++) {
+            simple.addVertex(v);
+        }
+        embeddedEnds.setSize(2 * eCnt);
+        representatives.setSize(eCnt);
+        for (ICircuitEdge e : graph.getEdges()) {
+            int src = e.getSourceNode().getIndex();
+            int tgt = e.getTargetNode().getIndex();
+            embeddedEnds.set(2 * e.getIndex(), src);
+            embeddedEnds.set(2 * e.getIndex() + 1, tgt);
+            if (src == tgt) {
+                representatives.set(e.getIndex(), -1);
+            } else if (simple.containsEdge(src, tgt)) {
+                representatives.set(e.getIndex(), simple.getEdge(src, tgt));
+            } else {
+                simple.addEdge(src, tgt, e.getIndex());
+                representatives.set(e.getIndex(), e.getIndex());
+            }
+        }
+        BoyerMyrvoldPlanarityInspector<Integer, Integer> inspector = new BoyerMyrvoldPlanarityInspector<>(simple);
+        planar = inspector.isPlanar();
+        if (planar) {
+            buildRotations(inspector.getEmbedding(), vCnt, eCnt);
+        }
+        embeddedVertices = vCnt;
+        embedded = true;
+    }
+
+    private void buildRotations(PlanarityTestingAlgorithm.Embedding<Integer, Integer> embedding, int vCnt, int eCnt) {
+        rotBegins.setSize(0);
+        rotEdges.setSize(0);
+        positions.setSize(2 * eCnt);
+        for (int v = 0; v < vCnt; v++) {
+            rotBegins.append(rotEdges.getSize());
+            List<Integer> around = embedding.getEdgesAround(v);
+            for (int i = 0; i < around.size(); i++) {
+                int e = around.get(i);
+                boolean isSource = graph.getEdges().get(e).getSourceNode().getIndex() == v;
+                positions.set(2 * e + (isSource ? 0 : 1), i);
+                rotEdges.append(e);
+            }
+        }
+        rotBegins.append(rotEdges.getSize());
+    }
+
+    /** Компоненты связности (система непересекающихся множеств по ребрам укладки). */
+    private void findComponents(int vCnt) {
+        components.setSize(vCnt);
+        int[] c = components.getData();
+        for (int v = 0; v < vCnt; v++) {
+            c[v] = v;
+        }
+        for (int k = 0; k < rotEdges.getSize(); k++) {
+            ICircuitEdge e = graph.getEdges().get(rotEdges.get(k));
+            int a = find(e.getSourceNode().getIndex());
+            int b = find(e.getTargetNode().getIndex());
+            if (a != b) {
+                c[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        for (int v = 0; v < vCnt; v++) {
+            c[v] = find(v);
+        }
+    }
+
+    private int find(int v) {
+        int[] c = components.getData();
+        while (c[v] != v) {
+            c[v] = c[c[v]];
+            v = c[v];
+        }
+        return v;
+    }
+
+    /**
+     * Обойти все грани. Дуга <code>(e, dir)</code> ведет в вершину <code>h</code>; следующая дуга грани выходит из
+     * <code>h</code> по ребру, следующему за <code>e</code> в списке вращения <code>h</code>.
+     */
+    private void traceFaces(int eCnt) {
+        faces.reset(eCnt);
+        faceComponents.setSize(0);
+        dropped.setSize(components.getSize());
+        Arrays.fill(dropped.getData(), 0, components.getSize(), -1);
+        visitedDarts.setSize(2 * eCnt);
+        Arrays.fill(visitedDarts.getData(), 0, 2 * eCnt, 0);
+        coefs.setSize(eCnt);
+        Arrays.fill(coefs.getData(), 0, eCnt, 0);
+        for (int k = 0; k < rotEdges.getSize(); k++) {
+            int start = 2 * rotEdges.get(k);
+            for (int d0 = start; d0 <= start + 1; d0++) {
+                if (visitedDarts.get(d0) != 0) {
+                    continue;
+                }
+                walk.setSize(0);
+                int d = d0;
+                do {
+                    visitedDarts.set(d, 1);
+                    int e = d >> 1;
+                    boolean forward = (d & 1) == 0;
+                    ICircuitEdge edge = graph.getEdges().get(e);
+                    if (coefs.get(e) == 0) {
+                        walk.append(e);
+                    }
+                    coefs.set(e, coefs.get(e) + (forward ? 1 : -1));
+                    int h = (forward ? edge.getTargetNode() : edge.getSourceNode()).getIndex();
+                    int begin = rotBegins.get(h);
+                    int deg = rotBegins.get(h + 1) - begin;
+                    int p = positions.get(2 * e + (forward ? 1 : 0));
+                    int next = rotEdges.get(begin + (p + 1) % deg);
+                    d = 2 * next + (graph.getEdges().get(next).getSourceNode().getIndex() == h ? 0 : 1);
+                } while (d != d0);
+                int face = faces.numRows();
+                int component = components.get(graph.getEdges().get(d0 >> 1).getSourceNode().getIndex());
+                faces.addRow();
+                for (int i = 0; i < walk.getSize(); i++) {
+                    int e = walk.get(i);
+                    if (coefs.get(e) != 0) {
+                        faces.append(e, coefs.get(e));
+                        coefs.set(e, 0);
+                    }
+                }
+                faceComponents.append(component);
+                int longest = dropped.get(component);
+                if (longest < 0 || faces.end(face) - faces.begin(face) > faces.end(longest) - faces.begin(longest)) {
+                    dropped.set(component, face);
+                }
+            }
+        }
+    }
+
+    /**
+     * Заменять контуры их суммами (разностями) с контурами, имеющими общие ребра, пока это сокращает количество
+     * ненулевых элементов. Каждая замена строго уменьшает nnz, поэтому процесс конечен.
+     */
+    private void shorten(int eCnt) {
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            indexLoops(eCnt);
+            for (int i = 0; i < loops.size(); i++) {
+                int[] loop = loops.get(i);
+                search:
+                for (int c : loop) {
+                    int e = c ^ (c >> 31);
+                    for (int k = loopBegins.get(e); k < loopBegins.get(e + 1); k++) {
+                        int j = loopIndices.get(k);
+                        if (j != i && combine(loop, loops.get(j))) {
+                            loops.set(i, Arrays.copyOf(combined.getData(), combined.getSize()));
+                            improved = true;
+                            break search;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Построить списки контуров, содержащих каждое ребро (формат CSR). */
+    private void indexLoops(int eCnt) {
+        loopBegins.setSize(eCnt + 1);
+        int[] b = loopBegins.getData();
+        Arrays.fill(b, 0, eCnt + 1, 0);
+        for (int[] loop : loops) {
+            for (int c : loop) {
+                b[(c ^ (c >> 31)) + 1]++;
+            }
+        }
+        for (int e = 0; e < eCnt; e++) {
+            b[e + 1] += b[e];
+        }
+        loopIndices.setSize(b[eCnt]);
+        for (int i = 0; i < loops.size(); i++) {
+            for (int c : loops.get(i)) {
+                loopIndices.set(b[c ^ (c >> 31)]++, i);
+            }
+        }
+        for (int e = eCnt; e > 0; e--) {
+            b[e] = b[e - 1];
+        }
+        b[0] = 0;
+    }
+
+    /**
+     * <code>combined = a + s&#215b</code>, где знак <code>s</code> выбран так, чтобы общие ребра взаимно
+     * уничтожились.
+     * @return <code>true</code>, если все общие ребра уничтожились и результат короче <code>a</code>.
+     */
+    private boolean combine(int[] a, int[] b) {
+        int[] coef = coefs.getData();
+        for (int c : a) {
+            coef[c ^ (c >> 31)] = (c >> 31) | 1;
+        }
+        int s = 0;
+        int common = 0;
+        boolean valid = true;
+        for (int c : b) {
+            int e = c ^ (c >> 31);
+            int v = (c >> 31) | 1;
+            if (coef[e] != 0) {
+                if (s == 0) {
+                    s = -coef[e] * v;
+                }
+                valid &= coef[e] + s * v == 0;
+                common++;
+            }
+        }
+        boolean shorter = valid && a.length + b.length - 2 * common < a.length;
+        combined.setSize(0);
+        if (shorter) {
+            for (int c : b) {
+                int e = c ^ (c >> 31);
+                coef[e] += s * ((c >> 31) | 1);
+            }
+            for (int c : a) {
+                appendCombined(c ^ (c >> 31), coef);
+            }
+            for (int c : b) {
+                appendCombined(c ^ (c >> 31), coef);
+            }
+        } else {
+            for (int c : a) {
+                coef[c ^ (c >> 31)] = 0;
+            }
+        }
+        return shorter;
+    }
+
+    private void appendCombined(int e, int[] coef) {
+        if (coef[e] != 0) {
+            combined.append(coef[e] < 0 ? ~e : e);
+            coef[e] = 0;
+        }
+    }
+
+    /** Контуры кратных ребер (с ребром, вошедшим в укладку) и петель. */
+    private void appendParallelEdges(IMatrixCsr dest) {
+        for (ICircuitEdge e : graph.getEdges()) {
+            int representative = representatives.get(e.getIndex());
+            if (representative < 0) {
+                dest.addRow();
+                dest.append(e.getIndex(), 1);
+                continue;
+            }
+            if (representative != e.getIndex()) {
+                ICircuitEdge r = graph.getEdges().get(representative);
+                dest.addRow();
+                dest.append(representative, 1);
+                dest.append(e.getIndex(), r.getTargetNode() == e.getSourceNode() ? 1 : -1);
+            }
+        }
+    }
+}
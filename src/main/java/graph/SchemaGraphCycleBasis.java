@@ -1,6 +1,7 @@
 package graph;
 
 import ic.matrix.IMatrixCsr;
+import ic.matrix.ParallelRows;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
@@ -9,29 +10,82 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+/**
+ * Фундаментальный базис циклов {@link SchemaGraph} по остовному лесу, построенному обходом в ширину или в глубину.
+ * <p>
+ * После {@link #getCycles} остовный лес и соответствие хорд строкам матрицы контуров сохраняются, и базис можно
+ * изменять без повторного обхода графа ({@link #addEdge}, {@link #removeEdge}, {@link #splitEdge}): матрицы K и
+ * K<sup>T</sup> исправляются на месте за <code>O(nnz)</code> сдвигов массивов вместо построения заново. Так
+ * обрабатывается движение поездов: поезд делит ребро межподстанционной зоны новой вершиной, а его присоединение
+ * к другим путям добавляет или убирает хорды. Инкрементальные операции не читают списки инцидентности графа:
+ * новые вершины и ребра достаточно снабдить индексами и концами.
+ * </p>
+ * <p>
+ * Длины фундаментальных контуров, а значит и nnz(K), сильно зависят от корня остовного дерева. По умолчанию
+ * корень - первая вершина компоненты связности (обычно нулевой узел схемы переменного тока или конец линии);
+ * {@link Root#PSEUDO_CENTER} выбирает псевдоцентр компоненты ({@link #setRoot}).
+ * </p>
+ * <p>
+ * Компоненты связности независимы, поэтому схемы из многих компонент можно обходить параллельно
+ * ({@link #getCycles(IMatrixCsr, Traversing, ForkJoinPool)}) с тем же результатом.
+ * </p>
+ */
 public class SchemaGraphCycleBasis<V extends ICircuitNode, E extends ICircuitEdge>
         implements CycleBasis<V, E, SchemaGraph<V, E>> {
 
     private SchemaGraph<?, ?> graph;
     private ICircuitEdge[] spanningForest;
-    private final ArrayDeque<ICircuitNode> deque;
     private final DynamicIntArray tmpv;
+    /** Для хорды - номер ее контура (строки K), увеличенный на единицу; для ребра остова - 0. */
     private final DynamicIntArray tmpe;
-    private final ArrayList<ICircuitEdge> left = new ArrayList<>(16);
-    private final ArrayList<ICircuitEdge> right = new ArrayList<>(16);
-    private int mark;
+    private final DynamicIntArray insRows = new DynamicIntArray(16);
+    private final DynamicIntArray insPos = new DynamicIntArray(16);
+    private final DynamicIntArray insCols = new DynamicIntArray(16);
+    private final DynamicIntArray insValues = new DynamicIntArray(16);
+    /** Количество вершин, для которых определен остовный лес. */
+    private int verticesQty;
     private Traversing traversing = Traversing.QUEUE_BASED;
+    private Root root = Root.FIRST_VERTEX;
+    /** Расстояния от концов двух псевдодиаметров компоненты (см. {@link Root#PSEUDO_CENTER}). */
+    private final DynamicIntArray[] sweepDist = {
+            new DynamicIntArray(16), new DynamicIntArray(16), new DynamicIntArray(16), new DynamicIntArray(16)
+    };
+    /** Наибольшее количество обходов при поиске псевдопериферийной вершины. */
+    private static final int MAX_SWEEPS = 5;
+    /** Обход для последовательного построения и инкрементальных операций. */
+    private final Walker walker = new Walker();
+    /** Обходы участков компонент связности при параллельном построении. */
+    private final ArrayList<Walker> walkers = new ArrayList<>();
+    /** Система непересекающихся множеств вершин; корень множества - вершина компоненты с наименьшим индексом. */
+    private final DynamicIntArray componentParent = new DynamicIntArray(16);
+    /** Первые вершины компонент связности в порядке возрастания. */
+    private final DynamicIntArray components = new DynamicIntArray(16);
+    /** Трудоемкость обхода компонент: количество элементов списков инцидентности. */
+    private final DynamicIntArray componentCost = new DynamicIntArray(16);
+
+    /** Выбор корня остовного дерева в каждой компоненте связности. */
+    public enum Root {
+        /** Вершина компоненты с наименьшим индексом. */
+        FIRST_VERTEX,
+        /**
+         * Псевдоцентр: концы псевдодиаметра <code>u, w</code> находятся повторными обходами в ширину (George, Liu),
+         * концы второго псевдодиаметра <code>q, r</code> - обходами из вершины, ближайшей к <code>u</code> и
+         * <code>w</code>. Корнем становится вершина с наименьшим наибольшим расстоянием до <code>u, w, q, r</code>
+         * (на решетке - ее середина). Стоимость - до десяти обходов компоненты в ширину.
+         */
+        PSEUDO_CENTER
+    }
 
     public SchemaGraphCycleBasis(SchemaGraph<?, ?> graph) {
         this.graph = graph;
         spanningForest = new ICircuitEdge[graph.getVertices().size()];
-        deque = new ArrayDeque<>();
         tmpv = new DynamicIntArray(graph.getVertices().size());
         tmpe = new DynamicIntArray(graph.getEdges().size());
         tmpv.setSize(tmpv.getCapacity());
         tmpe.setSize(tmpe.getCapacity());
-        mark = 0;
     }
 
     /** Назначить граф для обработки. */
@@ -40,6 +94,11 @@ public class SchemaGraphCycleBasis<V extends ICircuitNode, E extends ICircuitEdg
         this.graph = graph;
     }
 
+    /** Назначить способ выбора корня остовного дерева (по умолчанию {@link Root#FIRST_VERTEX}). */
+    public void setRoot(@NotNull Root root) {
+        this.root = root;
+    }
+
     /**
      * @implNote Основные алгоритмические решения заимствованы из
      * <a href="https://jgrapht.org/javadoc-SNAPSHOT/org.jgrapht.core/org/jgrapht/alg/cycle/AbstractFundamentalCycleBasis.html">
@@ -53,35 +112,302 @@ public class SchemaGraphCycleBasis<V extends ICircuitNode, E extends ICircuitEdg
         dest = resetOrCreate(dest);
         for (int i = 0; i < graph.getVertices().size(); ++i) {
             if (spanningForest[i] == null) {
-                spanningForest[i] = NONE;
-                push(graph.getVertices().get(i));
+                walker.traverse(graph.getVertices().get(i), dest);
             }
-            while (!deque.isEmpty()) {
-                ICircuitNode v = pop();
-                int vi = v.getIndex();
-                ICircuitEdge ve = spanningForest[vi];
-                int begin = graph.getLoi().begin(vi);
-                int end = graph.getLoi().end(vi);
-                for (int j = begin; j < end; j++) {
-                    ICircuitEdge e = graph.getLoi().get(j);
-                    if (e != ve) {
-                        ICircuitNode ov = oppositeVertex(v, e);
-                        int ovi = ov.getIndex();
-                        if (spanningForest[ovi] == null) {
-                            spanningForest[ovi] = e;
-                            push(ov);
-                        } else if (tmpe.get(e.getIndex()) == 0) {
-                            tmpe.set(e.getIndex(), 1);
-                            ICircuitEdge el = spanningForest[ovi];
-                            makePath(ovi, el, e, dest);
-                        }
-                    }
+        }
+        return dest;
+    }
+
+    /**
+     * Построение базиса с параллельной обработкой компонент связности в <code>pool</code>. Компоненты выделяются
+     * предварительным проходом по спискам инцидентности и распределяются между участками по трудоемкости обхода;
+     * каждый участок обходит свои компоненты в отдельный буфер, после чего буферы дописываются в <code>dest</code> в
+     * порядке первых вершин компонент. Результат побитово совпадает с {@link #getCycles(IMatrixCsr, Traversing)},
+     * инкрементальные операции после него допустимы. Выигрыш есть только для графов из многих компонент (например,
+     * схем переменного тока нескольких фидерных зон); связный граф обходится в вызывающем потоке.
+     * @param pool Пул потоков.
+     */
+    @NotNull
+    public IMatrixCsr getCycles(@Nullable IMatrixCsr dest, Traversing traversing, @NotNull ForkJoinPool pool) {
+        init(traversing);
+        dest = resetOrCreate(dest);
+        labelComponents();
+        int n = components.getSize();
+        int[] bounds = ParallelRows.split(n, ParallelRows.chunks(pool, n), componentCost::get);
+        int chunks = bounds.length - 1;
+        if (chunks <= 1) {
+            for (int c = 0; c < n; c++) {
+                walker.traverse(graph.getVertices().get(components.get(c)), dest);
+            }
+            return dest;
+        }
+        while (walkers.size() < chunks) {
+            walkers.add(new Walker());
+        }
+        int vCnt = graph.getVertices().size();
+        boolean signed = dest.isSigned();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            Walker w = walkers.get(c);
+            w.reset(vCnt);
+            if (w.buffer == null || w.buffer.isSigned() != signed) {
+                w.buffer = new IMatrixCsr(tmpe.getSize(), signed);
+            } else {
+                w.buffer.reset(tmpe.getSize());
+            }
+            int from = bounds[c];
+            int to = bounds[c + 1];
+            tasks.add(ForkJoinTask.adapt(() -> {
+                for (int k = from; k < to; k++) {
+                    w.traverse(graph.getVertices().get(components.get(k)), w.buffer);
                 }
+            }));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        for (int c = 0; c < chunks; c++) {
+            Walker w = walkers.get(c);
+            int offset = dest.numRows();
+            for (int k = 0; k < w.chords.getSize(); k++) {
+                int ei = w.chords.get(k);
+                tmpe.set(ei, tmpe.get(ei) + offset);
             }
+            dest.appendRows(w.buffer);
+            /* Метки вершин всех участков должны быть меньше меток следующих инкрементальных операций. */
+            walker.mark = Math.max(walker.mark, w.mark);
         }
         return dest;
     }
 
+    /**
+     * Добавить ребро в базис, найденный последним вызовом {@link #getCycles}. Концы ребра - известные вершины либо
+     * новые (новая вершина становится корнем собственного дерева). Если концы принадлежат одному дереву остова,
+     * ребро становится хордой: в K добавляется строка его контура (ребро и путь по остову), в K<sup>T</sup> -
+     * последний столбец. Иначе ребро объединяет два дерева и контуров не добавляет.
+     * @param e  Ребро с индексом <code>K.numCols()</code>.
+     * @param K  Матрица независимых контуров, найденная {@link #getCycles} и измененная только методами этого класса.
+     * @param KT Транспонированная <code>K</code> (с упорядоченными индексами столбцов в строках).
+     * @return <code>true</code>, если добавлен контур.
+     */
+    public boolean addEdge(@NotNull ICircuitEdge e, @NotNull IMatrixCsr K, @NotNull IMatrixCsr KT) {
+        ICircuitNode src = e.getSourceNode();
+        ICircuitNode tgt = e.getTargetNode();
+        if (src == tgt) {
+            throw new IllegalArgumentException("Петли не поддерживаются");
+        }
+        int ei = appendColumn(e, K, KT);
+        ensureVertex(Math.max(src.getIndex(), tgt.getIndex()));
+        if (root(src) != root(tgt)) {
+            makeRoot(tgt);
+            spanningForest[tgt.getIndex()] = e;
+            return false;
+        }
+        int loop = K.numRows();
+        tmpe.set(ei, loop + 1);
+        walker.makePath(src, spanningForest[src.getIndex()], e, K);
+        KT.setNumCols(loop + 1);
+        clearInsertions();
+        for (int k = K.begin(loop); k < K.end(loop); k++) {
+            int f = K.col(k);
+            int v = K.value(k);
+            int i = insRows.getSize();
+            insRows.append(f);
+            insValues.append(v);
+            /* Контур короткий: сортировка вставками по индексу ребра. */
+            while (i > 0 && insRows.get(i - 1) > f) {
+                insRows.set(i, insRows.get(i - 1));
+                insValues.set(i, insValues.get(i - 1));
+                i--;
+            }
+            insRows.set(i, f);
+            insValues.set(i, v);
+        }
+        for (int k = 0; k < insRows.getSize(); k++) {
+            insPos.append(KT.end(insRows.get(k)));
+            insCols.append(loop);
+        }
+        KT.insert(insRows, insPos, insCols, insValues);
+        return true;
+    }
+
+    /**
+     * Удалить хорду из базиса: ее контур исключается из K и K<sup>T</sup>, номера следующих контуров уменьшаются на
+     * единицу. Столбец ребра в K остается (пустым), индексы ребер не изменяются.
+     * @throws IllegalArgumentException если ребро принадлежит остову: его удаление меняет остов и требует
+     *                                  {@link #getCycles}.
+     */
+    public void removeEdge(@NotNull ICircuitEdge e, @NotNull IMatrixCsr K, @NotNull IMatrixCsr KT) {
+        int loop = tmpe.get(e.getIndex()) - 1;
+        if (loop < 0) {
+            throw new IllegalArgumentException("Удалить можно только хорду: удаление ребра остова требует построения базиса заново");
+        }
+        K.removeRow(loop);
+        KT.removeColumn(loop);
+        tmpe.set(e.getIndex(), 0);
+        int[] t = tmpe.getData();
+        for (int i = 0; i < tmpe.getSize(); i++) {
+            if (t[i] > loop + 1) {
+                t[i]--;
+            }
+        }
+    }
+
+    /**
+     * Разделить ребро новой вершиной (например, поездом). До вызова <code>e</code> соединяет <code>u</code> с
+     * <code>v</code>; вызывающий код назначает <code>e</code> концом новую вершину <code>w</code>, а <code>added</code>
+     * направляет из <code>w</code> в <code>v</code>. Если <code>e</code> принадлежит остову, ему принадлежат обе
+     * половины. Если <code>e</code> - хорда, она остается хордой, <code>added</code> входит в остов, и обе половины
+     * входят в контур хорды. Количество контуров не изменяется: каждый контур, содержащий <code>e</code>, получает
+     * <code>added</code> с тем же знаком.
+     * @param e     Разделяемое ребро <code>u &#8594 w</code>.
+     * @param added Новое ребро <code>w &#8594 v</code> с индексом <code>K.numCols()</code>.
+     */
+    public void splitEdge(
+            @NotNull ICircuitEdge e,
+            @NotNull ICircuitEdge added,
+            @NotNull IMatrixCsr K,
+            @NotNull IMatrixCsr KT
+    ) {
+        ICircuitNode w = e.getTargetNode();
+        ICircuitNode v = added.getTargetNode();
+        if (added.getSourceNode() != w) {
+            throw new IllegalArgumentException("Новое ребро должно начинаться в конце разделяемого");
+        }
+        int ei = e.getIndex();
+        int ai = appendColumn(added, K, KT);
+        ensureVertex(w.getIndex());
+        if (spanningForest[v.getIndex()] == e) {
+            spanningForest[v.getIndex()] = added;
+            spanningForest[w.getIndex()] = e;
+        } else {
+            spanningForest[w.getIndex()] = added;
+        }
+        clearInsertions();
+        for (int k = KT.begin(ei); k < KT.end(ei); k++) {
+            int loop = KT.col(k);
+            int value = KT.value(k);
+            int p = K.begin(loop);
+            while (K.col(p) != ei) {
+                p++;
+            }
+            /* Сохранить порядок обхода: при обратном направлении added предшествует e. */
+            insRows.append(loop);
+            insPos.append(value > 0 ? p + 1 : p);
+            insCols.append(ai);
+            insValues.append(value);
+        }
+        K.insert(insRows, insPos, insCols, insValues);
+        for (int k = KT.begin(ei); k < KT.end(ei); k++) {
+            KT.append(KT.col(k), KT.value(k));
+        }
+    }
+
+    /**
+     * Выделить компоненты связности (система непересекающихся множеств по спискам инцидентности) и оценить
+     * трудоемкость их обхода.
+     */
+    private void labelComponents() {
+        int vCnt = graph.getVertices().size();
+        componentParent.setSize(vCnt);
+        int[] p = componentParent.getData();
+        for (int i = 0; i < vCnt; i++) {
+            p[i] = i;
+        }
+        for (int i = 0; i < vCnt; i++) {
+            ICircuitNode v = graph.getVertices().get(i);
+            for (int j = graph.getLoi().begin(i); j < graph.getLoi().end(i); j++) {
+                int a = find(i);
+                int b = find(oppositeVertex(v, graph.getLoi().get(j)).getIndex());
+                if (a < b) {
+                    p[b] = a;
+                } else if (b < a) {
+                    p[a] = b;
+                }
+            }
+        }
+        components.setSize(0);
+        componentCost.setSize(vCnt);
+        int[] cost = componentCost.getData();
+        Arrays.fill(cost, 0, vCnt, 0);
+        for (int i = 0; i < vCnt; i++) {
+            int r = find(i);
+            if (r == i) {
+                components.append(i);
+            }
+            cost[r] += graph.getLoi().end(i) - graph.getLoi().begin(i) + 1;
+        }
+        /* Трудоемкость - по номеру компоненты, а не по первой вершине. */
+        for (int c = 0; c < components.getSize(); c++) {
+            cost[c] = cost[components.get(c)];
+        }
+        componentCost.setSize(components.getSize());
+    }
+
+    /** Корень множества вершины <code>v</code> со сжатием путей делением пополам. */
+    private int find(int v) {
+        int[] p = componentParent.getData();
+        while (p[v] != v) {
+            p[v] = p[p[v]];
+            v = p[v];
+        }
+        return v;
+    }
+
+    /** Добавить столбец K и строку K<sup>T</sup> для нового ребра. */
+    private int appendColumn(ICircuitEdge e, IMatrixCsr K, IMatrixCsr KT) {
+        int ei = e.getIndex();
+        if (ei != K.numCols() || ei != KT.numRows()) {
+            throw new IllegalArgumentException("Индекс нового ребра должен быть равен количеству столбцов K");
+        }
+        K.setNumCols(ei + 1);
+        KT.addRow();
+        tmpe.setSize(ei + 1);
+        tmpe.set(ei, 0);
+        return ei;
+    }
+
+    /** Включить в остовный лес вершины до <code>idx</code> включительно; новые вершины - корни своих деревьев. */
+    private void ensureVertex(int idx) {
+        if (idx < verticesQty) {
+            return;
+        }
+        if (spanningForest.length <= idx) {
+            spanningForest = Arrays.copyOf(spanningForest, Math.max(idx + 1, 2 * spanningForest.length));
+        }
+        Arrays.fill(spanningForest, verticesQty, idx + 1, NONE);
+        tmpv.setSize(idx + 1);
+        Arrays.fill(tmpv.getData(), verticesQty, idx + 1, 0);
+        verticesQty = idx + 1;
+    }
+
+    private ICircuitNode root(ICircuitNode v) {
+        for (ICircuitEdge e = spanningForest[v.getIndex()]; e != NONE; e = spanningForest[v.getIndex()]) {
+            v = oppositeVertex(v, e);
+        }
+        return v;
+    }
+
+    /** Сделать <code>v</code> корнем ее дерева, обратив ребра пути до прежнего корня. */
+    private void makeRoot(ICircuitNode v) {
+        ICircuitEdge prev = NONE;
+        ICircuitEdge next = spanningForest[v.getIndex()];
+        while (true) {
+            spanningForest[v.getIndex()] = prev;
+            if (next == NONE) {
+                return;
+            }
+            v = oppositeVertex(v, next);
+            prev = next;
+            next = spanningForest[v.getIndex()];
+        }
+    }
+
+    private void clearInsertions() {
+        insRows.setSize(0);
+        insPos.setSize(0);
+        insCols.setSize(0);
+        insValues.setSize(0);
+    }
+
     @NotNull
     private IMatrixCsr resetOrCreate(@Nullable IMatrixCsr dest) {
         if (dest == null) {
@@ -92,14 +418,6 @@ public class SchemaGraphCycleBasis<V extends ICircuitNode, E extends ICircuitEdg
         return dest;
     }
 
-    private void push(ICircuitNode v) {
-        deque.addLast(v);
-    }
-
-    private ICircuitNode pop() {
-        return (traversing == Traversing.QUEUE_BASED) ? deque.pollFirst() : deque.pollLast();
-    }
-
     private void init(Traversing traversing) {
         int vCnt = graph.getVertices().size();
         int eCnt = graph.getEdges().size();
@@ -110,53 +428,222 @@ public class SchemaGraphCycleBasis<V extends ICircuitNode, E extends ICircuitEdg
         }
         tmpv.setSize(vCnt);
         tmpe.setSize(eCnt);
+        if (root == Root.PSEUDO_CENTER) {
+            for (DynamicIntArray d : sweepDist) {
+                d.setSize(vCnt);
+            }
+        }
         Arrays.fill(tmpv.getData(), 0, vCnt, 0);
         Arrays.fill(tmpe.getData(), 0, eCnt, 0);
-        deque.clear();
-        mark = 0;
+        walker.reset(vCnt);
+        verticesQty = vCnt;
         this.traversing = traversing;
     }
 
-    private void makePath(int rootIdx, ICircuitEdge el, ICircuitEdge er, IMatrixCsr dest) {
-        ICircuitNode root = graph.getVertices().get(rootIdx);
-        ICircuitNode vl = root;
-        ICircuitNode vr = root;
-        tmpv.set(rootIdx, ++mark);
-        left.clear();
-        right.clear();
-        while (el != NONE || er != NONE) {
-            if (el != NONE) {
-                left.add(el);
-                vl = oppositeVertex(vl, el);
-                int vli = vl.getIndex();
-                if (tmpv.get(vli) < mark) {
-                    tmpv.set(vli, mark);
-                } else {
-                    trimToVertex(right, vl);
-                    break;
+    /**
+     * Обход компонент связности: очередь вершин, рабочие пути и метки. Общие массивы (остовный лес, метки вершин и
+     * ребер) разделяются обходами без синхронизации: разные обходы обрабатывают разные компоненты, то есть
+     * непересекающиеся множества вершин и ребер.
+     */
+    private final class Walker {
+        private final ArrayDeque<ICircuitNode> deque = new ArrayDeque<>();
+        private final ArrayList<ICircuitEdge> left = new ArrayList<>(16);
+        private final ArrayList<ICircuitEdge> right = new ArrayList<>(16);
+        private final DynamicIntArray sweepQueue = new DynamicIntArray(16);
+        /** Количество вершин, посещенных последним обходом (они - в начале <code>sweepQueue</code>). */
+        private int sweepSize;
+        /** Хорды, найденные обходом, в порядке строк <code>buffer</code>. */
+        private final DynamicIntArray chords = new DynamicIntArray(16);
+        /** Контуры участка компонент при параллельном построении. */
+        private IMatrixCsr buffer;
+        private int mark;
+
+        private void reset(int vCnt) {
+            deque.clear();
+            chords.setSize(0);
+            mark = 0;
+            if (root == Root.PSEUDO_CENTER) {
+                sweepQueue.setSize(vCnt);
+            }
+        }
+
+        /**
+         * Построить остовное дерево компоненты с первой вершиной <code>first</code> и добавить ее контуры в
+         * <code>dest</code>.
+         */
+        private void traverse(ICircuitNode first, IMatrixCsr dest) {
+            ICircuitNode r = (root == Root.PSEUDO_CENTER) ? pseudoCenter(first) : first;
+            spanningForest[r.getIndex()] = NONE;
+            push(r);
+            while (!deque.isEmpty()) {
+                ICircuitNode v = pop();
+                int vi = v.getIndex();
+                ICircuitEdge ve = spanningForest[vi];
+                int begin = graph.getLoi().begin(vi);
+                int end = graph.getLoi().end(vi);
+                for (int j = begin; j < end; j++) {
+                    ICircuitEdge e = graph.getLoi().get(j);
+                    if (e != ve) {
+                        ICircuitNode ov = oppositeVertex(v, e);
+                        int ovi = ov.getIndex();
+                        if (spanningForest[ovi] == null) {
+                            spanningForest[ovi] = e;
+                            push(ov);
+                        } else if (tmpe.get(e.getIndex()) == 0) {
+                            tmpe.set(e.getIndex(), dest.numRows() + 1);
+                            chords.append(e.getIndex());
+                            ICircuitEdge el = spanningForest[ovi];
+                            makePath(ov, el, e, dest);
+                        }
+                    }
                 }
-                el = spanningForest[vl.getIndex()];
-            }
-            if (er != NONE) {
-                right.add(er);
-                vr = oppositeVertex(vr, er);
-                int vri = vr.getIndex();
-                if (tmpv.get(vri) < mark) {
-                    tmpv.set(vri, mark);
-                } else {
-                    trimToVertex(left, vr);
+            }
+        }
+
+        /** Псевдоцентр компоненты, содержащей <code>start</code> (см. {@link Root#PSEUDO_CENTER}). */
+        private ICircuitNode pseudoCenter(ICircuitNode start) {
+            DynamicIntArray du = sweepDist[0];
+            DynamicIntArray dw = sweepDist[1];
+            int w = sweep(start.getIndex(), du);
+            int ecc = du.get(w);
+            for (int i = 0; i < MAX_SWEEPS; i++) {
+                int next = sweep(w, dw);
+                int nextEcc = dw.get(next);
+                /* Теперь du - расстояния от w, который становится концом u. */
+                DynamicIntArray t = du;
+                du = dw;
+                dw = t;
+                w = next;
+                if (nextEcc <= ecc) {
                     break;
                 }
-                er = spanningForest[vr.getIndex()];
+                ecc = nextEcc;
+            }
+            sweep(w, dw);
+            int c = center(du, dw, du, dw);
+            DynamicIntArray dq = sweepDist[2];
+            DynamicIntArray dr = sweepDist[3];
+            int q = sweep(c, dq);
+            int r = sweep(q, dq);
+            sweep(r, dr);
+            return graph.getVertices().get(center(du, dw, dq, dr));
+        }
+
+        /**
+         * Вершина компоненты последнего обхода с наименьшим наибольшим из четырех расстояний; при равенстве - с
+         * наименьшей суммой расстояний, затем с наименьшим индексом.
+         */
+        private int center(DynamicIntArray d1, DynamicIntArray d2, DynamicIntArray d3, DynamicIntArray d4) {
+            int[] q = sweepQueue.getData();
+            int best = -1;
+            int bestMax = Integer.MAX_VALUE;
+            int bestSum = Integer.MAX_VALUE;
+            for (int k = 0; k < sweepSize; k++) {
+                int v = q[k];
+                int a = d1.get(v);
+                int b = d2.get(v);
+                int c = d3.get(v);
+                int d = d4.get(v);
+                int max = Math.max(Math.max(a, b), Math.max(c, d));
+                int sum = a + b + c + d;
+                if (max < bestMax || max == bestMax && (sum < bestSum || sum == bestSum && v < best)) {
+                    best = v;
+                    bestMax = max;
+                    bestSum = sum;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Обход в ширину компоненты из вершины <code>start</code> с сохранением расстояний в <code>dist</code>.
+         * @return вершина последнего уровня наименьшей степени.
+         */
+        private int sweep(int start, DynamicIntArray dist) {
+            int[] q = sweepQueue.getData();
+            int head = 0;
+            int tail = 0;
+            tmpv.set(start, ++mark);
+            dist.set(start, 0);
+            q[tail++] = start;
+            int best = start;
+            int bestDegree = Integer.MAX_VALUE;
+            while (head < tail) {
+                int vi = q[head++];
+                int d = dist.get(vi);
+                int begin = graph.getLoi().begin(vi);
+                int end = graph.getLoi().end(vi);
+                if (d > dist.get(best) || d == dist.get(best) && end - begin < bestDegree) {
+                    best = vi;
+                    bestDegree = end - begin;
+                }
+                ICircuitNode v = graph.getVertices().get(vi);
+                for (int j = begin; j < end; j++) {
+                    int ui = oppositeVertex(v, graph.getLoi().get(j)).getIndex();
+                    if (tmpv.get(ui) < mark) {
+                        tmpv.set(ui, mark);
+                        dist.set(ui, d + 1);
+                        q[tail++] = ui;
+                    }
+                }
             }
+            sweepSize = tail;
+            return best;
         }
-        dest.addRow();
-        for (ICircuitEdge e : left) {
-            root = appendEdge(dest, e, root);
+
+        private void push(ICircuitNode v) {
+            deque.addLast(v);
+        }
+
+        private ICircuitNode pop() {
+            return (traversing == Traversing.QUEUE_BASED) ? deque.pollFirst() : deque.pollLast();
         }
-        for (int i = right.size() - 1; i >= 0; i--) {
-            ICircuitEdge e = right.get(i);
-            root = appendEdge(dest, e, root);
+
+        private void makePath(ICircuitNode root, ICircuitEdge el, ICircuitEdge er, IMatrixCsr dest) {
+            ICircuitNode vl = root;
+            ICircuitNode vr = root;
+            tmpv.set(root.getIndex(), ++mark);
+            left.clear();
+            right.clear();
+            while (el != NONE || er != NONE) {
+                if (el != NONE) {
+                    left.add(el);
+                    vl = oppositeVertex(vl, el);
+                    int vli = vl.getIndex();
+                    if (tmpv.get(vli) < mark) {
+                        tmpv.set(vli, mark);
+                    } else {
+                        trimToVertex(right, vl);
+                        break;
+                    }
+                    el = spanningForest[vl.getIndex()];
+                }
+                if (er != NONE) {
+                    right.add(er);
+                    vr = oppositeVertex(vr, er);
+                    int vri = vr.getIndex();
+                    if (tmpv.get(vri) < mark) {
+                        tmpv.set(vri, mark);
+                    } else {
+                        /* Путь справа может вернуться в корень, если второй конец ребра - потомок корня. */
+                        if (vr == root) {
+                            left.clear();
+                        } else {
+                            trimToVertex(left, vr);
+                        }
+                        break;
+                    }
+                    er = spanningForest[vr.getIndex()];
+                }
+            }
+            dest.addRow();
+            for (ICircuitEdge e : left) {
+                root = appendEdge(dest, e, root);
+            }
+            for (int i = right.size() - 1; i >= 0; i--) {
+                ICircuitEdge e = right.get(i);
+                root = appendEdge(dest, e, root);
+            }
         }
     }
 
@@ -0,0 +1,130 @@
+package ic.matrix;
+
+import org.ejml.data.ZMatrixRMaj;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Оператор K&#215Z&#215K<sup>T</sup> системы контурных уравнений переменного тока без сборки матрицы контурных
+ * сопротивлений.
+ * <p>
+ * Произведение <code>y = K&#215(Z&#215(K<sup>T</sup>&#215x))</code> вычисляется тремя последовательными проходами:
+ * по строкам K<sup>T</sup>, по Z ({@link AcMatrixOps#mult(ZMatrixAc, ZMatrixRMaj, ZMatrixRMaj)}, в том числе для
+ * симметричного хранения и хранения вне кучи) и по строкам K. Требуемая память - <code>O(nnz(K) + nnz(Z))</code>
+ * вместо <code>O(L<sup>2</sup>)</code> для собранной матрицы; рабочие векторы длины E выделяются при назначении
+ * топологии. Комплексные векторы хранятся чередованием вещественных и мнимых частей, как в {@link ZMatrixRMaj}.
+ * Предназначен для итерационных решателей ({@link ic.solver.ComplexSymmetricCocg}). Оператор не потокобезопасен, а
+ * матрицу {@link ZMatrixAc#isOffHeap() вне кучи} нельзя разделять между операторами, работающими в разных потоках:
+ * чтение ее строк изменяет общее окно.
+ * </p>
+ */
+public class AcLoopOperator {
+
+    private final ZMatrixRMaj J = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj dU = new ZMatrixRMaj(1, 1);
+    private IMatrixCsr K;
+    private IMatrixCsr KT;
+    private ZMatrixAc Z;
+
+    /**
+     * Назначить матрицу контуров. Матрицы не копируются и не должны изменяться, пока используется оператор.
+     * @param K  Матрица независимых контуров.
+     * @param KT Транспонированная матрица независимых контуров (с упорядоченными индексами столбцов в строках).
+     */
+    public void setTopology(@NotNull IMatrixCsr K, @NotNull IMatrixCsr KT) {
+        this.K = K;
+        this.KT = KT;
+        J.reshape(KT.numRows(), 1);
+        dU.reshape(KT.numRows(), 1);
+    }
+
+    /** Назначить матрицу сопротивлений (не копируется). */
+    public void setImpedances(@NotNull ZMatrixAc Z) {
+        this.Z = Z;
+    }
+
+    /** Порядок оператора (количество контуров). */
+    public int size() {
+        return K.numRows();
+    }
+
+    /**
+     * <code>y = K&#215Z&#215K<sup>T</sup>&#215x</code>.
+     * @param x Комплексный вектор длины {@link #size()} (<code>2&#215size()</code> элементов массива).
+     * @param y Массив для сохранения результата длины не менее <code>2&#215size()</code>.
+     */
+    public void mult(@NotNull double[] x, @NotNull double[] y) {
+        double[] j = J.data;
+        for (int e = 0; e < KT.numRows(); e++) {
+            double re = 0;
+            double im = 0;
+            for (int k = KT.begin(e); k < KT.end(e); k++) {
+                int v = KT.value(k);
+                int src = 2 * KT.col(k);
+                re += v * x[src];
+                im += v * x[src + 1];
+            }
+            j[2 * e] = re;
+            j[2 * e + 1] = im;
+        }
+        AcMatrixOps.mult(Z, J, dU);
+        double[] u = dU.data;
+        for (int i = 0; i < K.numRows(); i++) {
+            double re = 0;
+            double im = 0;
+            for (int k = K.begin(i); k < K.end(i); k++) {
+                int v = K.value(k);
+                int src = 2 * K.col(k);
+                re += v * u[src];
+                im += v * u[src + 1];
+            }
+            y[2 * i] = re;
+            y[2 * i + 1] = im;
+        }
+    }
+
+    /**
+     * Диагональ матрицы K&#215Z&#215K<sup>T</sup> (для предобусловливания). Z читается одним последовательным проходом:
+     * элемент <code>z<sub>ef</sub></code> вносит <code>K<sub>le</sub>K<sub>lf</sub>z<sub>ef</sub></code> в каждый контур
+     * <code>l</code>, общий для ребер <code>e</code> и <code>f</code> (пересечение упорядоченных строк K<sup>T</sup>).
+     * @param dest Массив для сохранения результата длины не менее <code>2&#215size()</code>.
+     */
+    public void diagonal(@NotNull double[] dest) {
+        Arrays.fill(dest, 0, 2 * K.numRows(), 0);
+        int blockEdgesQty = Z.getBlockEdgesQty();
+        for (int e = 0; e < blockEdgesQty; e++) {
+            addCommonLoops(e, e, Z.data.getRe(e), Z.data.getIm(e), dest);
+        }
+        boolean symmetric = Z.isSymmetric();
+        for (int e = blockEdgesQty; e < Z.size(); e++) {
+            for (int k = Z.begin(e); k < Z.end(e); k++) {
+                int f = Z.cols.get(k);
+                int mult = symmetric && f != e ? 2 : 1;
+                addCommonLoops(e, f, mult * Z.data.getRe(k), mult * Z.data.getIm(k), dest);
+            }
+        }
+    }
+
+    private void addCommonLoops(int e, int f, double re, double im, double[] dest) {
+        int a = KT.begin(e);
+        int b = KT.begin(f);
+        int aEnd = KT.end(e);
+        int bEnd = KT.end(f);
+        while (a < aEnd && b < bEnd) {
+            int la = KT.col(a);
+            int lb = KT.col(b);
+            if (la < lb) {
+                a++;
+            } else if (lb < la) {
+                b++;
+            } else {
+                int v = KT.value(a) * KT.value(b);
+                dest[2 * la] += v * re;
+                dest[2 * la + 1] += v * im;
+                a++;
+                b++;
+            }
+        }
+    }
+}
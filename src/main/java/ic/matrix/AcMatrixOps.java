@@ -1,16 +1,23 @@
 package ic.matrix;
 
+import org.ejml.UtilEjml;
+import org.ejml.data.DGrowArray;
+import org.ejml.data.IGrowArray;
 import org.ejml.data.ZMatrixRMaj;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import ru.vniizht.asuterkortes.counter.latticemodel.DynamicComplexArray;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class AcMatrixOps {
 
     /**
-     * Операция K&#215Z.
+     * Операция K&#215Z. Для {@link ZMatrixAc#isSymmetric() симметричной} Z строка ребра тяговой сети дополняется
+     * подразумеваемыми элементами нижнего треугольника по индексу {@link ZMatrixAc#indexLower()}.
      * @param K    Матрица независимых контуров.
      * @param Z    Матрица сопротивлений.
      * @param dest Матрица для сохранения результата. Если <code>dest == null</code>, она будет создана.
@@ -31,10 +38,12 @@ public class AcMatrixOps {
             }
             dest.reshape(K.numRows(), K.numCols());
         }
+        boolean symmetric = Z.isSymmetric();
+        Z.indexLower();
         for (int i = 0, a = 0; i < K.numRows(); i++, a += K.numCols() * 2) {
             for (int j = K.begin(i); j < K.end(i); ++j) {
-                int col = K.cols.get(j);
-                int kElt = K.data.get(j);
+                int col = K.col(j);
+                int kElt = K.value(j);
                 if (col < Z.getBlockEdgesQty()) {
                     int outIdx = a + col * 2;
                     dest.data[outIdx++] = kElt * Z.data.getRe(col);
@@ -45,6 +54,13 @@ public class AcMatrixOps {
                         dest.data[outIdx++] += kElt * Z.data.getRe(k);
                         dest.data[outIdx] += kElt * Z.data.getIm(k);
                     }
+                    if (symmetric) {
+                        for (int t = Z.lowerBegin(col); t < Z.lowerEnd(col); t++) {
+                            int outIdx = a + Z.lowerRow(t) * 2;
+                            dest.data[outIdx++] += kElt * Z.lowerRe(t);
+                            dest.data[outIdx] += kElt * Z.lowerIm(t);
+                        }
+                    }
                 }
             }
         }
@@ -80,9 +96,9 @@ public class AcMatrixOps {
                 double re = 0f;
                 double im = 0f;
                 for (int k = K.begin(j); k < K.end(j); k++) {
-                    int colIdx = K.cols.get(k);
+                    int colIdx = K.col(k);
                     int kzDataIdx = kzRowAnchor + colIdx * 2;
-                    double kv = K.data.get(k);
+                    double kv = K.value(k);
                     re += KZ.data[kzDataIdx] * kv;
                     im += KZ.data[kzDataIdx + 1] * kv;
                 }
@@ -103,6 +119,286 @@ public class AcMatrixOps {
         return dest;
     }
 
+    /**
+     * Числовая фаза K&#215Z&#215K<sup>T</sup> по заранее вычисленному портрету (см. {@link KZKTPattern#symbolicAc}).
+     * Матрица KZ при этом не формируется. Значения накапливаются в рабочем массиве портрета, поэтому одновременные
+     * вызовы с одним портретом недопустимы.
+     * @param pattern Портрет и карта рассеяния.
+     * @param Z       Матрица сопротивлений той же структуры, что и при символьной фазе.
+     * @param dest    Матрица для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @return <code>dest</code>
+     */
+    @NotNull
+    public static ZMatrixRMaj KZKT(
+            @NotNull KZKTPattern pattern,
+            @NotNull ZMatrixAc Z,
+            @Nullable ZMatrixRMaj dest
+    ) {
+        int n = pattern.size();
+        int nz = pattern.nzCnt();
+        if (dest == null) {
+            dest = new ZMatrixRMaj(n, n);
+        } else {
+            dest.reshape(n, n);
+            dest.zero();
+        }
+        DynamicComplexArray values = pattern.complexValues;
+        values.setSize(nz);
+        double[] valRes = values.getDataRe();
+        double[] valIms = values.getDataIm();
+        Arrays.fill(valRes, 0, nz, 0);
+        Arrays.fill(valIms, 0, nz, 0);
+        int[] slots = pattern.slots.getData();
+        int[] zIdx = pattern.zIdx.getData();
+        int[] coefs = pattern.coefs.getData();
+        double[] zRes = Z.data.getDataRe();
+        double[] zIms = Z.data.getDataIm();
+        for (int t = 0; t < pattern.contributionsCnt(); t++) {
+            int slot = slots[t];
+            int c = coefs[t];
+            valRes[slot] += c * zRes[zIdx[t]];
+            valIms[slot] += c * zIms[zIdx[t]];
+        }
+        int[] cols = pattern.cols.getData();
+        for (int i = 0; i < n; i++) {
+            for (int k = pattern.rows.get(i); k < pattern.rows.get(i + 1); k++) {
+                int j = cols[k];
+                int ij = 2 * (i * n + j);
+                int ji = 2 * (j * n + i);
+                dest.data[ij] = valRes[k];
+                dest.data[ij + 1] = valIms[k];
+                dest.data[ji] = valRes[k];
+                dest.data[ji + 1] = valIms[k];
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * Операция K&#215Z&#215K<sup>T</sup> за один проход, без формирования плотной матрицы KZ.
+     * <p>
+     * Для каждой строки K вычисляется разреженная строка KZ: ребра блоков (<code>[0, getBlockEdgesQty())</code>)
+     * дают по одному масштабированному элементу, и только строки тяговых сетей раскрываются по связанным ребрам.
+     * Затем строка KZ умножается на K<sup>T</sup> с учетом лишь элементов верхнего треугольника, который после этого
+     * отражается вниз. Рабочая память - <code>O(E)</code> вместо <code>O(L&#183E)</code> у {@link #KZ}.
+     * </p>
+     * <p>
+     * Для {@link ZMatrixAc#isSymmetric() симметричной} Z строка KZ дополняется подразумеваемыми элементами нижнего
+     * треугольника по индексу {@link ZMatrixAc#indexLower()}, так что объем вычислений тот же, что и для полной Z.
+     * </p>
+     * @param K    Матрица независимых контуров.
+     * @param Z    Матрица сопротивлений.
+     * @param KT   Транспонированная матрица K<sup>T</sup> с упорядоченными по возрастанию индексами столбцов.
+     * @param dest Матрица для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @param gw   Рабочий массив (метки и список ребер строки KZ). Если <code>null</code>, будет создан.
+     * @param gx   Рабочий массив (значения строки KZ). Если <code>null</code>, будет создан.
+     * @return <code>dest</code>
+     */
+    @NotNull
+    public static ZMatrixRMaj KZKT(
+            @NotNull IMatrixCsr K,
+            @NotNull ZMatrixAc Z,
+            @NotNull IMatrixCsr KT,
+            @Nullable ZMatrixRMaj dest,
+            @Nullable IGrowArray gw,
+            @Nullable DGrowArray gx
+    ) {
+        int n = K.numRows();
+        int numEdges = K.numCols();
+        if (dest == null) {
+            dest = new ZMatrixRMaj(n, n);
+        } else {
+            dest.reshape(n, n);
+            dest.zero();
+        }
+        int[] w = UtilEjml.adjust(gw, 2 * numEdges);
+        double[] x = UtilEjml.adjust(gx, 2 * numEdges);
+        Z.indexLower();
+        upperRows(K, Z, KT, dest, 0, n, w, x);
+        mirrorUpper(dest, 0, n);
+        return dest;
+    }
+
+    /**
+     * K&#215Z&#215K<sup>T</sup> без формирования KZ с параллельной обработкой строк в <code>pool</code>. Рабочие
+     * массивы участков создаются при каждом вызове; при многократном расчете следует использовать
+     * {@link #KZKT(IMatrixCsr, ZMatrixAc, IMatrixCsr, ZMatrixRMaj, ForkJoinPool, List, List)}.
+     * @param K    Матрица независимых контуров.
+     * @param Z    Матрица сопротивлений.
+     * @param KT   Транспонированная матрица K<sup>T</sup> с упорядоченными по возрастанию индексами столбцов.
+     * @param dest Матрица для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @param pool Пул потоков.
+     * @return <code>dest</code>
+     */
+    @NotNull
+    public static ZMatrixRMaj KZKT(
+            @NotNull IMatrixCsr K,
+            @NotNull ZMatrixAc Z,
+            @NotNull IMatrixCsr KT,
+            @Nullable ZMatrixRMaj dest,
+            @NotNull ForkJoinPool pool
+    ) {
+        return KZKT(K, Z, KT, dest, pool, new ArrayList<>(), new ArrayList<>());
+    }
+
+    /**
+     * K&#215Z&#215K<sup>T</sup> без формирования KZ с параллельной обработкой строк в <code>pool</code>. Строки
+     * распределяются между участками по трудоемкости, каждый участок использует собственные рабочие массивы
+     * (<code>O(E)</code> на участок). Результат побитово совпадает с
+     * {@link #KZKT(IMatrixCsr, ZMatrixAc, IMatrixCsr, ZMatrixRMaj, IGrowArray, DGrowArray)}. Матрица
+     * {@link ZMatrixAc#isOffHeap() вне кучи} обрабатывается последовательно.
+     * <p>
+     * Рабочие массивы участков хранятся в списках <code>gw</code> и <code>gx</code>, которые при необходимости
+     * дополняются до {@link ParallelRows#chunks(ForkJoinPool, int)} элементов. Повторные вызовы с теми же списками, тем
+     * же пулом и той же топологией память не выделяют. Одни и те же списки нельзя одновременно передавать в несколько
+     * вызовов.
+     * </p>
+     * @param K    Матрица независимых контуров.
+     * @param Z    Матрица сопротивлений.
+     * @param KT   Транспонированная матрица K<sup>T</sup> с упорядоченными по возрастанию индексами столбцов.
+     * @param dest Матрица для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @param pool Пул потоков.
+     * @param gw   Рабочие массивы участков (метки и списки ребер строк KZ).
+     * @param gx   Рабочие массивы участков (значения строк KZ).
+     * @return <code>dest</code>
+     */
+    @NotNull
+    public static ZMatrixRMaj KZKT(
+            @NotNull IMatrixCsr K,
+            @NotNull ZMatrixAc Z,
+            @NotNull IMatrixCsr KT,
+            @Nullable ZMatrixRMaj dest,
+            @NotNull ForkJoinPool pool,
+            @NotNull List<IGrowArray> gw,
+            @NotNull List<DGrowArray> gx
+    ) {
+        int n = K.numRows();
+        int chunks = ParallelRows.chunks(pool, n);
+        while (gw.size() < chunks) {
+            gw.add(new IGrowArray());
+        }
+        while (gx.size() < chunks) {
+            gx.add(new DGrowArray());
+        }
+        if (Z.isOffHeap()) {
+            return KZKT(K, Z, KT, dest, gw.isEmpty() ? null : gw.get(0), gx.isEmpty() ? null : gx.get(0));
+        }
+        int numEdges = K.numCols();
+        if (dest == null) {
+            dest = new ZMatrixRMaj(n, n);
+        } else {
+            dest.reshape(n, n);
+            dest.zero();
+        }
+        ZMatrixRMaj res = dest;
+        Z.indexLower();
+        ParallelRows.run(pool, n, i -> rowCost(K, Z, KT, i), (chunk, from, to) -> {
+            int[] w = UtilEjml.adjust(gw.get(chunk), 2 * numEdges);
+            double[] x = UtilEjml.adjust(gx.get(chunk), 2 * numEdges);
+            upperRows(K, Z, KT, res, from, to, w, x);
+        });
+        ParallelRows.run(pool, n, i -> n - i, (from, to) -> mirrorUpper(res, from, to));
+        return res;
+    }
+
+    /** Оценка трудоемкости <code>i</code>-й строки K&#215Z&#215K<sup>T</sup>. */
+    private static long rowCost(IMatrixCsr K, ZMatrixAc Z, IMatrixCsr KT, int i) {
+        long res = 0;
+        for (int j = K.begin(i); j < K.end(i); j++) {
+            int col = K.col(j);
+            if (col < Z.getBlockEdgesQty()) {
+                res++;
+            } else {
+                res += Z.end(col) - Z.begin(col);
+                if (Z.isSymmetric()) {
+                    res += Z.lowerEnd(col) - Z.lowerBegin(col);
+                }
+            }
+        }
+        return res + DcMatrixOps.rowCost(K, KT, i);
+    }
+
+    /**
+     * Верхний треугольник (вместе с главной диагональю) строк <code>[from, to)</code>. Для симметричной Z индекс
+     * {@link ZMatrixAc#indexLower()} должен быть построен.
+     * @param w Метки и список ребер строки KZ, не менее <code>2E</code> элементов.
+     * @param x Значения строки KZ, не менее <code>2E</code> элементов.
+     */
+    private static void upperRows(
+            IMatrixCsr K, ZMatrixAc Z, IMatrixCsr KT, ZMatrixRMaj dest, int from, int to, int[] w, double[] x
+    ) {
+        int n = K.numRows();
+        int numEdges = K.numCols();
+        Arrays.fill(w, 0, numEdges, -1); /* w[0, E) - метки ребер, w[E, 2E) - список ребер строки KZ. */
+        int blockEdgesQty = Z.getBlockEdgesQty();
+        double[] zRes = Z.data.getDataRe();
+        double[] zIms = Z.data.getDataIm();
+        int[] zCols = Z.cols.getData();
+        boolean symmetric = Z.isSymmetric();
+        for (int i = from; i < to; i++) {
+            /* Разреженная строка KZ. */
+            int cnt = 0;
+            for (int j = K.begin(i); j < K.end(i); j++) {
+                int col = K.col(j);
+                int k = K.value(j);
+                if (col < blockEdgesQty) {
+                    cnt = accumulate(w, x, numEdges, cnt, i, col, k * zRes[col], k * zIms[col]);
+                } else {
+                    for (int z = Z.begin(col); z < Z.end(col); z++) {
+                        cnt = accumulate(w, x, numEdges, cnt, i, zCols[z], k * zRes[z], k * zIms[z]);
+                    }
+                    if (symmetric) {
+                        for (int t = Z.lowerBegin(col); t < Z.lowerEnd(col); t++) {
+                            cnt = accumulate(w, x, numEdges, cnt, i, Z.lowerRow(t), k * Z.lowerRe(t), k * Z.lowerIm(t));
+                        }
+                    }
+                }
+            }
+            /* Строка KZ, умноженная на K<sup>T</sup>: только столбцы j >= i. */
+            int rowAnchor = 2 * i * n;
+            for (int t = 0; t < cnt; t++) {
+                int e = w[numEdges + t];
+                double re = x[2 * e];
+                double im = x[2 * e + 1];
+                for (int l = KT.end(e) - 1; l >= KT.begin(e); l--) {
+                    int j = KT.col(l);
+                    if (j < i) {
+                        break;
+                    }
+                    int kt = KT.value(l);
+                    dest.data[rowAnchor + 2 * j] += kt * re;
+                    dest.data[rowAnchor + 2 * j + 1] += kt * im;
+                }
+            }
+        }
+    }
+
+    /** Отзеркалить вниз строки <code>[from, to)</code> верхнего треугольника. */
+    private static void mirrorUpper(ZMatrixRMaj dest, int from, int to) {
+        int n = dest.numRows;
+        for (int i = from; i < to; i++) {
+            for (int j = i + 1; j < n; j++) {
+                int ij = 2 * (i * n + j);
+                int ji = 2 * (j * n + i);
+                dest.data[ji] = dest.data[ij];
+                dest.data[ji + 1] = dest.data[ij + 1];
+            }
+        }
+    }
+
+    private static int accumulate(int[] w, double[] x, int numEdges, int cnt, int rowIdx, int e, double re, double im) {
+        if (w[e] != rowIdx) {
+            w[e] = rowIdx;
+            w[numEdges + cnt++] = e;
+            x[2 * e] = re;
+            x[2 * e + 1] = im;
+        } else {
+            x[2 * e] += re;
+            x[2 * e + 1] += im;
+        }
+        return cnt;
+    }
+
     /**
      * Операция K&#215E. Для эффективности порядок операндов изменен, и фактически вычисляется E<sup>T</sup>&#215K<sup>T</sup>.
      * @param E    Вектор ЭДС.
@@ -131,8 +427,8 @@ public class AcMatrixOps {
             double re = E.data.getRe(r);
             double im = E.data.getIm(r);
             for (int j = KT.begin(r); j < KT.end(r); j++) {
-                int colIdx = KT.cols.get(j);
-                int k = KT.data.get(j);
+                int colIdx = KT.col(j);
+                int k = KT.value(j);
                 destRes[colIdx] += k * re;
                 destIms[colIdx] += k * im;
             }
@@ -143,7 +439,9 @@ public class AcMatrixOps {
     /**
      * Операция <code>K&#215Z&#215I</code>.
      * Для эффективности порядок операндов изменен, и фактически вычисляется <code>I<sup>T</sup>&#215Z&#215K<sup>T</sup></code>.
-     * @param I    Вектор задающих токов.
+     * Читается только диагональ ребер блоков, поэтому {@link ZMatrixAc#isSymmetric() симметричный} формат Z не
+     * требует особой обработки.
+     * @param I    Вектор задающих токов (ненулевые элементы только на ребрах блоков).
      * @param Z    Матрица сопротивлений.
      * @param KT   Транспонированная матрица контуров K<sup>T</sup>.
      * @param dest Вектор для сохранения результата. Если <code>dest == null</code>, он будет создан.
@@ -175,8 +473,8 @@ public class AcMatrixOps {
             double re = iRe * zRe - iIm * zIm;
             double im = iRe * zIm + iIm * zRe;
             for (int j = KT.begin(r); j < KT.end(r); j++) {
-                int colIdx = KT.cols.get(j);
-                int k = KT.data.get(j);
+                int colIdx = KT.col(j);
+                int k = KT.value(j);
                 destRes[colIdx] += k * re;
                 destIms[colIdx] += k * im;
             }
@@ -207,11 +505,103 @@ public class AcMatrixOps {
         return dest;
     }
 
+    /**
+     * Операция <code>KE - KZI</code> для пакета из <code>m</code> нагрузок (столбцы результата).
+     * <p>
+     * Выполняется за один проход по K<sup>T</sup>: сначала для объединения ненулевых позиций всех векторов собираются
+     * строки значений <code>E<sub>c</sub>[r] - Z[r]&#183I<sub>c</sub>[r]</code>, затем каждая затронутая строка
+     * K<sup>T</sup> читается один раз и прибавляется ко всем <code>m</code> столбцам сразу.
+     * </p>
+     * @param E    Векторы ЭДС.
+     * @param I    Векторы задающих токов (ненулевые элементы только на ребрах блоков).
+     * @param Z    Матрица сопротивлений.
+     * @param KT   Транспонированная матрица контуров K<sup>T</sup>.
+     * @param dest Матрица <code>L&#215m</code> для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @param gw   Рабочий массив (необязательный).
+     * @param gx   Рабочий массив (необязательный).
+     * @return <code>dest</code>.
+     */
+    @NotNull
+    public static ZMatrixRMaj rhs(
+            @NotNull List<VectorAc> E,
+            @NotNull List<VectorAc> I,
+            @NotNull ZMatrixAc Z,
+            @NotNull IMatrixCsr KT,
+            @Nullable ZMatrixRMaj dest,
+            @Nullable IGrowArray gw,
+            @Nullable DGrowArray gx
+    ) {
+        if (E.size() != I.size()) {
+            throw new IllegalArgumentException("Количество векторов ЭДС и задающих токов различается");
+        }
+        int m = E.size();
+        int numEdges = KT.numRows();
+        if (dest == null) {
+            dest = new ZMatrixRMaj(KT.numCols(), m);
+        } else {
+            dest.reshape(KT.numCols(), m);
+            dest.zero();
+        }
+        int nzTotal = 0;
+        for (int c = 0; c < m; c++) {
+            nzTotal += E.get(c).nzi.getSize() + I.get(c).nzi.getSize();
+        }
+        int[] w = UtilEjml.adjust(gw, numEdges + nzTotal);
+        double[] x = UtilEjml.adjust(gx, 2 * nzTotal * m);
+        Arrays.fill(w, 0, numEdges, -1); /* w[0, E) - номер строки значений ребра, w[E, E + cnt) - список ребер. */
+        Arrays.fill(x, 0, 2 * nzTotal * m, 0);
+        double[] zRe = Z.data.getDataRe();
+        double[] zIm = Z.data.getDataIm();
+        int cnt = 0;
+        for (int c = 0; c < m; c++) {
+            VectorAc e = E.get(c);
+            for (int i = 0; i < e.nzi.getSize(); i++) {
+                int r = e.nzi.get(i);
+                cnt = touch(w, numEdges, cnt, r);
+                int idx = 2 * (w[r] * m + c);
+                x[idx] += e.data.getRe(r);
+                x[idx + 1] += e.data.getIm(r);
+            }
+            VectorAc cur = I.get(c);
+            for (int i = 0; i < cur.nzi.getSize(); i++) {
+                int r = cur.nzi.get(i);
+                cnt = touch(w, numEdges, cnt, r);
+                int idx = 2 * (w[r] * m + c);
+                double re = cur.data.getRe(r);
+                double im = cur.data.getIm(r);
+                x[idx] -= re * zRe[r] - im * zIm[r];
+                x[idx + 1] -= re * zIm[r] + im * zRe[r];
+            }
+        }
+        Arrays.sort(w, numEdges, numEdges + cnt); /* Обход K<sup>T</sup> по возрастанию номеров строк. */
+        double[] d = dest.data;
+        for (int t = 0; t < cnt; t++) {
+            int r = w[numEdges + t];
+            int src = 2 * w[r] * m;
+            for (int j = KT.begin(r); j < KT.end(r); j++) {
+                int dst = 2 * KT.col(j) * m;
+                int k = KT.value(j);
+                for (int c = 0; c < 2 * m; c++) {
+                    d[dst + c] += k * x[src + c];
+                }
+            }
+        }
+        return dest;
+    }
+
+    private static int touch(int[] w, int numEdges, int cnt, int r) {
+        if (w[r] < 0) {
+            w[r] = cnt;
+            w[numEdges + cnt++] = r;
+        }
+        return cnt;
+    }
+
     /**
      * Операция <code>K<sup>T</sup>&#215I<sub>cc</sub></code>
      * @param KT   Транспонированная матрица независимых контуров.
-     * @param Icc  Вектор контурных токов.
-     * @param dest Вектор для сохранения результата. Если <code>dest == null</code>, он будет создан.
+     * @param Icc  Вектор контурных токов или матрица <code>L&#215m</code> контурных токов пакета нагрузок.
+     * @param dest Матрица <code>E&#215m</code> для сохранения результата. Если <code>dest == null</code>, она будет создана.
      * @return <code>dest</code>
      */
     @NotNull
@@ -220,21 +610,36 @@ public class AcMatrixOps {
             @NotNull ZMatrixRMaj Icc,
             @Nullable ZMatrixRMaj dest
     ) {
+        int m = Icc.numCols;
         if (dest == null) {
-            dest = new ZMatrixRMaj(KT.numRows(), 1);
+            dest = new ZMatrixRMaj(KT.numRows(), m);
         } else {
-            dest.reshape(KT.numRows(), 1);
+            dest.reshape(KT.numRows(), m);
         }
-        for (int i = 0; i < KT.numRows(); i++) {
-            double re = 0;
-            double im = 0;
+        if (m == 1) {
+            for (int i = 0; i < KT.numRows(); i++) {
+                double re = 0;
+                double im = 0;
+                for (int j = KT.begin(i); j < KT.end(i); j++) {
+                    int k = KT.value(j);
+                    int iccIdx = KT.col(j) * 2;
+                    re += k * Icc.data[iccIdx];
+                    im += k * Icc.data[iccIdx + 1];
+                }
+                dest.set(i, 0, re, im);
+            }
+            return dest;
+        }
+        int stride = 2 * m;
+        for (int i = 0, a = 0; i < KT.numRows(); i++, a += stride) {
+            Arrays.fill(dest.data, a, a + stride, 0);
             for (int j = KT.begin(i); j < KT.end(i); j++) {
-                int k = KT.data.get(j);
-                int iccIdx = KT.cols.get(j) * 2;
-                re += k * Icc.data[iccIdx];
-                im += k * Icc.data[iccIdx + 1];
+                int src = KT.col(j) * stride;
+                int k = KT.value(j);
+                for (int c = 0; c < stride; c++) {
+                    dest.data[a + c] += k * Icc.data[src + c];
+                }
             }
-            dest.set(i, 0, re, im);
         }
         return dest;
     }
@@ -242,8 +647,8 @@ public class AcMatrixOps {
     /**
      * Операция <code>Z&#215J</code>
      * @param Z  Матрица сопротивлений.
-     * @param J  Вектор токов в ребрах.
-     * @param dU Результирующий вектор падений напряжений на ребрах.
+     * @param J  Вектор токов в ребрах или матрица <code>E&#215m</code> токов пакета нагрузок.
+     * @param dU Результирующий вектор (матрица) падений напряжений на ребрах.
      * @return <code>dU</code>. Если <code>dU == null</code>, он будет создан.
      */
     @NotNull
@@ -252,10 +657,15 @@ public class AcMatrixOps {
             @NotNull ZMatrixRMaj J,
             @Nullable ZMatrixRMaj dU
     ) {
+        int m = J.numCols;
         if (dU == null) {
-            dU = new ZMatrixRMaj(Z.size(), 1);
+            dU = new ZMatrixRMaj(Z.size(), m);
         } else {
-            dU.reshape(Z.size(), 1);
+            dU.reshape(Z.size(), m);
+        }
+        if (m != 1 || Z.isSymmetric()) {
+            multColumns(Z, J, dU, m);
+            return dU;
         }
         int duIdx = 0;
         for (int i = 0, j = 0; i < Z.getBlockEdgesQty(); i++) {
@@ -285,4 +695,48 @@ public class AcMatrixOps {
         }
         return dU;
     }
+
+    /**
+     * <code>Z&#215J</code> для матрицы токов из <code>m</code> столбцов: каждый элемент Z читается один раз. Элемент
+     * верхнего треугольника симметричной Z рассеивается и в строку своего столбца.
+     */
+    private static void multColumns(ZMatrixAc Z, ZMatrixRMaj J, ZMatrixRMaj dU, int m) {
+        int stride = 2 * m;
+        double[] j = J.data;
+        double[] u = dU.data;
+        int blockEdgesQty = Z.getBlockEdgesQty();
+        for (int i = 0, a = 0; i < blockEdgesQty; i++, a += stride) {
+            double zRe = Z.data.getRe(i);
+            double zIm = Z.data.getIm(i);
+            for (int c = 0; c < stride; c += 2) {
+                double jRe = j[a + c];
+                double jIm = j[a + c + 1];
+                u[a + c] = jRe * zRe - jIm * zIm;
+                u[a + c + 1] = jRe * zIm + jIm * zRe;
+            }
+        }
+        boolean symmetric = Z.isSymmetric();
+        Arrays.fill(u, blockEdgesQty * stride, Z.size() * stride, 0);
+        for (int i = blockEdgesQty, a = blockEdgesQty * stride; i < Z.size(); i++, a += stride) {
+            for (int k = Z.begin(i); k < Z.end(i); k++) {
+                double zRe = Z.data.getRe(k);
+                double zIm = Z.data.getIm(k);
+                int src = Z.cols.get(k) * stride;
+                for (int c = 0; c < stride; c += 2) {
+                    double jRe = j[src + c];
+                    double jIm = j[src + c + 1];
+                    u[a + c] += jRe * zRe - jIm * zIm;
+                    u[a + c + 1] += jRe * zIm + jIm * zRe;
+                }
+                if (symmetric && src != a) {
+                    for (int c = 0; c < stride; c += 2) {
+                        double jRe = j[a + c];
+                        double jIm = j[a + c + 1];
+                        u[src + c] += jRe * zRe - jIm * zIm;
+                        u[src + c + 1] += jRe * zIm + jIm * zRe;
+                    }
+                }
+            }
+        }
+    }
 }
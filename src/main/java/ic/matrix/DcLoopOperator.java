@@ -0,0 +1,86 @@
+package ic.matrix;
+
+import org.ejml.data.DMatrixRMaj;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Оператор K&#215Z&#215K<sup>T</sup> системы контурных уравнений постоянного тока без сборки матрицы контурных
+ * сопротивлений.
+ * <p>
+ * Произведение <code>y = K&#215(Z&#215(K<sup>T</sup>&#215x))</code> вычисляется тремя последовательными проходами:
+ * по строкам K<sup>T</sup> (токи в ребрах), по Z (падения напряжений) и по строкам K (контурные напряжения).
+ * Требуемая память - <code>O(nnz(K) + nnz(Z))</code> вместо <code>O(L<sup>2</sup>)</code> для собранной матрицы;
+ * рабочие векторы длины E выделяются при назначении топологии. Предназначен для итерационных решателей
+ * ({@link ic.solver.DcConjugateGradient}).
+ * </p>
+ */
+public class DcLoopOperator {
+
+    private final DMatrixRMaj J = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj dU = new DMatrixRMaj(1, 1);
+    private IMatrixCsr K;
+    private IMatrixCsr KT;
+    private ZMatrixDc Z;
+
+    /**
+     * Назначить матрицу контуров. Матрицы не копируются и не должны изменяться, пока используется оператор.
+     * @param K  Матрица независимых контуров.
+     * @param KT Транспонированная матрица независимых контуров.
+     */
+    public void setTopology(@NotNull IMatrixCsr K, @NotNull IMatrixCsr KT) {
+        this.K = K;
+        this.KT = KT;
+        J.reshape(KT.numRows(), 1);
+        dU.reshape(KT.numRows(), 1);
+    }
+
+    /** Назначить матрицу сопротивлений (не копируется). */
+    public void setImpedances(@NotNull ZMatrixDc Z) {
+        this.Z = Z;
+    }
+
+    /** Порядок оператора (количество контуров). */
+    public int size() {
+        return K.numRows();
+    }
+
+    /**
+     * <code>y = K&#215Z&#215K<sup>T</sup>&#215x</code>.
+     * @param x Вектор длины {@link #size()}.
+     * @param y Вектор для сохранения результата длины не менее {@link #size()}.
+     */
+    public void mult(@NotNull double[] x, @NotNull double[] y) {
+        double[] j = J.data;
+        for (int e = 0; e < KT.numRows(); e++) {
+            double sum = 0;
+            for (int k = KT.begin(e); k < KT.end(e); k++) {
+                sum += KT.value(k) * x[KT.col(k)];
+            }
+            j[e] = sum;
+        }
+        DcMatrixOps.mult(Z, J, dU);
+        double[] u = dU.data;
+        for (int i = 0; i < K.numRows(); i++) {
+            double sum = 0;
+            for (int k = K.begin(i); k < K.end(i); k++) {
+                sum += K.value(k) * u[K.col(k)];
+            }
+            y[i] = sum;
+        }
+    }
+
+    /**
+     * Диагональ матрицы K&#215Z&#215K<sup>T</sup> (для предобусловливания).
+     * @param dest Вектор для сохранения результата длины не менее {@link #size()}.
+     */
+    public void diagonal(@NotNull double[] dest) {
+        for (int i = 0; i < K.numRows(); i++) {
+            double sum = 0;
+            for (int k = K.begin(i); k < K.end(i); k++) {
+                int v = K.value(k);
+                sum += v * v * Z.get(K.col(k));
+            }
+            dest[i] = sum;
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package ic.matrix;
 
+import org.ejml.UtilEjml;
+import org.ejml.data.DGrowArray;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.IGrowArray;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import ru.vniizht.asuterkortes.counter.latticemodel.DynamicDoubleArray;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /** Операции над матрицами решателя схем МПЗ постоянного тока. */
 public class DcMatrixOps {
@@ -13,7 +19,8 @@ public class DcMatrixOps {
     /**
      * Транспонировать матрицу <code>src</code>, результат сохранить в <code>dest</code>. Важное свойство алгоритма:
      * индексы ненулевых столбцов в <code>dest</code> окажутся упорядочены по возрастанию.
-     * <p>Если <code>dest == null</code>, она будет создана.</p>
+     * <p>Если <code>dest == null</code>, она будет создана в формате хранения <code>src</code>; иначе сохраняется
+     * формат <code>dest</code> (см. {@link IMatrixCsr#isSigned()}).</p>
      * @return <code>dest</code>.
      */
     @NotNull
@@ -22,17 +29,17 @@ public class DcMatrixOps {
             @Nullable IMatrixCsr dest
     ) {
         if (dest == null) {
-            dest = new IMatrixCsr(src.numRows());
+            dest = new IMatrixCsr(src.numRows(), src.isSigned());
         } else {
             dest.reset(src.numRows());
         }
-        dest.cols.setSize(src.cols.getSize());
-        dest.data.setSize(src.data.getSize());
+        int nzCnt = src.nzCnt();
+        dest.reserve(nzCnt);
         dest.rows.setSize(src.numCols() + 1);
         int[] destRowsData = dest.rows.getData();
         Arrays.fill(destRowsData, 0, dest.rows.getSize(), 0);
-        for (int i = 0; i < src.cols.getSize(); i++) {
-            destRowsData[src.cols.get(i) + 1]++;
+        for (int i = 0; i < nzCnt; i++) {
+            destRowsData[src.col(i) + 1]++;
         }
         int cumSum = 0;
         int tmp;
@@ -43,11 +50,10 @@ public class DcMatrixOps {
         }
         for (int i = 0; i < src.numRows(); i++) {
             for (int j = src.begin(i); j < src.end(i); j++) {
-                int v = src.data.get(j);
-                int destRowIdx = src.cols.get(j);
+                int v = src.value(j);
+                int destRowIdx = src.col(j);
                 int destIdx = destRowsData[destRowIdx + 1];
-                dest.data.set(destIdx, v);
-                dest.cols.set(destIdx, i);
+                dest.set(destIdx, i, v);
                 destRowsData[destRowIdx + 1]++;
             }
         }
@@ -76,39 +82,242 @@ public class DcMatrixOps {
             dest.reshape(K.numRows(), K.numRows());
             dest.zero();
         }
-        /* Главная диагональ и нижний треугольник. */
-        for (int i = 0, a = 0; i < K.numRows(); i++, a += dest.numCols) {
+        lowerRows(K, Z, KT, dest, 0, K.numRows());
+        mirrorLower(dest, 0, dest.numRows);
+        return dest;
+    }
+
+    /**
+     * K&#215Z&#215K<sup>T</sup> с параллельной обработкой строк в <code>pool</code>. Строки распределяются между
+     * участками по трудоемкости (суммарной длине строк K<sup>T</sup>, соответствующих ненулевым элементам строки K).
+     * Результат побитово совпадает с {@link #KZKT(IMatrixCsr, ZMatrixDc, IMatrixCsr, DMatrixRMaj)}.
+     * @param K    Матрица независимых контуров.
+     * @param Z    Матрица сопротивлений.
+     * @param KT   Транспонированная матрица K<sup>T</sup> с упорядоченными по возрастанию индексами столбцов.
+     * @param dest Матрица для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @param pool Пул потоков.
+     * @return <code>dest</code>
+     */
+    @NotNull
+    public static DMatrixRMaj KZKT(
+            @NotNull IMatrixCsr K,
+            @NotNull ZMatrixDc Z,
+            @NotNull IMatrixCsr KT,
+            @Nullable DMatrixRMaj dest,
+            @NotNull ForkJoinPool pool
+    ) {
+        if (dest == null) {
+            dest = new DMatrixRMaj(K.numRows(), K.numRows());
+        } else {
+            dest.reshape(K.numRows(), K.numRows());
+            dest.zero();
+        }
+        DMatrixRMaj res = dest;
+        ParallelRows.run(pool, K.numRows(), i -> rowCost(K, KT, i), (from, to) -> lowerRows(K, Z, KT, res, from, to));
+        ParallelRows.run(pool, res.numRows, i -> i, (from, to) -> mirrorLower(res, from, to));
+        return res;
+    }
+
+    /** Оценка трудоемкости <code>i</code>-й строки K&#215Z&#215K<sup>T</sup>. */
+    static long rowCost(IMatrixCsr K, IMatrixCsr KT, int i) {
+        long res = 0;
+        for (int j = K.begin(i); j < K.end(i); j++) {
+            int col = K.col(j);
+            res += KT.end(col) - KT.begin(col);
+        }
+        return res;
+    }
+
+    /** Главная диагональ и нижний треугольник строк <code>[from, to)</code>. */
+    private static void lowerRows(IMatrixCsr K, ZMatrixDc Z, IMatrixCsr KT, DMatrixRMaj dest, int from, int to) {
+        for (int i = from, a = from * dest.numCols; i < to; i++, a += dest.numCols) {
             double d = 0;
             for (int j = K.begin(i); j < K.end(i); j++) {
-                int kColIdx = K.cols.get(j);
+                int kColIdx = K.col(j);
                 double z = Z.get(kColIdx);
-                double kz = K.data.get(j) * z;
+                double kz = K.value(j) * z;
                 d += z; /* Диагональный элемент есть сумма сопротивлений всех ребер, входящих в контур. Его можно вычислить
                 без умножений и без обращения к матрице KT. */
                 for (int l = KT.begin(kColIdx); l < KT.end(kColIdx); l++) {
-                    int destColIdx = KT.cols.get(l);
+                    int destColIdx = KT.col(l);
                     if (destColIdx >= i) { /* В силу симметрии результирующей матрицы (dest), а также потому, что индексы
                      * ненулевых столбцов в KT следуют по возрастанию, внутренний цикл можно не доводить до конца. */
                         break;
                     }
-                    int kt = KT.data.get(l);
+                    int kt = KT.value(l);
                     dest.data[a + destColIdx] += kt * kz;
                 }
             }
             dest.data[a + i] = d;
         }
-        /* Отзеркалить нижний треугольник наверх. */
+    }
+
+    /** Отзеркалить наверх строки <code>[from, to)</code> нижнего треугольника. */
+    private static void mirrorLower(DMatrixRMaj dest, int from, int to) {
         int n = dest.numRows;
-        for (int i = 1; i < n; i++) {
+        for (int i = Math.max(from, 1); i < to; i++) {
             for (int j = 0; j < i; j++) {
                 int ij = i * n + j;
                 int ji = j * n + i;
                 dest.data[ji] = dest.data[ij];
             }
         }
+    }
+
+    /**
+     * K&#215Z&#215K<sup>T</sup> в разреженном формате CSC.
+     * <p>
+     * Вычисляется только нижний треугольник (вместе с главной диагональю); <code>i</code>-я строка нижнего треугольника
+     * записывается в <code>i</code>-й столбец <code>dest</code>. В силу симметрии результата это и есть верхний треугольник
+     * матрицы в формате CSC - ровно та часть, которую использует
+     * {@link org.ejml.sparse.csc.factory.LinearSolverFactory_DSCC#cholesky}. Индексы строк в каждом столбце упорядочены по
+     * возрастанию, диагональный элемент - последний в столбце.
+     * </p>
+     * @param K    Матрица независимых контуров.
+     * @param Z    Матрица сопротивлений.
+     * @param KT   Транспонированная матрица независимых контуров K<sup>T</sup>. Индексы ненулевых столбцов, относящиеся
+     *             к одной строке, должны быть отсортированы по возрастанию.
+     * @param dest Матрица для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @param gw   Рабочий массив (необязательный).
+     * @param gx   Рабочий массив (необязательный).
+     * @return <code>dest</code>
+     */
+    @NotNull
+    public static DMatrixSparseCSC KZKT(
+            @NotNull IMatrixCsr K,
+            @NotNull ZMatrixDc Z,
+            @NotNull IMatrixCsr KT,
+            @Nullable DMatrixSparseCSC dest,
+            @Nullable IGrowArray gw,
+            @Nullable DGrowArray gx
+    ) {
+        int n = K.numRows();
+        if (dest == null) {
+            dest = new DMatrixSparseCSC(n, n, K.nzCnt() + n);
+        } else {
+            dest.reshape(n, n, K.nzCnt() + n);
+        }
+        int[] w = UtilEjml.adjust(gw, 2 * n);
+        double[] x = UtilEjml.adjust(gx, n);
+        Arrays.fill(w, 0, n, -1); /* w[0, n) - метки посещенных столбцов, w[n, 2n) - список посещенных столбцов. */
+        int nz = 0;
+        for (int i = 0; i < n; i++) {
+            dest.col_idx[i] = nz;
+            int touchedCnt = 0;
+            double d = 0;
+            for (int j = K.begin(i); j < K.end(i); j++) {
+                int kColIdx = K.col(j);
+                double z = Z.get(kColIdx);
+                double kz = K.value(j) * z;
+                d += z;
+                for (int l = KT.begin(kColIdx); l < KT.end(kColIdx); l++) {
+                    int destColIdx = KT.col(l);
+                    if (destColIdx >= i) {
+                        break;
+                    }
+                    if (w[destColIdx] != i) {
+                        w[destColIdx] = i;
+                        w[n + touchedCnt++] = destColIdx;
+                        x[destColIdx] = 0;
+                    }
+                    x[destColIdx] += KT.value(l) * kz;
+                }
+            }
+            Arrays.sort(w, n, n + touchedCnt);
+            if (nz + touchedCnt + 1 > dest.nz_values.length) {
+                dest.growMaxLength(Math.max(2 * dest.nz_values.length, nz + touchedCnt + 1), true);
+            }
+            for (int k = n; k < n + touchedCnt; k++) {
+                int rowIdx = w[k];
+                dest.nz_rows[nz] = rowIdx;
+                dest.nz_values[nz++] = x[rowIdx];
+            }
+            dest.nz_rows[nz] = i;
+            dest.nz_values[nz++] = d;
+        }
+        dest.col_idx[n] = nz;
+        dest.nz_length = nz;
+        dest.indicesSorted = true;
+        return dest;
+    }
+
+    /**
+     * Числовая фаза K&#215Z&#215K<sup>T</sup> по заранее вычисленному портрету (см. {@link KZKTPattern#symbolicDc}).
+     * @param pattern Портрет и карта рассеяния.
+     * @param Z       Матрица сопротивлений.
+     * @param dest    Матрица для сохранения результата (верхний треугольник в формате CSC). Если <code>dest == null</code>,
+     *                она будет создана.
+     * @return <code>dest</code>
+     */
+    @NotNull
+    public static DMatrixSparseCSC KZKT(
+            @NotNull KZKTPattern pattern,
+            @NotNull ZMatrixDc Z,
+            @Nullable DMatrixSparseCSC dest
+    ) {
+        int n = pattern.size();
+        int nz = pattern.nzCnt();
+        if (dest == null) {
+            dest = new DMatrixSparseCSC(n, n, nz);
+        } else {
+            dest.reshape(n, n, nz);
+        }
+        System.arraycopy(pattern.rows.getData(), 0, dest.col_idx, 0, n + 1);
+        System.arraycopy(pattern.cols.getData(), 0, dest.nz_rows, 0, nz);
+        double[] values = dest.nz_values;
+        Arrays.fill(values, 0, nz, 0);
+        scatter(pattern, Z, values);
+        dest.nz_length = nz;
+        dest.indicesSorted = true;
+        return dest;
+    }
+
+    /**
+     * Числовая фаза K&#215Z&#215K<sup>T</sup> по заранее вычисленному портрету (см. {@link KZKTPattern#symbolicDc}).
+     * Значения накапливаются в рабочем массиве портрета, поэтому одновременные вызовы с одним портретом недопустимы.
+     * @param pattern Портрет и карта рассеяния.
+     * @param Z       Матрица сопротивлений.
+     * @param dest    Матрица для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @return <code>dest</code>
+     */
+    @NotNull
+    public static DMatrixRMaj KZKT(
+            @NotNull KZKTPattern pattern,
+            @NotNull ZMatrixDc Z,
+            @Nullable DMatrixRMaj dest
+    ) {
+        int n = pattern.size();
+        if (dest == null) {
+            dest = new DMatrixRMaj(n, n);
+        } else {
+            dest.reshape(n, n);
+            dest.zero();
+        }
+        pattern.values.setSize(pattern.nzCnt());
+        double[] values = pattern.values.getData();
+        Arrays.fill(values, 0, pattern.nzCnt(), 0);
+        scatter(pattern, Z, values);
+        int[] cols = pattern.cols.getData();
+        for (int i = 0; i < n; i++) {
+            for (int k = pattern.rows.get(i); k < pattern.rows.get(i + 1); k++) {
+                int j = cols[k];
+                dest.data[i * n + j] = values[k];
+                dest.data[j * n + i] = values[k];
+            }
+        }
         return dest;
     }
 
+    private static void scatter(KZKTPattern pattern, ZMatrixDc Z, double[] values) {
+        int[] slots = pattern.slots.getData();
+        int[] zIdx = pattern.zIdx.getData();
+        int[] coefs = pattern.coefs.getData();
+        double[] z = Z.data;
+        for (int t = 0; t < pattern.contributionsCnt(); t++) {
+            values[slots[t]] += coefs[t] * z[zIdx[t]];
+        }
+    }
+
     /**
      * Операция K&#215E. Для эффективности порядок операндов изменен, и фактически вычисляется E<sup>T</sup>&#215K<sup>T</sup>.
      * @param E    Вектор ЭДС.
@@ -134,8 +343,8 @@ public class DcMatrixOps {
             int r = E.nzi.get(i);
             double v = E.data.get(r);
             for (int j = KT.begin(r); j < KT.end(r); j++) {
-                int colIdx = KT.cols.get(j);
-                kvData[colIdx] += KT.data.get(j) * v;
+                int colIdx = KT.col(j);
+                kvData[colIdx] += KT.value(j) * v;
             }
         }
         return dest;
@@ -169,8 +378,8 @@ public class DcMatrixOps {
             int r = I.nzi.get(i);
             double v = I.data.get(r) * Z.get(r);
             for (int j = KT.begin(r); j < KT.end(r); j++) {
-                int colIdx = KT.cols.get(j);
-                destData[colIdx] += KT.data.get(j) * v;
+                int colIdx = KT.col(j);
+                destData[colIdx] += KT.value(j) * v;
             }
         }
         return dest;
@@ -198,26 +407,125 @@ public class DcMatrixOps {
         return dest;
     }
 
+    /**
+     * Операция <code>KE + KZI</code> для пакета из <code>m</code> нагрузок (столбцы результата).
+     * <p>
+     * Выполняется за один проход по K<sup>T</sup>: сначала для объединения ненулевых позиций всех векторов собираются
+     * строки значений <code>E<sub>c</sub>[r] + Z[r]&#183I<sub>c</sub>[r]</code>, затем каждая затронутая строка
+     * K<sup>T</sup> читается один раз и прибавляется ко всем <code>m</code> столбцам сразу (строки результата
+     * непрерывны в памяти).
+     * </p>
+     * @param E    Векторы ЭДС.
+     * @param I    Векторы задающих токов (столько же, сколько векторов ЭДС).
+     * @param Z    Матрица сопротивлений.
+     * @param KT   Транспонированная матрица контуров K<sup>T</sup>.
+     * @param dest Матрица <code>L&#215m</code> для сохранения результата. Если <code>dest == null</code>, она будет создана.
+     * @param gw   Рабочий массив (необязательный).
+     * @param gx   Рабочий массив (необязательный).
+     * @return <code>dest</code>.
+     */
+    @NotNull
+    public static DMatrixRMaj rhs(
+            @NotNull List<VectorDc> E,
+            @NotNull List<VectorDc> I,
+            @NotNull ZMatrixDc Z,
+            @NotNull IMatrixCsr KT,
+            @Nullable DMatrixRMaj dest,
+            @Nullable IGrowArray gw,
+            @Nullable DGrowArray gx
+    ) {
+        if (E.size() != I.size()) {
+            throw new IllegalArgumentException("Количество векторов ЭДС и задающих токов различается");
+        }
+        int m = E.size();
+        int numEdges = KT.numRows();
+        if (dest == null) {
+            dest = new DMatrixRMaj(KT.numCols(), m);
+        } else {
+            dest.reshape(KT.numCols(), m);
+            dest.zero();
+        }
+        int nzTotal = 0;
+        for (int c = 0; c < m; c++) {
+            nzTotal += E.get(c).nzi.getSize() + I.get(c).nzi.getSize();
+        }
+        int[] w = UtilEjml.adjust(gw, numEdges + nzTotal);
+        double[] x = UtilEjml.adjust(gx, nzTotal * m);
+        Arrays.fill(w, 0, numEdges, -1); /* w[0, E) - номер строки значений ребра, w[E, E + cnt) - список ребер. */
+        Arrays.fill(x, 0, nzTotal * m, 0);
+        int cnt = 0;
+        for (int c = 0; c < m; c++) {
+            VectorDc e = E.get(c);
+            for (int i = 0; i < e.nzi.getSize(); i++) {
+                int r = e.nzi.get(i);
+                cnt = touch(w, numEdges, cnt, r);
+                x[w[r] * m + c] += e.data.get(r);
+            }
+            VectorDc cur = I.get(c);
+            for (int i = 0; i < cur.nzi.getSize(); i++) {
+                int r = cur.nzi.get(i);
+                cnt = touch(w, numEdges, cnt, r);
+                x[w[r] * m + c] += Z.get(r) * cur.data.get(r);
+            }
+        }
+        Arrays.sort(w, numEdges, numEdges + cnt); /* Обход K<sup>T</sup> по возрастанию номеров строк. */
+        double[] d = dest.data;
+        for (int t = 0; t < cnt; t++) {
+            int r = w[numEdges + t];
+            int src = w[r] * m;
+            for (int j = KT.begin(r); j < KT.end(r); j++) {
+                int dst = KT.col(j) * m;
+                int k = KT.value(j);
+                for (int c = 0; c < m; c++) {
+                    d[dst + c] += k * x[src + c];
+                }
+            }
+        }
+        return dest;
+    }
+
+    private static int touch(int[] w, int numEdges, int cnt, int r) {
+        if (w[r] < 0) {
+            w[r] = cnt;
+            w[numEdges + cnt++] = r;
+        }
+        return cnt;
+    }
+
     /**
      * Операция <code>K<sup>T</sup>&#215I<sub>cc</sub></code>
      * @param KT   Транспонированная матрица независимых контуров.
-     * @param Icc  Вектор контурных токов.
-     * @param dest Вектор для сохранения результата. Если <code>dest == null</code>, он будет создан.
+     * @param Icc  Вектор контурных токов или матрица <code>L&#215m</code> контурных токов пакета нагрузок.
+     * @param dest Матрица <code>E&#215m</code> для сохранения результата. Если <code>dest == null</code>, она будет создана.
      * @return <code>dest</code>
      */
     @NotNull
     public static DMatrixRMaj mult(@NotNull IMatrixCsr KT, @NotNull DMatrixRMaj Icc, @Nullable DMatrixRMaj dest) {
+        int m = Icc.numCols;
         if (dest == null) {
-            dest = new DMatrixRMaj(KT.numRows(), 1);
+            dest = new DMatrixRMaj(KT.numRows(), m);
         } else {
-            dest.reshape(KT.numRows(), 1);
+            dest.reshape(KT.numRows(), m);
         }
-        for (int i = 0; i < KT.numRows(); i++) {
-            double sum = 0;
+        if (m == 1) {
+            for (int i = 0; i < KT.numRows(); i++) {
+                double sum = 0;
+                for (int j = KT.begin(i); j < KT.end(i); j++) {
+                    sum += KT.value(j) * Icc.data[KT.col(j)];
+                }
+                dest.data[i] = sum;
+            }
+            return dest;
+        }
+        for (int i = 0, a = 0; i < KT.numRows(); i++, a += m) {
+            Arrays.fill(dest.data, a, a + m, 0);
             for (int j = KT.begin(i); j < KT.end(i); j++) {
-                sum += KT.data.get(j) * Icc.data[KT.cols.get(j)];
+                int src = KT.col(j) * m;
+                int k = KT.value(j);
+                for (int c = 0; c < m; c++) {
+                    dest.data[a + c] += k * Icc.data[src + c];
+                }
             }
-            dest.data[i] = sum;
         }
         return dest;
     }
@@ -225,18 +533,22 @@ public class DcMatrixOps {
     /**
      * Операция <code>Z&#215J</code>
      * @param Z  Матрица сопротивлений.
-     * @param J  Вектор токов в ребрах.
-     * @param dU Результирующий вектор падений напряжений на ребрах.
+     * @param J  Вектор токов в ребрах или матрица <code>E&#215m</code> токов пакета нагрузок.
+     * @param dU Результирующий вектор (матрица) падений напряжений на ребрах.
      * @return <code>dU</code>. Если <code>dU == null</code>, он будет создан.
      */
     public static DMatrixRMaj mult(@NotNull ZMatrixDc Z, @NotNull DMatrixRMaj J, @Nullable DMatrixRMaj dU) {
+        int m = J.numCols;
         if (dU == null) {
-            dU = new DMatrixRMaj(Z.size(), 1);
+            dU = new DMatrixRMaj(Z.size(), m);
         } else {
-            dU.reshape(Z.size(), 1);
+            dU.reshape(Z.size(), m);
         }
-        for (int i = 0; i < Z.size(); i++) {
-            dU.set(i, Z.get(i) * J.get(i, 0));
+        for (int i = 0, a = 0; i < Z.size(); i++, a += m) {
+            double z = Z.get(i);
+            for (int c = 0; c < m; c++) {
+                dU.data[a + c] = z * J.data[a + c];
+            }
         }
         return dU;
     }
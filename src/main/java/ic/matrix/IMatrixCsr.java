@@ -1,27 +1,54 @@
 package ic.matrix;
 
+import org.jetbrains.annotations.NotNull;
 import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
 
-/** Разреженная матрица целых чисел в формате CSR. */
+/**
+ * Разреженная матрица целых чисел в формате CSR.
+ * <p>
+ * Для матриц контуров, все элементы которых равны &#177;1, предусмотрен знаковый формат ({@link #isSigned()}):
+ * знак элемента хранится в индексе столбца (<code>~colIdx</code> для -1), а массив значений не используется.
+ * Это вдвое сокращает объем данных, читаемых ядрами {@link DcMatrixOps} и {@link AcMatrixOps}. Массив значений
+ * закрыт: значения элементов в любом формате читаются только через {@link #value(int)}, индексы столбцов - через
+ * {@link #col(int)}.
+ * </p>
+ */
 public class IMatrixCsr {
 
-    public final DynamicIntArray data;
+    /** Значения ненулевых элементов. В знаковом формате пуст, см. {@link #value(int)}. */
+    private final DynamicIntArray data;
     public final DynamicIntArray rows;
-    public final DynamicIntArray cols;
+    /** Индексы столбцов ненулевых элементов. В знаковом формате - с закодированным знаком, см. {@link #col(int)}. */
+    private final DynamicIntArray cols;
+    private final boolean signed;
     private int numCols;
 
     /**
      * @param numCols Количество столбцов.
      */
     public IMatrixCsr(int numCols) {
+        this(numCols, false);
+    }
+
+    /**
+     * @param numCols Количество столбцов.
+     * @param signed  Знаковый формат: допускаются только элементы &#177;1, массив значений не используется.
+     */
+    public IMatrixCsr(int numCols, boolean signed) {
         this.numCols = numCols;
+        this.signed = signed;
         int numRows = 12;
         rows = new DynamicIntArray(numRows);
-        data = new DynamicIntArray(numCols / 4 * numRows);
+        data = new DynamicIntArray(signed ? 1 : numCols / 4 * numRows);
         cols = new DynamicIntArray(numCols / 4 * numRows);
         rows.append(0);
     }
 
+    /** Знаковый ли формат хранения (элементы &#177;1, знак в индексе столбца). */
+    public boolean isSigned() {
+        return signed;
+    }
+
     /** Количество строк. */
     public int numRows() {
         return rows.getSize() - 1;
@@ -47,6 +74,17 @@ public class IMatrixCsr {
         return rows.get(rowIdx + 1);
     }
 
+    /** Индекс столбца элемента с номером <code>idx</code> в массиве <code>cols</code> (в любом формате). */
+    public int col(int idx) {
+        int c = cols.get(idx);
+        return c ^ (c >> 31);
+    }
+
+    /** Значение элемента с номером <code>idx</code> в массиве <code>cols</code> (в любом формате). */
+    public int value(int idx) {
+        return signed ? (cols.get(idx) >> 31) | 1 : data.get(idx);
+    }
+
     /** Сбросить состояние к "пустому": 0 строк, <code>numCols</code> столбцов. */
     public void reset(int numCols) {
         this.numCols = numCols;
@@ -56,6 +94,11 @@ public class IMatrixCsr {
         cols.setSize(0);
     }
 
+    /** Изменить количество столбцов без изменения элементов (например, при добавлении ребра в граф). */
+    public void setNumCols(int numCols) {
+        this.numCols = numCols;
+    }
+
     /** Завершить формирование текущей строки и начать переключиться в режим формирования следующей строки. */
     public void addRow() {
         rows.append(last(rows));
@@ -64,12 +107,144 @@ public class IMatrixCsr {
     /**
      * Добавить ненулевой элемент в <code>colIdx</code>-й столбец текущей строки.
      * Контроль за отсутствием дубликатов и за тем, в самом ли деле <code>value = 0</code>, - ответственность вызывающего
-     * кода. Здесь нет проверок.
+     * кода. Здесь нет проверок, кроме одной: в знаковом формате допускаются только значения &#177;1.
+     * @throws IllegalArgumentException Если матрица в знаковом формате, а <code>value</code> не равно &#177;1.
      */
     public void append(int colIdx, int value) {
-        incLast(rows, 1);
-        cols.append(colIdx);
-        data.append(value);
+        if (signed) {
+            checkSigned(value);
+            incLast(rows, 1);
+            cols.append(value < 0 ? ~colIdx : colIdx);
+        } else {
+            incLast(rows, 1);
+            cols.append(colIdx);
+            data.append(value);
+        }
+    }
+
+    /**
+     * Установить количество элементов <code>nzCnt</code> без изменения строк; новые элементы записываются
+     * {@link #set(int, int, int)}.
+     */
+    void reserve(int nzCnt) {
+        cols.setSize(nzCnt);
+        if (!signed) {
+            data.setSize(nzCnt);
+        }
+    }
+
+    /**
+     * Записать элемент с номером <code>idx</code>, уже зарезервированный в массивах <code>cols</code> и
+     * <code>data</code>.
+     * @throws IllegalArgumentException Если матрица в знаковом формате, а <code>value</code> не равно &#177;1.
+     */
+    void set(int idx, int colIdx, int value) {
+        if (signed) {
+            checkSigned(value);
+            cols.set(idx, value < 0 ? ~colIdx : colIdx);
+        } else {
+            cols.set(idx, colIdx);
+            data.set(idx, value);
+        }
+    }
+
+    /**
+     * Вставить <code>k</code>-й элемент <code>(colIdx[k], values[k])</code> в строку <code>rowIdx[k]</code> перед
+     * элементом с номером <code>pos[k]</code> (<code>pos[k] = end(rowIdx[k])</code> - в конец строки). Вставки должны
+     * быть упорядочены по неубыванию <code>rowIdx</code> и <code>pos</code>. Элементы сдвигаются одним проходом с
+     * конца: <code>O(nzCnt + numRows)</code> независимо от количества вставок.
+     * @throws IllegalArgumentException Если матрица в знаковом формате, а одно из значений не равно &#177;1 (матрица
+     *                                  при этом не изменяется).
+     */
+    public void insert(
+            @NotNull DynamicIntArray rowIdx,
+            @NotNull DynamicIntArray pos,
+            @NotNull DynamicIntArray colIdx,
+            @NotNull DynamicIntArray values
+    ) {
+        int cnt = rowIdx.getSize();
+        if (cnt == 0) {
+            return;
+        }
+        if (signed) {
+            for (int k = 0; k < cnt; k++) {
+                checkSigned(values.get(k));
+            }
+        }
+        int nzCnt = nzCnt();
+        cols.setSize(nzCnt + cnt);
+        if (!signed) {
+            data.setSize(nzCnt + cnt);
+        }
+        int[] c = cols.getData();
+        int[] d = data.getData();
+        int src = nzCnt;
+        for (int k = cnt - 1; k >= 0; k--) {
+            int p = pos.get(k);
+            System.arraycopy(c, p, c, p + k + 1, src - p);
+            if (!signed) {
+                System.arraycopy(d, p, d, p + k + 1, src - p);
+            }
+            set(p + k, colIdx.get(k), values.get(k));
+            src = p;
+        }
+        int[] r = rows.getData();
+        for (int i = 1, k = 0; i <= numRows(); i++) {
+            while (k < cnt && rowIdx.get(k) < i) {
+                k++;
+            }
+            r[i] += k;
+        }
+    }
+
+    private static void checkSigned(int value) {
+        if (value != 1 && value != -1) {
+            throw new IllegalArgumentException("Знаковый формат допускает только элементы ±1: " + value);
+        }
+    }
+
+    /** Удалить строку <code>rowIdx</code>; следующие строки сдвигаются на одну вверх. */
+    public void removeRow(int rowIdx) {
+        int begin = begin(rowIdx);
+        int end = end(rowIdx);
+        int len = end - begin;
+        int nzCnt = nzCnt();
+        System.arraycopy(cols.getData(), end, cols.getData(), begin, nzCnt - end);
+        cols.setSize(nzCnt - len);
+        if (!signed) {
+            System.arraycopy(data.getData(), end, data.getData(), begin, nzCnt - end);
+            data.setSize(nzCnt - len);
+        }
+        int[] r = rows.getData();
+        int numRows = numRows();
+        for (int i = rowIdx + 1; i <= numRows; i++) {
+            r[i - 1] = r[i] - len;
+        }
+        rows.setSize(numRows);
+    }
+
+    /**
+     * Удалить столбец <code>colIdx</code>: его элементы исключаются, индексы следующих столбцов уменьшаются на единицу
+     * (порядок элементов в строках сохраняется). Один проход по элементам.
+     */
+    public void removeColumn(int colIdx) {
+        int[] r = rows.getData();
+        int dst = 0;
+        for (int i = 0, k = 0; i < numRows(); i++) {
+            int end = r[i + 1];
+            for (; k < end; k++) {
+                int col = col(k);
+                if (col != colIdx) {
+                    set(dst++, col > colIdx ? col - 1 : col, value(k));
+                }
+            }
+            r[i + 1] = dst;
+        }
+        cols.setSize(dst);
+        if (!signed) {
+            data.setSize(dst);
+        }
+        numCols--;
     }
 
     /**
@@ -78,13 +253,60 @@ public class IMatrixCsr {
      */
     public int get(int i, int j) {
         for (int k = begin(i); k < end(i); k++) {
-            if (cols.get(k) == j) {
-                return data.get(k);
+            if (col(k) == j) {
+                return value(k);
             }
         }
         return 0;
     }
 
+    /**
+     * Скопировать содержимое в <code>dest</code>. Память <code>dest</code> переиспользуется, если ее достаточно.
+     * Формат хранения <code>dest</code> сохраняется: при различии форматов элементы перекодируются.
+     */
+    public void copyTo(IMatrixCsr dest) {
+        dest.numCols = numCols;
+        rows.copyTo(dest.rows);
+        if (signed == dest.signed) {
+            data.copyTo(dest.data);
+            cols.copyTo(dest.cols);
+            return;
+        }
+        int nzCnt = nzCnt();
+        dest.cols.setSize(nzCnt);
+        dest.data.setSize(dest.signed ? 0 : nzCnt);
+        for (int k = 0; k < nzCnt; k++) {
+            dest.set(k, col(k), value(k));
+        }
+    }
+
+    /**
+     * Дописать строки <code>src</code> после последней строки. Количество столбцов не изменяется. Формат хранения
+     * сохраняется: при различии форматов элементы перекодируются.
+     */
+    public void appendRows(@NotNull IMatrixCsr src) {
+        int nzCnt = nzCnt();
+        int srcNzCnt = src.nzCnt();
+        int[] r = src.rows.getData();
+        for (int i = 1; i <= src.numRows(); i++) {
+            rows.append(nzCnt + r[i]);
+        }
+        cols.setSize(nzCnt + srcNzCnt);
+        if (!signed) {
+            data.setSize(nzCnt + srcNzCnt);
+        }
+        if (signed == src.signed) {
+            System.arraycopy(src.cols.getData(), 0, cols.getData(), nzCnt, srcNzCnt);
+            if (!signed) {
+                System.arraycopy(src.data.getData(), 0, data.getData(), nzCnt, srcNzCnt);
+            }
+            return;
+        }
+        for (int k = 0; k < srcNzCnt; k++) {
+            set(nzCnt + k, src.col(k), src.value(k));
+        }
+    }
+
     /** Напечатать плотное представление в System.out. */
     public void print() {
         for (int i = 0; i < numRows(); i++) {
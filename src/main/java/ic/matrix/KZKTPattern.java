@@ -0,0 +1,207 @@
+package ic.matrix;
+
+import org.jetbrains.annotations.NotNull;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicComplexArray;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicDoubleArray;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
+
+import java.util.Arrays;
+
+/**
+ * Символьная часть операции K&#215Z&#215K<sup>T</sup>: портрет результата и карта рассеяния.
+ * <p>
+ * Портрет - нижний треугольник матрицы контурных сопротивлений (вместе с главной диагональю), записанный по строкам.
+ * В силу симметрии <code>i</code>-я строка нижнего треугольника совпадает с <code>i</code>-м столбцом верхнего, поэтому
+ * портрет без изменений годится как структура {@link org.ejml.data.DMatrixSparseCSC} для разреженного разложения Холецкого.
+ * Индексы в каждой строке упорядочены по возрастанию, диагональный элемент - последний.
+ * </p>
+ * <p>
+ * Карта рассеяния - последовательность вкладов <code>(slot, zIdx, coef)</code>: к элементу портрета с номером
+ * <code>slot</code> прибавляется <code>coef&#183Z.data[zIdx]</code>. Символьная фаза выполняется только при изменении
+ * топологии (матрицы K), а для схем переменного тока - еще и структуры {@link ZMatrixAc}. Числовая фаза
+ * ({@link DcMatrixOps#KZKT(KZKTPattern, ZMatrixDc, org.ejml.data.DMatrixSparseCSC)} и аналогичные) сводится к одному
+ * линейному проходу по карте.
+ * </p>
+ * <p>
+ * Класс не потокобезопасен. Символьная фаза использует собственные рабочие массивы портрета, а числовые фазы для
+ * плотных матриц ({@link DcMatrixOps#KZKT(KZKTPattern, ZMatrixDc, org.ejml.data.DMatrixRMaj)},
+ * {@link AcMatrixOps#KZKT(KZKTPattern, ZMatrixAc, org.ejml.data.ZMatrixRMaj)}) накапливают значения в его рабочих
+ * массивах <code>values</code> и <code>complexValues</code>. Поэтому один портрет нельзя одновременно использовать в
+ * нескольких потоках: для параллельного расчета нескольких матриц каждому потоку нужен свой экземпляр.
+ * </p>
+ */
+public class KZKTPattern {
+
+    /** Начала строк портрета в массиве <code>cols</code> (<code>size() + 1</code> элементов). */
+    public final DynamicIntArray rows = new DynamicIntArray(16);
+    /** Индексы столбцов элементов портрета. */
+    public final DynamicIntArray cols = new DynamicIntArray(16);
+    /** Номер элемента портрета, к которому относится вклад. */
+    public final DynamicIntArray slots = new DynamicIntArray(16);
+    /** Индекс в массиве данных матрицы сопротивлений. */
+    public final DynamicIntArray zIdx = new DynamicIntArray(16);
+    /** Множитель (произведение элементов K). */
+    public final DynamicIntArray coefs = new DynamicIntArray(16);
+    /** Рабочий массив для числовой фазы (схемы постоянного тока). Делает портрет непотокобезопасным. */
+    final DynamicDoubleArray values = new DynamicDoubleArray(16);
+    /** Рабочий массив для числовой фазы (схемы переменного тока). Делает портрет непотокобезопасным. */
+    final DynamicComplexArray complexValues = new DynamicComplexArray(16);
+    private final DynamicIntArray marks = new DynamicIntArray(16);
+    private final DynamicIntArray touched = new DynamicIntArray(16);
+    private int size;
+    private int zSize;
+
+    /** Размерность матрицы контурных сопротивлений (количество контуров). */
+    public int size() {
+        return size;
+    }
+
+    /** Количество элементов портрета. */
+    public int nzCnt() {
+        return cols.getSize();
+    }
+
+    /** Количество вкладов в карте рассеяния. */
+    public int contributionsCnt() {
+        return slots.getSize();
+    }
+
+    /** Количество ребер графа, для которого построен портрет. */
+    public int edgesCnt() {
+        return zSize;
+    }
+
+    /**
+     * Символьная фаза для схем постоянного тока.
+     * @param K  Матрица независимых контуров.
+     * @param KT Транспонированная матрица K<sup>T</sup> с упорядоченными по возрастанию индексами столбцов.
+     * @return <code>this</code>.
+     */
+    @NotNull
+    public KZKTPattern symbolicDc(@NotNull IMatrixCsr K, @NotNull IMatrixCsr KT) {
+        init(K.numRows(), K.numCols());
+        int[] w = marks.getData();
+        for (int i = 0; i < size; i++) {
+            int first = slots.getSize();
+            touched.setSize(0);
+            for (int j = K.begin(i); j < K.end(i); j++) {
+                int kColIdx = K.col(j);
+                int k = K.value(j);
+                addContribution(i, kColIdx, 1);
+                for (int l = KT.begin(kColIdx); l < KT.end(kColIdx); l++) {
+                    int destColIdx = KT.col(l);
+                    if (destColIdx >= i) {
+                        break;
+                    }
+                    touch(w, destColIdx, i);
+                    addContribution(destColIdx, kColIdx, k * KT.value(l));
+                }
+            }
+            closeRow(i, first);
+        }
+        return this;
+    }
+
+    /**
+     * Символьная фаза для схем переменного тока.
+     * @param K  Матрица независимых контуров.
+     * @param Z  Матрица сопротивлений. Используется только ее структура (<code>begin/end/cols</code>); числовая фаза
+     *           допустима для любой матрицы с той же структурой. Матрица вне кучи ({@link ZMatrixAc#offHeap})
+     *           не поддерживается: индексы ее данных относятся к окну загруженной строки. Не поддерживается и
+     *           {@link ZMatrixAc#isSymmetric() симметричная} матрица.
+     * @param KT Транспонированная матрица K<sup>T</sup> с упорядоченными по возрастанию индексами столбцов.
+     * @return <code>this</code>.
+     */
+    @NotNull
+    public KZKTPattern symbolicAc(@NotNull IMatrixCsr K, @NotNull ZMatrixAc Z, @NotNull IMatrixCsr KT) {
+        if (Z.isOffHeap()) {
+            throw new IllegalArgumentException("Портрет не строится для матрицы сопротивлений вне кучи");
+        }
+        if (Z.isSymmetric()) {
+            throw new IllegalArgumentException("Портрет не строится для симметричной матрицы сопротивлений");
+        }
+        init(K.numRows(), K.numCols());
+        int[] w = marks.getData();
+        for (int i = 0; i < size; i++) {
+            int first = slots.getSize();
+            touched.setSize(0);
+            for (int j = K.begin(i); j < K.end(i); j++) {
+                int kColIdx = K.col(j);
+                int k = K.value(j);
+                if (kColIdx < Z.getBlockEdgesQty()) {
+                    scatterAc(w, i, k, kColIdx, kColIdx, KT);
+                } else {
+                    for (int z = Z.begin(kColIdx); z < Z.end(kColIdx); z++) {
+                        scatterAc(w, i, k, z, Z.cols.get(z), KT);
+                    }
+                }
+            }
+            closeRow(i, first);
+        }
+        return this;
+    }
+
+    private void scatterAc(int[] w, int i, int k, int zDataIdx, int zColIdx, IMatrixCsr KT) {
+        for (int l = KT.begin(zColIdx); l < KT.end(zColIdx); l++) {
+            int destColIdx = KT.col(l);
+            if (destColIdx > i) {
+                break;
+            }
+            if (destColIdx < i) {
+                touch(w, destColIdx, i);
+            }
+            addContribution(destColIdx, zDataIdx, k * KT.value(l));
+        }
+    }
+
+    private void init(int size, int zSize) {
+        this.size = size;
+        this.zSize = zSize;
+        rows.setSize(1);
+        rows.set(0, 0);
+        cols.setSize(0);
+        slots.setSize(0);
+        zIdx.setSize(0);
+        coefs.setSize(0);
+        marks.setSize(size);
+        Arrays.fill(marks.getData(), 0, size, -1);
+    }
+
+    private void touch(int[] w, int colIdx, int rowIdx) {
+        if (w[colIdx] != rowIdx) {
+            w[colIdx] = rowIdx;
+            touched.append(colIdx);
+        }
+    }
+
+    /** Пока строка не закрыта, в <code>slots</code> временно хранится индекс столбца, а не номер элемента портрета. */
+    private void addContribution(int colIdx, int zDataIdx, int coef) {
+        slots.append(colIdx);
+        zIdx.append(zDataIdx);
+        coefs.append(coef);
+    }
+
+    /** Упорядочить столбцы строки, дописать их в портрет и заменить индексы столбцов номерами элементов портрета. */
+    private void closeRow(int rowIdx, int firstContribution) {
+        int[] t = touched.getData();
+        int cnt = touched.getSize();
+        Arrays.sort(t, 0, cnt);
+        int rowBegin = cols.getSize();
+        int[] w = marks.getData();
+        for (int k = 0; k < cnt; k++) {
+            cols.append(t[k]);
+            w[t[k]] = -(rowBegin + k) - 2; /* Отрицательные значения не пересекаются с номерами строк. */
+        }
+        int diagSlot = rowBegin + cnt;
+        cols.append(rowIdx);
+        rows.append(cols.getSize());
+        int[] s = slots.getData();
+        for (int k = firstContribution; k < slots.getSize(); k++) {
+            int colIdx = s[k];
+            s[k] = colIdx == rowIdx ? diagSlot : -w[colIdx] - 2;
+        }
+        for (int k = 0; k < cnt; k++) {
+            w[t[k]] = -1;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ic.matrix;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Массив элементов разреженной комплексной матрицы (индекс столбца, вещественная и мнимая части) вне кучи Java,
+ * адресуемый индексом <code>long</code>.
+ * <p>
+ * Хранится страницами - прямыми буферами {@link ByteBuffer} по {@value #PAGE_ENTRIES} элементов, поэтому размер
+ * не ограничен диапазоном <code>int</code>. Объем прямой памяти ограничен параметром JVM
+ * <code>-XX:MaxDirectMemorySize</code>, который по умолчанию равен <code>-Xmx</code>: для массивов, превышающих
+ * размер кучи, его нужно задать явно, иначе выделение страницы завершится {@link OutOfMemoryError}. Память страниц
+ * освобождается сборщиком мусора вместе с массивом.
+ * </p>
+ */
+final class OffHeapEntries {
+
+    /** Элементов на странице (страница - 40 МБ). */
+    static final int PAGE_ENTRIES = 1 << 21;
+    private static final int PAGE_SHIFT = 21;
+    private static final int PAGE_MASK = PAGE_ENTRIES - 1;
+    /** re (8 байт), im (8 байт), индекс столбца (4 байта). */
+    private static final int ENTRY_BYTES = 20;
+
+    private final ByteBuffer[] pages;
+    private final long capacity;
+
+    /**
+     * @param capacity Количество элементов.
+     */
+    OffHeapEntries(long capacity) {
+        this.capacity = capacity;
+        int pageCnt = (int) ((capacity + PAGE_ENTRIES - 1) >>> PAGE_SHIFT);
+        pages = new ByteBuffer[pageCnt];
+        for (int p = 0; p < pageCnt; p++) {
+            long entries = Math.min(PAGE_ENTRIES, capacity - ((long) p << PAGE_SHIFT));
+            pages[p] = ByteBuffer.allocateDirect((int) entries * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    void set(long idx, int colIdx, double re, double im) {
+        ByteBuffer page = pages[(int) (idx >>> PAGE_SHIFT)];
+        int offset = ((int) idx & PAGE_MASK) * ENTRY_BYTES;
+        page.putDouble(offset, re);
+        page.putDouble(offset + 8, im);
+        page.putInt(offset + 16, colIdx);
+    }
+
+    double getRe(long idx) {
+        return pages[(int) (idx >>> PAGE_SHIFT)].getDouble(((int) idx & PAGE_MASK) * ENTRY_BYTES);
+    }
+
+    double getIm(long idx) {
+        return pages[(int) (idx >>> PAGE_SHIFT)].getDouble(((int) idx & PAGE_MASK) * ENTRY_BYTES + 8);
+    }
+
+    /**
+     * Прочитать <code>len</code> элементов, начиная с <code>from</code>, в массивы кучи начиная с позиции
+     * <code>destPos</code>.
+     */
+    void read(long from, int len, @NotNull int[] cols, @NotNull double[] re, @NotNull double[] im, int destPos) {
+        for (int k = 0; k < len; k++) {
+            long idx = from + k;
+            ByteBuffer page = pages[(int) (idx >>> PAGE_SHIFT)];
+            int offset = ((int) idx & PAGE_MASK) * ENTRY_BYTES;
+            re[destPos + k] = page.getDouble(offset);
+            im[destPos + k] = page.getDouble(offset + 8);
+            cols[destPos + k] = page.getInt(offset + 16);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ic.matrix;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Разбиение строк матрицы на непрерывные участки равной трудоемкости и их обработка в {@link ForkJoinPool}.
+ * <p>
+ * Каждый участок обрабатывается одним потоком в том же порядке, что и в последовательном ядре, поэтому при условии,
+ * что строки результата независимы, параллельный результат побитово совпадает с последовательным.
+ * </p>
+ */
+public final class ParallelRows {
+
+    /** Количество участков на один поток пула - запас для выравнивания нагрузки. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    @FunctionalInterface
+    interface RowRange {
+        void run(int from, int to);
+    }
+
+    @FunctionalInterface
+    interface ChunkRange {
+        void run(int chunk, int from, int to);
+    }
+
+    private ParallelRows() {
+    }
+
+    /**
+     * Обработать строки <code>[0, n)</code> участками, сбалансированными по оценке трудоемкости строк.
+     * @param pool Пул потоков.
+     * @param n    Количество строк.
+     * @param cost Оценка трудоемкости строки (неотрицательная).
+     * @param body Обработчик участка строк <code>[from, to)</code>.
+     */
+    static void run(@NotNull ForkJoinPool pool, int n, @NotNull IntToLongFunction cost, @NotNull RowRange body) {
+        run(pool, n, cost, (chunk, from, to) -> body.run(from, to));
+    }
+
+    /**
+     * То же, что {@link #run(ForkJoinPool, int, IntToLongFunction, RowRange)}, но обработчику передается и номер
+     * участка (меньше {@link #chunks(ForkJoinPool, int)}) - например, для выбора рабочих массивов участка.
+     */
+    static void run(@NotNull ForkJoinPool pool, int n, @NotNull IntToLongFunction cost, @NotNull ChunkRange body) {
+        int[] bounds = split(n, chunks(pool, n), cost);
+        int chunks = bounds.length - 1;
+        if (chunks <= 1) {
+            body.run(0, 0, n);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int chunk = c;
+            int from = bounds[c];
+            int to = bounds[c + 1];
+            tasks.add(ForkJoinTask.adapt(() -> body.run(chunk, from, to)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
+    /** Количество участков для обработки <code>n</code> строк в <code>pool</code>. */
+    public static int chunks(@NotNull ForkJoinPool pool, int n) {
+        return Math.min(n, CHUNKS_PER_THREAD * pool.getParallelism());
+    }
+
+    /**
+     * Границы участков: <code>bounds[c], bounds[c + 1]</code> - первая и следующая за последней строки участка
+     * <code>c</code>. Пустые участки не образуются.
+     */
+    @NotNull
+    public static int[] split(int n, int chunks, @NotNull IntToLongFunction cost) {
+        if (n == 0 || chunks <= 1) {
+            return new int[] { 0, n };
+        }
+        long[] prefix = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = prefix[i] + Math.max(cost.applyAsLong(i), 1);
+        }
+        int[] bounds = new int[chunks + 1];
+        int cnt = 1;
+        int row = 0;
+        for (int c = 1; c < chunks; c++) {
+            long target = prefix[n] * c / chunks;
+            while (row < n && prefix[row] < target) {
+                row++;
+            }
+            if (row > bounds[cnt - 1] && row < n) {
+                bounds[cnt++] = row;
+            }
+        }
+        bounds[cnt++] = n;
+        return cnt == bounds.length ? bounds : Arrays.copyOf(bounds, cnt);
+    }
+}
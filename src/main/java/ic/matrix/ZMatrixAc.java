@@ -1,32 +1,203 @@
 package ic.matrix;
 
 import org.ejml.data.Complex_F64;
+import org.jetbrains.annotations.NotNull;
 import ru.vniizht.asuterkortes.counter.latticemodel.DynamicComplexArray;
 import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
 
+import java.util.Arrays;
+
+/**
+ * Матрица сопротивлений схемы МПЗ переменного тока.
+ * <p>
+ * Ребра <code>[0, blockEdgesQty)</code> (внутренние ребра блоков) взаимоиндукцией не связаны, и им соответствует
+ * только диагональ. Остальные ребра (ребра тяговых сетей) разбиты на группы взаимоиндуктивной связи - непрерывные
+ * диапазоны номеров, например провода одного межподстанционного участка. Ребра разных групп между собой не связаны,
+ * поэтому для каждой группы резервируется собственный плотный блок, а строка ребра группы занимает столько
+ * элементов, сколько ребер в группе. Ядра {@link AcMatrixOps} обходят строки от {@link #begin} до {@link #end} и
+ * потому затрагивают только блоки групп.
+ * </p>
+ * <p>
+ * Взаимные сопротивления малой величины или между удаленными проводами можно отсекать
+ * ({@link #setMinMutualAbs}, {@link #setMaxMutualDistance}): отсеченные элементы не записываются, и трудоемкость
+ * ядер снижается пропорционально. В формате {@link #sparse} память под блоки не резервируется вовсе: элементы ребер
+ * тяговых сетей накапливаются и после {@link #compress()} хранятся в виде CSR без пропусков.
+ * </p>
+ * <p>
+ * Для моделей целой сети, блоки групп которых не помещаются в кучу (или в диапазон индексов <code>int</code>),
+ * предназначен формат {@link #offHeap}: блоки хранятся в прямой памяти с адресацией <code>long</code>, а строки ребер
+ * тяговых сетей подгружаются по требованию. {@link #begin} такой строки копирует ее в окно в начале области ребер
+ * тяговых сетей массивов <code>data/cols</code>, так что ядра работают без изменений, но последовательно: одновременно
+ * доступна одна строка, и даже чтение матрицы в этом формате (ядрами {@link AcMatrixOps}, {@link AcLoopOperator},
+ * {@link #get}) изменяет ее состояние. Матрицу нельзя читать из нескольких потоков; параллельные перегрузки
+ * {@link AcMatrixOps} обрабатывают ее последовательно.
+ * </p>
+ * <p>
+ * Взаимные сопротивления взаимны (Z<sub>ij</sub> = Z<sub>ji</sub>), поэтому в любом формате можно хранить только
+ * верхний треугольник ({@link #isSymmetric()}): строка ребра тяговой сети содержит элементы со столбцами не меньше
+ * номера строки, а элементы ниже диагонали подразумеваются. Ядра {@link AcMatrixOps} учитывают подразумеваемую
+ * транспозицию, кроме {@link KZKTPattern#symbolicAc}.
+ * </p>
+ * <p>
+ * Экономия памяти меньше двукратной. Каждый хранимый элемент занимает 20 байт (значение и индекс столбца), и
+ * хранится почти вдвое меньше элементов. Однако ядра K&#215Z&#215K<sup>T</sup> строят в куче индекс
+ * подразумеваемого нижнего треугольника ({@link #indexLower()}): по два <code>int</code> (8 байт) на каждый
+ * хранимый внедиагональный элемент. В итоге данные ребер тяговых сетей занимают примерно на 30% меньше памяти, чем
+ * в полном формате (в формате {@link #offHeap} прямая память сокращается вдвое, а индекс добавляется в куче).
+ * Подразумеваемые элементы к тому же читаются через индекс, что увеличивает объем данных, проходящих через кэш
+ * процессора в {@link AcMatrixOps#KZ}.
+ * </p>
+ */
 public class ZMatrixAc {
 
+    /** Наибольший размер массивов кучи. */
+    private static final int MAX_HEAP_ENTRIES = Integer.MAX_VALUE - 8;
+
     public final DynamicComplexArray data;
     public final DynamicIntArray cols;
     private final DynamicIntArray begins;
     private final DynamicIntArray ends;
+    private final DynamicIntArray groupBounds = new DynamicIntArray(2);
+    private final Layout layout;
+    private final boolean symmetric;
+    private DynamicIntArray stagedRows;
+    private DynamicIntArray stagedCols;
+    private DynamicComplexArray stagedData;
+    /** Размещены ли накопленные элементы формата {@link #sparse} ({@link #compress()}). */
+    private boolean compressed = true;
+    private OffHeapEntries offHeap;
+    private long[] rowOffsets = new long[0];
+    private int loadedRow = -1;
+    /**
+     * Подразумеваемый нижний треугольник симметричной матрицы по столбцам, см. {@link #indexLower()}: номер строки и
+     * положение элемента верхнего треугольника, 8 байт на каждый хранимый внедиагональный элемент.
+     */
+    private final DynamicIntArray lowerBegins = new DynamicIntArray(1);
+    private final DynamicIntArray lowerRows = new DynamicIntArray(1);
+    private final DynamicIntArray lowerPos = new DynamicIntArray(1);
+    private boolean lowerIndexed;
     private int blockEdgesQty;
     private int wiringEdgesQty;
+    private double minMutualAbsSq;
+    private double maxMutualDistance = Double.POSITIVE_INFINITY;
 
     /**
+     * Все ребра тяговых сетей образуют одну группу взаимоиндуктивной связи.
      * @param blockEdgesQty  Количество ребер графа схемы, не связанных взаимоиндукцией (внутренние ребра блоков).
      * @param wiringEdgesQty Количество ребер графа схемы, потенциально связанных взаимоиндукцией (ребра тяговых сетей).
      */
     public ZMatrixAc(int blockEdgesQty, int wiringEdgesQty) {
-        this.blockEdgesQty = blockEdgesQty;
-        this.wiringEdgesQty = wiringEdgesQty;
+        this(blockEdgesQty, new int[] { wiringEdgesQty });
+    }
+
+    /**
+     * @param blockEdgesQty Количество ребер графа схемы, не связанных взаимоиндукцией (внутренние ребра блоков).
+     * @param groupSizes    Размеры групп взаимоиндуктивной связи. Группа <code>g</code> занимает ребра, следующие за
+     *                      ребрами блоков и ребрами групп <code>[0, g)</code>.
+     */
+    public ZMatrixAc(int blockEdgesQty, @NotNull int[] groupSizes) {
+        this(blockEdgesQty, groupSizes, false);
+    }
+
+    /**
+     * @param blockEdgesQty Количество ребер графа схемы, не связанных взаимоиндукцией (внутренние ребра блоков).
+     * @param groupSizes    Размеры групп взаимоиндуктивной связи (см. {@link #ZMatrixAc(int, int[])}).
+     * @param symmetric     <code>true</code> - хранить только верхний треугольник (см. {@link #isSymmetric()}).
+     */
+    public ZMatrixAc(int blockEdgesQty, @NotNull int[] groupSizes, boolean symmetric) {
+        this(blockEdgesQty, groupSizes, Layout.GROUP_BLOCKS, symmetric);
+    }
+
+    private ZMatrixAc(int blockEdgesQty, int[] groupSizes, Layout layout, boolean symmetric) {
+        this.layout = layout;
+        this.symmetric = symmetric;
+        int wiringEdgesQty = 0;
+        int maxGroupSize = 0;
+        long dataSize = blockEdgesQty;
+        for (int sz : groupSizes) {
+            wiringEdgesQty += sz;
+            maxGroupSize = Math.max(maxGroupSize, sz);
+            dataSize += symmetric ? (long) sz * (sz + 1) / 2 : (long) sz * sz;
+        }
+        if (layout == Layout.SPARSE) {
+            dataSize = blockEdgesQty;
+        } else if (layout == Layout.OFF_HEAP) {
+            dataSize = blockEdgesQty + maxGroupSize;
+        }
+        if (layout == Layout.SPARSE) {
+            stagedRows = new DynamicIntArray(16);
+            stagedCols = new DynamicIntArray(16);
+            stagedData = new DynamicComplexArray(16);
+        }
         int totalEdgeQty = blockEdgesQty + wiringEdgesQty;
-        begins = new DynamicIntArray(totalEdgeQty);
-        ends = new DynamicIntArray(totalEdgeQty);
-        int dataSize = blockEdgesQty + wiringEdgesQty * wiringEdgesQty;
-        data = new DynamicComplexArray(dataSize);
-        cols = new DynamicIntArray(dataSize);
-        initArrays();
+        begins = new DynamicIntArray(Math.max(totalEdgeQty, 1));
+        ends = new DynamicIntArray(Math.max(totalEdgeQty, 1));
+        int heapSize = Math.max(heapEntries(dataSize, layout), 1);
+        data = new DynamicComplexArray(heapSize);
+        cols = new DynamicIntArray(heapSize);
+        reset(blockEdgesQty, groupSizes);
+    }
+
+    /**
+     * Количество элементов массивов кучи. Превышение {@link #MAX_HEAP_ENTRIES} отклоняется до выделения памяти.
+     * @throws IllegalArgumentException Если <code>entries &gt; MAX_HEAP_ENTRIES</code>.
+     */
+    private static int heapEntries(long entries, Layout layout) {
+        if (entries <= MAX_HEAP_ENTRIES) {
+            return (int) entries;
+        }
+        if (layout == Layout.GROUP_BLOCKS) {
+            throw new IllegalArgumentException(
+                    "Блоки групп взаимоиндуктивной связи (" + entries + " элементов) не помещаются в "
+                            + "массивы кучи. Используйте ZMatrixAc.offHeap или ZMatrixAc.sparse"
+            );
+        }
+        throw new IllegalArgumentException(
+                "Данные матрицы сопротивлений (" + entries + " элементов) не помещаются в массивы кучи"
+        );
+    }
+
+    /**
+     * Матрица в формате CSR без резервирования блоков. Элементы ребер тяговых сетей, добавленные {@link #insert},
+     * становятся доступны ядрам после вызова {@link #compress()}; до этого (и после каждого нового {@link #insert})
+     * обращение к строкам ребер тяговых сетей завершается {@link IllegalStateException}.
+     * @param blockEdgesQty  Количество ребер графа схемы, не связанных взаимоиндукцией (внутренние ребра блоков).
+     * @param wiringEdgesQty Количество ребер графа схемы, потенциально связанных взаимоиндукцией (ребра тяговых сетей).
+     */
+    @NotNull
+    public static ZMatrixAc sparse(int blockEdgesQty, int wiringEdgesQty) {
+        return sparse(blockEdgesQty, wiringEdgesQty, false);
+    }
+
+    /**
+     * То же, что {@link #sparse(int, int)}.
+     * @param symmetric <code>true</code> - хранить только верхний треугольник (см. {@link #isSymmetric()}).
+     */
+    @NotNull
+    public static ZMatrixAc sparse(int blockEdgesQty, int wiringEdgesQty, boolean symmetric) {
+        return new ZMatrixAc(blockEdgesQty, new int[] { wiringEdgesQty }, Layout.SPARSE, symmetric);
+    }
+
+    /**
+     * Матрица, блоки групп которой хранятся вне кучи (см. описание класса). Количество элементов не ограничено
+     * диапазоном <code>int</code>, а объем ограничен параметром JVM <code>-XX:MaxDirectMemorySize</code> (по
+     * умолчанию равным <code>-Xmx</code>; для блоков больше кучи его нужно задать явно). Матрица не допускает
+     * одновременного чтения из нескольких потоков.
+     * @param blockEdgesQty Количество ребер графа схемы, не связанных взаимоиндукцией (внутренние ребра блоков).
+     * @param groupSizes    Размеры групп взаимоиндуктивной связи (см. {@link #ZMatrixAc(int, int[])}).
+     */
+    @NotNull
+    public static ZMatrixAc offHeap(int blockEdgesQty, @NotNull int[] groupSizes) {
+        return offHeap(blockEdgesQty, groupSizes, false);
+    }
+
+    /**
+     * То же, что {@link #offHeap(int, int[])}.
+     * @param symmetric <code>true</code> - хранить только верхний треугольник (см. {@link #isSymmetric()}).
+     */
+    @NotNull
+    public static ZMatrixAc offHeap(int blockEdgesQty, @NotNull int[] groupSizes, boolean symmetric) {
+        return new ZMatrixAc(blockEdgesQty, groupSizes, Layout.OFF_HEAP, symmetric);
     }
 
     /**
@@ -38,15 +209,22 @@ public class ZMatrixAc {
 
     /**
      * Индекс в массивах <code>cols</code> и <code>data</code>, соответствующий началу <code>rowIdx</code>-й строки.
+     * @throws IllegalStateException Строка ребра тяговой сети формата {@link #sparse} до {@link #compress()}.
      */
     public int begin(int rowIdx) {
+        checkCompressed(rowIdx);
+        if (offHeap != null && rowIdx >= blockEdgesQty && rowIdx != loadedRow) {
+            load(rowIdx);
+        }
         return begins.get(rowIdx);
     }
 
     /**
      * Индекс в массивах <code>cols</code> и <code>data</code>, соответствующий началу <code>(rowIdx + 1)</code>-й строки.
+     * @throws IllegalStateException Строка ребра тяговой сети формата {@link #sparse} до {@link #compress()}.
      */
     public int end(int rowIdx) {
+        checkCompressed(rowIdx);
         return ends.get(rowIdx);
     }
 
@@ -56,11 +234,59 @@ public class ZMatrixAc {
      * @param wiringEdgesQty Количество ребер графа схемы, потенциально связанных взаимоиндукцией (ребра тяговых сетей).
      */
     public void reset(int blockEdgesQty, int wiringEdgesQty) {
+        reset(blockEdgesQty, new int[] { wiringEdgesQty });
+    }
+
+    /**
+     * Повторно инициализировать внутренние массивы. Формат хранения и пороги отсечения сохраняются.
+     * @param blockEdgesQty Количество ребер графа схемы, не связанных взаимоиндукцией (внутренние ребра блоков).
+     * @param groupSizes    Размеры групп взаимоиндуктивной связи (см. {@link #ZMatrixAc(int, int[])}).
+     */
+    public void reset(int blockEdgesQty, @NotNull int[] groupSizes) {
         this.blockEdgesQty = blockEdgesQty;
-        this.wiringEdgesQty = wiringEdgesQty;
+        groupBounds.setSize(0);
+        groupBounds.append(blockEdgesQty);
+        int bound = blockEdgesQty;
+        for (int sz : groupSizes) {
+            if (sz < 0) {
+                throw new IllegalArgumentException("Отрицательный размер группы: " + sz);
+            }
+            bound += sz;
+            groupBounds.append(bound);
+        }
+        this.wiringEdgesQty = bound - blockEdgesQty;
         initArrays();
     }
 
+    /**
+     * Порог отсечения взаимных сопротивлений: недиагональные элементы с модулем меньше <code>minAbs</code> не
+     * записываются. Действует на последующие вызовы {@link #insert}.
+     */
+    public void setMinMutualAbs(double minAbs) {
+        this.minMutualAbsSq = minAbs * minAbs;
+    }
+
+    /**
+     * Порог отсечения взаимных сопротивлений по расстоянию между проводами: недиагональные элементы, добавляемые
+     * {@link #insert(int, int, double, double, double)} для проводов, удаленных более чем на <code>maxDistance</code>,
+     * не записываются.
+     */
+    public void setMaxMutualDistance(double maxDistance) {
+        this.maxMutualDistance = maxDistance;
+    }
+
+    /**
+     * Добавить элемент, зная расстояние между проводами ребер <code>rowIdx</code> и <code>colIdx</code>. Элемент
+     * отсекается, если расстояние превышает {@link #setMaxMutualDistance порог}. Остальные условия - как в
+     * {@link #insert(int, int, double, double)}.
+     */
+    public void insert(int rowIdx, int colIdx, double re, double im, double distance) {
+        if (rowIdx != colIdx && distance > maxMutualDistance) {
+            return;
+        }
+        insert(rowIdx, colIdx, re, im);
+    }
+
     /**
      * Добавить ненулевой элемент в <code>colIdx</code>-й столбец текущей строки.
      * <p>
@@ -69,20 +295,107 @@ public class ZMatrixAc {
      *      <li>Элемент с парой индексов (i, j) добавляется лишь единожды.</li>
      *      <li>Ребра с номерами <code>[0, blockEdgesQty)</code> не участвуют в индуктивном взаимодействии, и соответствующие
      *      им сопротивления расположены исключительно на главной диагонали.</li>
+     *      <li>Ребра тяговых сетей <code>rowIdx</code> и <code>colIdx</code> принадлежат одной группе
+     *      взаимоиндуктивной связи.</li>
      *  </ul>
      * </p>
+     * <p>В {@link #isSymmetric() симметричном} формате добавляются только элементы верхнего треугольника
+     * (<code>colIdx >= rowIdx</code>): элементы ниже главной диагонали подразумеваются.</p>
+     * @throws IllegalArgumentException Элемент ниже главной диагонали симметричной матрицы.
      */
     public void insert(int rowIdx, int colIdx, double re, double im) {
+        if (symmetric && colIdx < rowIdx) {
+            throw new IllegalArgumentException(
+                    "Элемент (" + rowIdx + ", " + colIdx + ") ниже главной диагонали симметричной матрицы"
+            );
+        }
+        lowerIndexed = false;
+        if (rowIdx != colIdx && re * re + im * im < minMutualAbsSq) {
+            return;
+        }
+        if (layout != Layout.GROUP_BLOCKS && rowIdx >= blockEdgesQty) {
+            insertWiring(rowIdx, colIdx, re, im);
+            return;
+        }
         int dataIdx = ends.getData()[rowIdx]++;
         cols.set(dataIdx, colIdx);
         data.set(dataIdx, re, im);
     }
 
+    /**
+     * Разместить накопленные элементы ребер тяговых сетей в формате CSR (строки без пропусков, элементы строки - в
+     * порядке добавления). Для формата {@link #sparse} вызывается после добавления элементов и до передачи матрицы
+     * ядрам; повторный вызов учитывает все элементы, добавленные со времени {@link #reset}. Для остальных форматов
+     * ничего не делает.
+     */
+    public void compress() {
+        if (layout != Layout.SPARSE) {
+            return;
+        }
+        lowerIndexed = false;
+        int n = size();
+        int nzCnt = stagedRows.getSize();
+        int[] b = begins.getData();
+        int[] e = ends.getData();
+        int[] r = stagedRows.getData();
+        for (int i = blockEdgesQty; i < n; i++) {
+            e[i] = 0;
+        }
+        for (int t = 0; t < nzCnt; t++) {
+            e[r[t]]++;
+        }
+        int rowStartIdx = blockEdgesQty;
+        for (int i = blockEdgesQty; i < n; i++) {
+            b[i] = rowStartIdx;
+            rowStartIdx += e[i];
+            e[i] = b[i];
+        }
+        data.setSize(rowStartIdx);
+        cols.setSize(rowStartIdx);
+        for (int t = 0; t < nzCnt; t++) {
+            int dataIdx = e[r[t]]++;
+            cols.set(dataIdx, stagedCols.get(t));
+            data.set(dataIdx, stagedData.getRe(t), stagedData.getIm(t));
+        }
+        compressed = true;
+    }
+
+    /**
+     * Количество записанных элементов.
+     * @throws IllegalStateException Для формата {@link #sparse} с элементами, добавленными после {@link #compress()}.
+     */
+    public long nzCnt() {
+        checkCompressed(size() - 1);
+        long res = 0;
+        for (int i = 0; i < size(); i++) {
+            res += ends.get(i) - begins.get(i);
+        }
+        return res;
+    }
+
+    /**
+     * Хранится ли только верхний треугольник. В этом случае элемент <code>k</code> строки <code>i</code> со столбцом
+     * <code>j = cols[k] > i</code> задает и Z<sub>ij</sub>, и Z<sub>ji</sub>.
+     */
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    /** Хранятся ли блоки групп вне кучи ({@link #offHeap}). */
+    public boolean isOffHeap() {
+        return layout == Layout.OFF_HEAP;
+    }
+
     /**
      * Возвращает значение элемента с координатами <code>(i, j)</code>.
      * <p>Только для тестов и отладки (<code>O(n)</code>).</p>
      */
     public void get(int i, int j, Complex_F64 dest) {
+        if (symmetric && j < i) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
         for (int k = begin(i); k < end(i); k++) {
             if (cols.get(k) == j) {
                 data.get(k, dest);
@@ -110,21 +423,211 @@ public class ZMatrixAc {
         return blockEdgesQty;
     }
 
+    public int getWiringEdgesQty() {
+        return wiringEdgesQty;
+    }
+
+    /** Количество групп взаимоиндуктивной связи. */
+    public int groupCount() {
+        return groupBounds.getSize() - 1;
+    }
+
+    /** Номер первого ребра группы <code>g</code>. */
+    public int groupBegin(int g) {
+        return groupBounds.get(g);
+    }
+
+    /** Номер ребра, следующего за последним ребром группы <code>g</code>. */
+    public int groupEnd(int g) {
+        return groupBounds.get(g + 1);
+    }
+
+    /**
+     * Построить (если матрица изменилась со времени предыдущего вызова) индекс подразумеваемого нижнего
+     * треугольника {@link #isSymmetric() симметричной} матрицы: для каждого ребра тяговой сети <code>c</code> -
+     * элементы верхнего треугольника Z<sub>rc</sub>, r &lt; c, в порядке возрастания <code>r</code>. Элементы
+     * перечисляются от {@link #lowerBegin} до {@link #lowerEnd}. Вызывается до чтения индекса, в том же потоке,
+     * что и изменения матрицы; построенный индекс можно читать из нескольких потоков.
+     */
+    void indexLower() {
+        if (!symmetric || lowerIndexed) {
+            return;
+        }
+        int n = size();
+        lowerBegins.setSize(wiringEdgesQty + 1);
+        int[] b = lowerBegins.getData();
+        Arrays.fill(b, 0, wiringEdgesQty + 1, 0);
+        int[] c = cols.getData();
+        for (int r = blockEdgesQty; r < n; r++) {
+            for (int k = begin(r); k < end(r); k++) {
+                if (c[k] != r) {
+                    b[c[k] - blockEdgesQty + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < wiringEdgesQty; i++) {
+            b[i + 1] += b[i];
+        }
+        lowerRows.setSize(b[wiringEdgesQty]);
+        lowerPos.setSize(b[wiringEdgesQty]);
+        int[] rows = lowerRows.getData();
+        int[] pos = lowerPos.getData();
+        for (int r = blockEdgesQty; r < n; r++) {
+            int from = begin(r);
+            for (int k = from; k < end(r); k++) {
+                if (c[k] != r) {
+                    int t = b[c[k] - blockEdgesQty]++;
+                    rows[t] = r;
+                    pos[t] = offHeap == null ? k : k - from;
+                }
+            }
+        }
+        for (int i = wiringEdgesQty; i > 0; i--) {
+            b[i] = b[i - 1];
+        }
+        b[0] = 0;
+        lowerIndexed = true;
+    }
+
+    /** Начало элементов столбца <code>colIdx</code> (ребра тяговой сети) в индексе {@link #indexLower()}. */
+    int lowerBegin(int colIdx) {
+        return lowerBegins.get(colIdx - blockEdgesQty);
+    }
+
+    /** Конец элементов столбца <code>colIdx</code> (ребра тяговой сети) в индексе {@link #indexLower()}. */
+    int lowerEnd(int colIdx) {
+        return lowerBegins.get(colIdx - blockEdgesQty + 1);
+    }
+
+    /** Строка <code>t</code>-го элемента индекса {@link #indexLower()} - столбец подразумеваемого элемента. */
+    int lowerRow(int t) {
+        return lowerRows.get(t);
+    }
+
+    /** Вещественная часть <code>t</code>-го элемента индекса {@link #indexLower()}. */
+    double lowerRe(int t) {
+        return offHeap == null
+                ? data.getRe(lowerPos.get(t))
+                : offHeap.getRe(rowOffsets[lowerRows.get(t) - blockEdgesQty] + lowerPos.get(t));
+    }
+
+    /** Мнимая часть <code>t</code>-го элемента индекса {@link #indexLower()}. */
+    double lowerIm(int t) {
+        return offHeap == null
+                ? data.getIm(lowerPos.get(t))
+                : offHeap.getIm(rowOffsets[lowerRows.get(t) - blockEdgesQty] + lowerPos.get(t));
+    }
+
+    private void insertWiring(int rowIdx, int colIdx, double re, double im) {
+        if (layout == Layout.SPARSE) {
+            stagedRows.append(rowIdx);
+            stagedCols.append(colIdx);
+            stagedData.append(re, im);
+            compressed = false;
+            return;
+        }
+        int k = ends.getData()[rowIdx]++ - blockEdgesQty;
+        offHeap.set(rowOffsets[rowIdx - blockEdgesQty] + k, colIdx, re, im);
+        if (rowIdx == loadedRow) {
+            loadedRow = -1;
+        }
+    }
+
+    private void checkCompressed(int rowIdx) {
+        if (!compressed && rowIdx >= blockEdgesQty) {
+            throw new IllegalStateException("Элементы ребер тяговых сетей не размещены: вызовите ZMatrixAc.compress()");
+        }
+    }
+
+    /** Скопировать строку ребра тяговой сети из памяти вне кучи в окно массивов <code>data/cols</code>. */
+    private void load(int rowIdx) {
+        offHeap.read(
+                rowOffsets[rowIdx - blockEdgesQty], ends.get(rowIdx) - blockEdgesQty,
+                cols.getData(), data.getDataRe(), data.getDataIm(), blockEdgesQty
+        );
+        loadedRow = rowIdx;
+    }
+
     private void initArrays() {
+        lowerIndexed = false;
         int totalEdgeQty = size();
         begins.setSize(totalEdgeQty);
         for (int i = 0; i < blockEdgesQty; i++) {
             begins.set(i, i);
         }
-        begins.set(blockEdgesQty, blockEdgesQty);
-        for (int i = blockEdgesQty + 1; i < totalEdgeQty; i++) {
-            int rowStartIdx = begins.get(i - 1) + wiringEdgesQty;
-            begins.set(i, rowStartIdx);
+        long rowStartIdx = blockEdgesQty;
+        int maxGroupSize = 0;
+        for (int g = 0; g < groupCount(); g++) {
+            int groupSize = groupEnd(g) - groupBegin(g);
+            maxGroupSize = Math.max(maxGroupSize, groupSize);
+            for (int i = groupBegin(g); i < groupEnd(g); i++) {
+                switch (layout) {
+                    case GROUP_BLOCKS:
+                        begins.set(i, (int) Math.min(rowStartIdx, MAX_HEAP_ENTRIES));
+                        rowStartIdx += rowWidth(g, i);
+                        break;
+                    case SPARSE:
+                        begins.set(i, blockEdgesQty);
+                        break;
+                    case OFF_HEAP:
+                        begins.set(i, blockEdgesQty);
+                        rowStartIdx += rowWidth(g, i);
+                        break;
+                }
+            }
         }
         ends.setSize(totalEdgeQty);
         System.arraycopy(begins.getData(), 0, ends.getData(), 0, totalEdgeQty);
-        int dataSize = blockEdgesQty + wiringEdgesQty * wiringEdgesQty;
-        data.setSize(dataSize);
-        cols.setSize(dataSize);
+        int heapSize;
+        switch (layout) {
+            case GROUP_BLOCKS:
+                heapSize = heapEntries(rowStartIdx, layout);
+                break;
+            case SPARSE:
+                compressed = false;
+                stagedRows.setSize(0);
+                stagedCols.setSize(0);
+                stagedData.setSize(0);
+                heapSize = blockEdgesQty;
+                break;
+            default:
+                heapSize = heapEntries((long) blockEdgesQty + maxGroupSize, layout);
+                initOffHeap(rowStartIdx - blockEdgesQty);
+                break;
+        }
+        data.setSize(heapSize);
+        cols.setSize(heapSize);
+    }
+
+    /** Смещения строк ребер тяговых сетей в памяти вне кучи; память переиспользуется, если ее достаточно. */
+    private void initOffHeap(long capacity) {
+        if (offHeap == null || offHeap.capacity() < capacity) {
+            offHeap = new OffHeapEntries(capacity);
+        }
+        if (rowOffsets.length < wiringEdgesQty) {
+            rowOffsets = new long[wiringEdgesQty];
+        }
+        long offset = 0;
+        for (int g = 0; g < groupCount(); g++) {
+            for (int i = groupBegin(g); i < groupEnd(g); i++) {
+                rowOffsets[i - blockEdgesQty] = offset;
+                offset += rowWidth(g, i);
+            }
+        }
+        loadedRow = -1;
+    }
+
+    /** Количество элементов, резервируемых для строки <code>i</code> группы <code>g</code>. */
+    private int rowWidth(int g, int i) {
+        return symmetric ? groupEnd(g) - i : groupEnd(g) - groupBegin(g);
+    }
+
+    private enum Layout {
+        /** Плотные блоки групп в массивах кучи. */
+        GROUP_BLOCKS,
+        /** CSR без пропусков в массивах кучи ({@link #sparse}). */
+        SPARSE,
+        /** Плотные блоки групп вне кучи ({@link #offHeap}). */
+        OFF_HEAP
     }
 }
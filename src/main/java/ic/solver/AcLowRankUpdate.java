@@ -0,0 +1,237 @@
+package ic.solver;
+
+import ic.matrix.IMatrixCsr;
+import ic.matrix.ZMatrixAc;
+import org.ejml.data.ZMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_ZDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.jetbrains.annotations.NotNull;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
+
+import java.util.Arrays;
+
+/**
+ * Поправка решения системы контурных уравнений переменного тока при изменении сопротивлений немногих ребер блоков
+ * (формула Шермана - Моррисона - Вудбери, см. {@link DcLowRankUpdate}).
+ * <p>
+ * Поправляются только изменения диагональных сопротивлений ребер блоков. Элементы ребер тяговых сетей сравниваются
+ * с запомненными при {@link #rebase}, и любое их изменение (как и изменение структуры матрицы) требует полной
+ * факторизации. Для матрицы {@link ZMatrixAc#isOffHeap() вне кучи} поправка не применяется.
+ * </p>
+ */
+final class AcLowRankUpdate {
+
+    private final DynamicIntArray edges = new DynamicIntArray(16);
+    private final ZMatrixRMaj WT = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj G = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj capacitance = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj U = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj W = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj Y = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj V = new ZMatrixRMaj(1, 1);
+    private final LinearSolverDense<ZMatrixRMaj> capacitanceSolver = LinearSolverFactory_ZDRM.lu(16);
+    private double[] baseRe = new double[0];
+    private double[] baseIm = new double[0];
+    private int[] baseCols = new int[0];
+    private int[] baseEnds = new int[0];
+    private double[] delta = new double[0];
+    private int[] positions = new int[0];
+    private int blockEdgesQty;
+    private int size;
+    private int maxRank;
+
+    /**
+     * Запомнить сопротивления, для которых выполнена полная факторизация, и сбросить поправку.
+     * @param Z        Матрица сопротивлений.
+     * @param numLoops Количество контуров.
+     * @param maxRank  Наибольший ранг поправки.
+     */
+    void rebase(@NotNull ZMatrixAc Z, int numLoops, int maxRank) {
+        blockEdgesQty = Z.getBlockEdgesQty();
+        size = Z.size();
+        edges.setSize(0);
+        if (Z.isOffHeap()) {
+            return;
+        }
+        int dataSize = Z.data.getSize();
+        if (baseRe.length < dataSize) {
+            baseRe = new double[dataSize];
+            baseIm = new double[dataSize];
+            baseCols = new int[dataSize];
+        }
+        System.arraycopy(Z.data.getDataRe(), 0, baseRe, 0, dataSize);
+        System.arraycopy(Z.data.getDataIm(), 0, baseIm, 0, dataSize);
+        System.arraycopy(Z.cols.getData(), 0, baseCols, 0, dataSize);
+        if (baseEnds.length < size) {
+            baseEnds = new int[size];
+        }
+        for (int i = blockEdgesQty; i < size; i++) {
+            baseEnds[i] = Z.end(i);
+        }
+        if (positions.length < blockEdgesQty) {
+            positions = new int[blockEdgesQty];
+        }
+        Arrays.fill(positions, 0, blockEdgesQty, -1);
+        if (this.maxRank != maxRank || WT.numCols != numLoops) {
+            this.maxRank = maxRank;
+            delta = new double[2 * maxRank];
+            WT.reshape(maxRank, numLoops);
+            G.reshape(maxRank, maxRank);
+        }
+    }
+
+    /**
+     * Обновить поправку для текущих сопротивлений.
+     * @param Z      Матрица сопротивлений.
+     * @param KT     Транспонированная матрица независимых контуров.
+     * @param solver Решатель с факторизацией для сопротивлений {@link #rebase}.
+     * @return <code>false</code>, если поправка невозможна и требуется полная факторизация.
+     */
+    boolean update(@NotNull ZMatrixAc Z, @NotNull IMatrixCsr KT, @NotNull LinearSolverDense<ZMatrixRMaj> solver) {
+        if (Z.isOffHeap() || Z.size() != size || Z.getBlockEdgesQty() != blockEdgesQty
+                || KT.numCols() != WT.numCols || !sameWiring(Z)) {
+            return false;
+        }
+        double[] re = Z.data.getDataRe();
+        double[] im = Z.data.getDataIm();
+        int first = edges.getSize();
+        for (int e = 0; e < blockEdgesQty; e++) {
+            if ((re[e] != baseRe[e] || im[e] != baseIm[e]) && positions[e] < 0) {
+                if (edges.getSize() == maxRank) {
+                    return false;
+                }
+                positions[e] = edges.getSize();
+                edges.append(e);
+            }
+        }
+        int k = edges.getSize();
+        if (k > first) {
+            addColumns(first, k, KT, solver);
+        }
+        if (k == 0) {
+            return true;
+        }
+        capacitance.reshape(k, k);
+        for (int a = 0; a < k; a++) {
+            int e = edges.get(a);
+            double dRe = re[e] - baseRe[e];
+            double dIm = im[e] - baseIm[e];
+            delta[2 * a] = dRe;
+            delta[2 * a + 1] = dIm;
+            for (int b = 0; b < k; b++) {
+                int g = 2 * (a * maxRank + b);
+                int c = 2 * (a * k + b);
+                capacitance.data[c] = dRe * G.data[g] - dIm * G.data[g + 1] + (a == b ? 1 : 0);
+                capacitance.data[c + 1] = dRe * G.data[g + 1] + dIm * G.data[g];
+            }
+        }
+        return capacitanceSolver.setA(capacitance) && capacitanceSolver.quality() > 1e-12;
+    }
+
+    /**
+     * Применить поправку к решениям <code>X</code> (<code>L&#215m</code>), полученным с факторизацией для
+     * сопротивлений {@link #rebase}.
+     */
+    void correct(@NotNull ZMatrixRMaj X, @NotNull IMatrixCsr KT) {
+        int k = edges.getSize();
+        if (k == 0) {
+            return;
+        }
+        int m = X.numCols;
+        int numLoops = X.numRows;
+        Y.reshape(k, m);
+        for (int a = 0; a < k; a++) {
+            int e = edges.get(a);
+            for (int c = 0; c < m; c++) {
+                double sRe = 0;
+                double sIm = 0;
+                for (int l = KT.begin(e); l < KT.end(e); l++) {
+                    int x = 2 * (KT.col(l) * m + c);
+                    sRe += KT.value(l) * X.data[x];
+                    sIm += KT.value(l) * X.data[x + 1];
+                }
+                int y = 2 * (a * m + c);
+                Y.data[y] = delta[2 * a] * sRe - delta[2 * a + 1] * sIm;
+                Y.data[y + 1] = delta[2 * a] * sIm + delta[2 * a + 1] * sRe;
+            }
+        }
+        capacitanceSolver.solve(Y, V);
+        for (int a = 0; a < k; a++) {
+            int w = 2 * a * numLoops;
+            for (int i = 0; i < numLoops; i++) {
+                double wRe = WT.data[w + 2 * i];
+                double wIm = WT.data[w + 2 * i + 1];
+                for (int c = 0; c < m; c++) {
+                    int v = 2 * (a * m + c);
+                    int x = 2 * (i * m + c);
+                    X.data[x] -= wRe * V.data[v] - wIm * V.data[v + 1];
+                    X.data[x + 1] -= wRe * V.data[v + 1] + wIm * V.data[v];
+                }
+            }
+        }
+    }
+
+    /** Ранг текущей поправки (количество ребер с измененными сопротивлениями). */
+    int rank() {
+        return edges.getSize();
+    }
+
+    /** Совпадают ли элементы ребер тяговых сетей с запомненными при {@link #rebase}. */
+    private boolean sameWiring(ZMatrixAc Z) {
+        if (Z.data.getSize() > baseRe.length) {
+            return false;
+        }
+        double[] re = Z.data.getDataRe();
+        double[] im = Z.data.getDataIm();
+        int[] cols = Z.cols.getData();
+        for (int i = blockEdgesQty; i < size; i++) {
+            if (Z.end(i) != baseEnds[i]) {
+                return false;
+            }
+            for (int k = Z.begin(i); k < Z.end(i); k++) {
+                if (re[k] != baseRe[k] || im[k] != baseIm[k] || cols[k] != baseCols[k]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Столбцы W и строки/столбцы G для ребер <code>[first, k)</code> множества C. */
+    private void addColumns(int first, int k, IMatrixCsr KT, LinearSolverDense<ZMatrixRMaj> solver) {
+        int numLoops = WT.numCols;
+        int cnt = k - first;
+        U.reshape(numLoops, cnt);
+        U.zero();
+        for (int a = first; a < k; a++) {
+            int e = edges.get(a);
+            for (int l = KT.begin(e); l < KT.end(e); l++) {
+                U.data[2 * (KT.col(l) * cnt + a - first)] = KT.value(l);
+            }
+        }
+        W.reshape(numLoops, cnt);
+        solver.solve(U, W);
+        for (int b = first; b < k; b++) {
+            int w = 2 * b * numLoops;
+            for (int i = 0; i < numLoops; i++) {
+                WT.data[w + 2 * i] = W.data[2 * (i * cnt + b - first)];
+                WT.data[w + 2 * i + 1] = W.data[2 * (i * cnt + b - first) + 1];
+            }
+            for (int a = 0; a < k; a++) {
+                int e = edges.get(a);
+                double sRe = 0;
+                double sIm = 0;
+                for (int l = KT.begin(e); l < KT.end(e); l++) {
+                    sRe += KT.value(l) * WT.data[w + 2 * KT.col(l)];
+                    sIm += KT.value(l) * WT.data[w + 2 * KT.col(l) + 1];
+                }
+                int ab = 2 * (a * maxRank + b);
+                int ba = 2 * (b * maxRank + a);
+                G.data[ab] = sRe;
+                G.data[ab + 1] = sIm;
+                G.data[ba] = sRe;
+                G.data[ba + 1] = sIm;
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package ic.solver;
+
+import graph.CycleBasis;
+import ic.matrix.AcLoopOperator;
+import ic.matrix.AcMatrixOps;
+import ic.matrix.DcMatrixOps;
+import ic.matrix.IMatrixCsr;
+import ic.matrix.VectorAc;
+import ic.matrix.ZMatrixAc;
+import org.ejml.data.DGrowArray;
+import org.ejml.data.IGrowArray;
+import org.ejml.data.ZMatrixRMaj;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicComplexArray;
+
+import java.util.List;
+
+/**
+ * Сеанс решателя схем МПЗ переменного тока методом контурных токов.
+ * <p>
+ * Владеет всеми рабочими массивами конвейера
+ * K&#215Z&#215K<sup>T</sup> &#8594 факторизация &#8594 K<sup>T</sup>&#215I<sub>cc</sub> &#8594 Z&#215J.
+ * Факторизация матрицы контурных сопротивлений выполняется только после изменения топологии или сопротивлений;
+ * если между шагами меняются лишь векторы ЭДС и задающих токов, {@link #solve} ограничивается прямым и обратным ходом.
+ * По умолчанию матрица факторизуется разложением LDL<sup>T</sup> с учетом ее комплексной симметрии
+ * ({@link ComplexSymmetricLdl}). Если между шагами меняются сопротивления лишь немногих ребер блоков (например,
+ * ребер поездов), вместо повторной факторизации можно поправлять решение по формуле Вудбери
+ * ({@link #setMaxUpdateRank}). Для схем, матрица контурных сопротивлений которых не помещается в памяти, итерационный
+ * {@link ComplexSymmetricCocg} может работать без ее сборки ({@link #AcMeshSolver(ComplexSymmetricCocg, boolean)}).
+ * </p>
+ * <p>Порядок использования: {@link #setTopology} &#8594 {@link #setImpedances} &#8594 {@link #solve} на каждом шаге.</p>
+ */
+public class AcMeshSolver {
+
+    private final IMatrixCsr K = new IMatrixCsr(0, true);
+    private final IMatrixCsr KT = new IMatrixCsr(0, true);
+    private final ZMatrixRMaj KZKT = new ZMatrixRMaj(1, 1);
+    private final IGrowArray gw = new IGrowArray();
+    private final DGrowArray gx = new DGrowArray();
+    private final DynamicComplexArray KE = new DynamicComplexArray(16);
+    private final DynamicComplexArray KZI = new DynamicComplexArray(16);
+    private final ZMatrixRMaj rhs = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj Icc = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj J = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj dU = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj rhsBatch = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj IccBatch = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj JBatch = new ZMatrixRMaj(1, 1);
+    private final ZMatrixRMaj dUBatch = new ZMatrixRMaj(1, 1);
+    private final AcLowRankUpdate update = new AcLowRankUpdate();
+    private final LinearSolverDense<ZMatrixRMaj> solver;
+    @Nullable
+    private final AcLoopOperator operator;
+    private ZMatrixAc Z;
+    private boolean factorized;
+    private boolean rebased;
+    private int maxUpdateRank;
+
+    public AcMeshSolver() {
+        this(new ComplexSymmetricLdl());
+    }
+
+    /**
+     * @param solver Решатель системы контурных уравнений, пригодный для матриц любого размера (например,
+     *               {@link ComplexSymmetricLdl} с упакованным хранением или <code>LinearSolverFactory_ZDRM.lu</code>)
+     *               либо итерационный {@link ComplexSymmetricCocg}, начинающий итерации с контурных токов
+     *               предыдущего шага.
+     *               Может изменять переданную ему матрицу: она формируется заново при каждой факторизации.
+     */
+    public AcMeshSolver(@NotNull LinearSolverDense<ZMatrixRMaj> solver) {
+        this.solver = solver;
+        this.operator = null;
+    }
+
+    /**
+     * @param solver     Итерационный решатель системы контурных уравнений.
+     * @param matrixFree Не собирать матрицу K&#215Z&#215K<sup>T</sup>, а умножать на нее через {@link AcLoopOperator}:
+     *                   память <code>O(nnz(K) + nnz(Z))</code> вместо <code>O(L<sup>2</sup>)</code>.
+     */
+    public AcMeshSolver(@NotNull ComplexSymmetricCocg solver, boolean matrixFree) {
+        this.solver = solver;
+        this.operator = matrixFree ? new AcLoopOperator() : null;
+    }
+
+    /**
+     * Построить матрицу независимых контуров для графа, назначенного <code>basis</code>.
+     * @param basis      алгоритм поиска базиса циклов с уже назначенным графом.
+     * @param traversing способ обхода графа.
+     */
+    public void setTopology(@NotNull CycleBasis<?, ?, ?> basis, @NotNull CycleBasis.Traversing traversing) {
+        basis.getCycles(K, traversing);
+        onTopologyChanged();
+    }
+
+    /**
+     * Назначить готовую матрицу независимых контуров. Матрица копируется во внутренний буфер сеанса.
+     */
+    public void setTopology(@NotNull IMatrixCsr K) {
+        K.copyTo(this.K);
+        onTopologyChanged();
+    }
+
+    /**
+     * Назначить матрицу сопротивлений. Вызывать также после каждого изменения ее элементов: матрица
+     * K&#215Z&#215K<sup>T</sup> будет вычислена и факторизована заново при следующем вызове {@link #solve}
+     * (или поправлена, см. {@link #setMaxUpdateRank}).
+     */
+    public void setImpedances(@NotNull ZMatrixAc Z) {
+        this.Z = Z;
+        factorized = false;
+    }
+
+    /**
+     * Разрешить поправку факторизации низкого ранга вместо полной факторизации.
+     * <p>
+     * При следующих вызовах {@link #solve} сопротивления сравниваются с сопротивлениями последней полной
+     * факторизации. Если изменились диагональные сопротивления не более чем <code>maxRank</code> ребер блоков, а
+     * элементы ребер тяговых сетей остались прежними, факторизация сохраняется, а решение поправляется по формуле
+     * Вудбери: на каждое впервые изменившееся ребро выполняется один прямой и обратный ход, на каждое решение -
+     * <code>O(L&#183k)</code> операций. Иначе выполняется полная факторизация, от которой отсчитываются последующие
+     * изменения. Сравнение требует копии матрицы сопротивлений; для матрицы вне кучи поправка не применяется.
+     * </p>
+     * <p>
+     * Поправка не применяется и в режиме без сборки матрицы ({@link #AcMeshSolver(ComplexSymmetricCocg, boolean)}):
+     * {@link AcLoopOperator} умножает на текущую Z по ссылке, а не на Z последней полной факторизации, и поправка
+     * учла бы изменение сопротивлений дважды.
+     * </p>
+     * @param maxRank Наибольшее количество ребер с измененными сопротивлениями; 0 - поправка отключена.
+     */
+    public void setMaxUpdateRank(int maxRank) {
+        if (maxRank < 0) {
+            throw new IllegalArgumentException("Отрицательный ранг поправки: " + maxRank);
+        }
+        maxUpdateRank = maxRank;
+        rebased = false;
+        factorized = false;
+    }
+
+    /** Ранг поправки к факторизации, примененной последним вызовом {@link #solve} (0 - поправки нет). */
+    public int getUpdateRank() {
+        return rebased ? update.rank() : 0;
+    }
+
+    /**
+     * Рассчитать токи в ребрах для заданных векторов ЭДС и задающих токов. Если со времени предыдущего вызова
+     * не менялись ни топология, ни сопротивления, повторно используется имеющаяся факторизация.
+     * @param E Вектор ЭДС.
+     * @param I Вектор задающих токов.
+     * @return вектор токов в ребрах <code>J</code>. Принадлежит сеансу и перезаписывается при следующем вызове.
+     * @throws IllegalStateException Если не вызван {@link #setImpedances}.
+     */
+    @NotNull
+    public ZMatrixRMaj solve(@NotNull VectorAc E, @NotNull VectorAc I) {
+        factorize();
+        AcMatrixOps.mult(E, KT, KE);
+        AcMatrixOps.mult(I, Z, KT, KZI);
+        AcMatrixOps.sub(KE, KZI, rhs);
+        solveLoops(rhs, Icc);
+        AcMatrixOps.mult(KT, Icc, J);
+        AcMatrixOps.mult(Z, J, dU);
+        return J;
+    }
+
+    /**
+     * Рассчитать токи в ребрах сразу для пакета нагрузок (например, вариантов графика движения) при неизменных
+     * топологии и сопротивлениях. Правые части <code>KE - KZI</code> всех нагрузок формируются за один проход по
+     * K<sup>T</sup>, система решается для всех столбцов одним вызовом решателя, а токи в ребрах и падения напряжений
+     * рассчитываются для всех столбцов за один проход по K<sup>T</sup> и Z.
+     * @param E Векторы ЭДС.
+     * @param I Векторы задающих токов (столько же, сколько векторов ЭДС).
+     * @return матрица токов в ребрах, столбец <code>c</code> - решение для <code>E[c], I[c]</code>. Принадлежит сеансу
+     * и перезаписывается при следующем вызове.
+     * @throws IllegalStateException Если не вызван {@link #setImpedances}.
+     */
+    @NotNull
+    public ZMatrixRMaj solveBatch(@NotNull List<VectorAc> E, @NotNull List<VectorAc> I) {
+        factorize();
+        AcMatrixOps.rhs(E, I, Z, KT, rhsBatch, gw, gx);
+        solveLoops(rhsBatch, IccBatch);
+        AcMatrixOps.mult(KT, IccBatch, JBatch);
+        AcMatrixOps.mult(Z, JBatch, dUBatch);
+        return JBatch;
+    }
+
+    /** Матрица независимых контуров. */
+    @NotNull
+    public IMatrixCsr getK() {
+        return K;
+    }
+
+    /** Транспонированная матрица независимых контуров. */
+    @NotNull
+    public IMatrixCsr getKT() {
+        return KT;
+    }
+
+    /** Контурные токи, рассчитанные последним вызовом {@link #solve}. */
+    @NotNull
+    public ZMatrixRMaj getIcc() {
+        return Icc;
+    }
+
+    /** Токи в ребрах, рассчитанные последним вызовом {@link #solve}. */
+    @NotNull
+    public ZMatrixRMaj getJ() {
+        return J;
+    }
+
+    /** Падения напряжений на ребрах, рассчитанные последним вызовом {@link #solve}. */
+    @NotNull
+    public ZMatrixRMaj getDU() {
+        return dU;
+    }
+
+    /** Контурные токи пакета нагрузок, рассчитанные последним вызовом {@link #solveBatch}. */
+    @NotNull
+    public ZMatrixRMaj getIccBatch() {
+        return IccBatch;
+    }
+
+    /** Падения напряжений на ребрах для пакета нагрузок, рассчитанные последним вызовом {@link #solveBatch}. */
+    @NotNull
+    public ZMatrixRMaj getDUBatch() {
+        return dUBatch;
+    }
+
+    private void onTopologyChanged() {
+        DcMatrixOps.transpose(K, KT);
+        if (operator != null) {
+            operator.setTopology(K, KT);
+        }
+        rebased = false;
+        factorized = false;
+    }
+
+    private void factorize() {
+        if (Z == null) {
+            throw new IllegalStateException(
+                    "Матрица сопротивлений не назначена: вызовите AcMeshSolver.setImpedances()"
+            );
+        }
+        if (!factorized) {
+            if (!rebased || !update.update(Z, KT, solver)) {
+                if (!prepareSolver()) {
+                    throw new IllegalStateException("Матрица контурных сопротивлений вырождена");
+                }
+                rebased = maxUpdateRank > 0 && operator == null;
+                if (rebased) {
+                    update.rebase(Z, K.numRows(), maxUpdateRank);
+                }
+            }
+            factorized = true;
+        }
+    }
+
+    /** Передать решателю матрицу контурных сопротивлений или оператор. */
+    private boolean prepareSolver() {
+        if (operator != null) {
+            operator.setImpedances(Z);
+            return ((ComplexSymmetricCocg) solver).setOperator(operator);
+        }
+        AcMatrixOps.KZKT(K, Z, KT, KZKT, gw, gx);
+        return solver.setA(KZKT);
+    }
+
+    private void solveLoops(ZMatrixRMaj B, ZMatrixRMaj X) {
+        solver.solve(B, X);
+        if (rebased) {
+            update.correct(X, KT);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package ic.solver;
+
+import ic.matrix.AcLoopOperator;
+import org.ejml.data.ZMatrixRMaj;
+import org.ejml.interfaces.decomposition.DecompositionInterface;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Итерационный решатель комплексной симметричной (не эрмитовой) системы - метод сопряженных ортогональных
+ * градиентов (COCG) с предобусловливанием диагональю.
+ * <p>
+ * COCG повторяет метод сопряженных градиентов, заменяя скалярное произведение билинейной формой
+ * <code>(u, v) = &#931u<sub>i</sub>v<sub>i</sub></code> без сопряжения, и поэтому использует симметрию
+ * A = A<sup>T</sup> матрицы контурных сопротивлений. Матрица не факторизуется и не изменяется, одна итерация - одно
+ * умножение на A. Начальным приближением служит содержимое <code>X</code>, переданной в {@link #solve}, если ее
+ * размер совпадает с размером правых частей (решение предыдущего шага); иначе итерации начинаются с нуля.
+ * </p>
+ * <p>
+ * Вместо матрицы можно назначить оператор {@link AcLoopOperator} ({@link #setOperator}): тогда матрица контурных
+ * сопротивлений не собирается, а каждая итерация умножает на нее тремя проходами по K<sup>T</sup>, Z и K.
+ * </p>
+ */
+public class ComplexSymmetricCocg implements LinearSolverDense<ZMatrixRMaj> {
+
+    private final double tolerance;
+    private final int maxIterations;
+    @Nullable
+    private ZMatrixRMaj A;
+    @Nullable
+    private AcLoopOperator operator;
+    private double[] invDiag = new double[0];
+    private double[] x = new double[0];
+    private double[] r = new double[0];
+    private double[] z = new double[0];
+    private double[] p = new double[0];
+    private double[] q = new double[0];
+    private int n;
+    private int iterations;
+    private double quality;
+    private double relativeResidual;
+
+    /** Относительная невязка 10<sup>-10</sup>, не более <code>10n</code> итераций на правую часть. */
+    public ComplexSymmetricCocg() {
+        this(1e-10, 0);
+    }
+
+    /**
+     * @param tolerance     Допустимая относительная невязка <code>|b - Ax| / |b|</code>.
+     * @param maxIterations Наибольшее количество итераций на правую часть; 0 - <code>10n</code>, где
+     *                      <code>n</code> - порядок матрицы (в точной арифметике метод сходится не более чем за
+     *                      <code>n</code> итераций, запас покрывает ошибки округления).
+     */
+    public ComplexSymmetricCocg(double tolerance, int maxIterations) {
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /** Запомнить ссылку на матрицу (она не копируется и не должна изменяться до решения) и вычислить D<sup>-1</sup>. */
+    @Override
+    public boolean setA(@NotNull ZMatrixRMaj A) {
+        if (A.numRows != A.numCols) {
+            throw new IllegalArgumentException("Матрица должна быть квадратной");
+        }
+        this.A = A;
+        operator = null;
+        allocate(A.numRows);
+        for (int i = 0; i < n; i++) {
+            invDiag[2 * i] = A.data[2 * (i * n + i)];
+            invDiag[2 * i + 1] = A.data[2 * (i * n + i) + 1];
+        }
+        return invertDiagonal();
+    }
+
+    /**
+     * Назначить оператор вместо матрицы (см. описание класса). Оператор не копируется; его топология и сопротивления
+     * не должны изменяться до решения.
+     * @return <code>false</code>, если диагональ матрицы содержит нулевой элемент.
+     */
+    public boolean setOperator(@NotNull AcLoopOperator operator) {
+        this.operator = operator;
+        A = null;
+        allocate(operator.size());
+        operator.diagonal(invDiag);
+        return invertDiagonal();
+    }
+
+    /** Заменить диагональ в <code>invDiag</code> обратными значениями и оценить {@link #quality()}. */
+    private boolean invertDiagonal() {
+        double min = Double.POSITIVE_INFINITY;
+        double max = 0;
+        quality = 0;
+        for (int i = 0; i < n; i++) {
+            double re = invDiag[2 * i];
+            double im = invDiag[2 * i + 1];
+            double denom = re * re + im * im;
+            if (denom == 0 || Double.isNaN(denom)) {
+                return false;
+            }
+            min = Math.min(min, denom);
+            max = Math.max(max, denom);
+            invDiag[2 * i] = re / denom;
+            invDiag[2 * i + 1] = -im / denom;
+        }
+        quality = n == 0 ? 1 : Math.sqrt(min / max);
+        return true;
+    }
+
+    private void allocate(int n) {
+        this.n = n;
+        if (invDiag.length < 2 * n) {
+            invDiag = new double[2 * n];
+            x = new double[2 * n];
+            r = new double[2 * n];
+            z = new double[2 * n];
+            p = new double[2 * n];
+            q = new double[2 * n];
+        }
+    }
+
+    /**
+     * Грубая оценка по диагонали матрицы: отношение наименьшего модуля диагонального элемента к наибольшему (для
+     * прямых решателей EJML - то же отношение для диагонали множителя). 0 - на диагонали есть нуль. Точность
+     * последнего решения - {@link #getRelativeResidual()}.
+     */
+    @Override
+    public double quality() {
+        return quality;
+    }
+
+    /**
+     * Решить систему для каждого столбца <code>B</code>, начиная с соответствующего столбца <code>X</code> (см.
+     * описание класса).
+     * @throws IllegalStateException если точность не достигнута за допустимое количество итераций или метод
+     *                               прервался: вырождение билинейной формы (матрица вырождена или неудачное
+     *                               начальное приближение) либо нечисловая невязка.
+     */
+    @Override
+    public void solve(@NotNull ZMatrixRMaj B, @NotNull ZMatrixRMaj X) {
+        if (B.numRows != n) {
+            throw new IllegalArgumentException("Неверное количество строк правой части");
+        }
+        int m = B.numCols;
+        if (X.numRows != n || X.numCols != m) {
+            X.reshape(n, m);
+            X.zero();
+        }
+        int limit = maxIterations > 0 ? maxIterations : Math.max(10 * n, 1);
+        iterations = 0;
+        relativeResidual = 0;
+        for (int c = 0; c < m; c++) {
+            double bNorm2 = 0;
+            for (int i = 0; i < n; i++) {
+                int src = 2 * (i * m + c);
+                x[2 * i] = X.data[src];
+                x[2 * i + 1] = X.data[src + 1];
+                r[2 * i] = B.data[src];
+                r[2 * i + 1] = B.data[src + 1];
+                bNorm2 += r[2 * i] * r[2 * i] + r[2 * i + 1] * r[2 * i + 1];
+            }
+            if (bNorm2 == 0) {
+                for (int i = 0; i < n; i++) {
+                    X.data[2 * (i * m + c)] = 0;
+                    X.data[2 * (i * m + c) + 1] = 0;
+                }
+                continue;
+            }
+            mult(x, q);
+            double threshold = tolerance * tolerance * bNorm2;
+            double rzRe = 0;
+            double rzIm = 0;
+            double rNorm2 = 0;
+            for (int i = 0; i < 2 * n; i += 2) {
+                r[i] -= q[i];
+                r[i + 1] -= q[i + 1];
+                z[i] = invDiag[i] * r[i] - invDiag[i + 1] * r[i + 1];
+                z[i + 1] = invDiag[i] * r[i + 1] + invDiag[i + 1] * r[i];
+                p[i] = z[i];
+                p[i + 1] = z[i + 1];
+                rzRe += r[i] * z[i] - r[i + 1] * z[i + 1];
+                rzIm += r[i] * z[i + 1] + r[i + 1] * z[i];
+                rNorm2 += r[i] * r[i] + r[i + 1] * r[i + 1];
+            }
+            int it = 0;
+            while (rNorm2 > threshold || !Double.isFinite(rNorm2)) {
+                if (it == limit || !Double.isFinite(rNorm2)) {
+                    throw new IllegalStateException("Метод COCG не сошелся за " + it + " итераций");
+                }
+                mult(p, q);
+                double pqRe = 0;
+                double pqIm = 0;
+                for (int i = 0; i < 2 * n; i += 2) {
+                    pqRe += p[i] * q[i] - p[i + 1] * q[i + 1];
+                    pqIm += p[i] * q[i + 1] + p[i + 1] * q[i];
+                }
+                double denom = pqRe * pqRe + pqIm * pqIm;
+                if (!(denom > 0)) {
+                    throw new IllegalStateException("Метод COCG: вырождение билинейной формы");
+                }
+                /* alpha = (r, z) / (p, Ap) */
+                double aRe = (rzRe * pqRe + rzIm * pqIm) / denom;
+                double aIm = (rzIm * pqRe - rzRe * pqIm) / denom;
+                double nextRe = 0;
+                double nextIm = 0;
+                rNorm2 = 0;
+                for (int i = 0; i < 2 * n; i += 2) {
+                    x[i] += aRe * p[i] - aIm * p[i + 1];
+                    x[i + 1] += aRe * p[i + 1] + aIm * p[i];
+                    r[i] -= aRe * q[i] - aIm * q[i + 1];
+                    r[i + 1] -= aRe * q[i + 1] + aIm * q[i];
+                    z[i] = invDiag[i] * r[i] - invDiag[i + 1] * r[i + 1];
+                    z[i + 1] = invDiag[i] * r[i + 1] + invDiag[i + 1] * r[i];
+                    nextRe += r[i] * z[i] - r[i + 1] * z[i + 1];
+                    nextIm += r[i] * z[i + 1] + r[i + 1] * z[i];
+                    rNorm2 += r[i] * r[i] + r[i + 1] * r[i + 1];
+                }
+                /* beta = (r', z') / (r, z) */
+                double rzDenom = rzRe * rzRe + rzIm * rzIm;
+                if (!(rzDenom > 0)) {
+                    throw new IllegalStateException("Метод COCG: вырождение билинейной формы");
+                }
+                double bRe = (nextRe * rzRe + nextIm * rzIm) / rzDenom;
+                double bIm = (nextIm * rzRe - nextRe * rzIm) / rzDenom;
+                rzRe = nextRe;
+                rzIm = nextIm;
+                for (int i = 0; i < 2 * n; i += 2) {
+                    double pRe = p[i];
+                    double pIm = p[i + 1];
+                    p[i] = z[i] + bRe * pRe - bIm * pIm;
+                    p[i + 1] = z[i + 1] + bRe * pIm + bIm * pRe;
+                }
+                it++;
+            }
+            iterations += it;
+            relativeResidual = Math.max(relativeResidual, Math.sqrt(rNorm2 / bNorm2));
+            for (int i = 0; i < n; i++) {
+                X.data[2 * (i * m + c)] = x[2 * i];
+                X.data[2 * (i * m + c) + 1] = x[2 * i + 1];
+            }
+        }
+    }
+
+    @Override
+    public void invert(@NotNull ZMatrixRMaj A_inv) {
+        ZMatrixRMaj I = new ZMatrixRMaj(n, n);
+        for (int i = 0; i < n; i++) {
+            I.data[2 * (i * n + i)] = 1;
+        }
+        A_inv.reshape(n, n);
+        A_inv.zero();
+        solve(I, A_inv);
+    }
+
+    @Override
+    public boolean modifiesA() {
+        return false;
+    }
+
+    @Override
+    public boolean modifiesB() {
+        return false;
+    }
+
+    /** Разложение не выполняется. */
+    @Override
+    public <D extends DecompositionInterface> D getDecomposition() {
+        return null;
+    }
+
+    /** Суммарное количество итераций последнего вызова {@link #solve} по всем правым частям. */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** Наибольшая по правым частям относительная невязка <code>|b - Ax| / |b|</code> последнего {@link #solve}. */
+    public double getRelativeResidual() {
+        return relativeResidual;
+    }
+
+    /** <code>y = A&#215v</code>. */
+    private void mult(double[] v, double[] y) {
+        if (operator != null) {
+            operator.mult(v, y);
+            return;
+        }
+        double[] a = A.data;
+        for (int i = 0; i < n; i++) {
+            double re = 0;
+            double im = 0;
+            int row = 2 * i * n;
+            for (int j = 0; j < n; j++) {
+                double aRe = a[row + 2 * j];
+                double aIm = a[row + 2 * j + 1];
+                re += aRe * v[2 * j] - aIm * v[2 * j + 1];
+                im += aRe * v[2 * j + 1] + aIm * v[2 * j];
+            }
+            y[2 * i] = re;
+            y[2 * i + 1] = im;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package ic.solver;
+
+import org.ejml.data.ZMatrixRMaj;
+import org.ejml.interfaces.decomposition.DecompositionInterface;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Разложение LDL<sup>T</sup> комплексной симметричной (не эрмитовой) матрицы: A = L&#215D&#215L<sup>T</sup> без
+ * комплексного сопряжения. Требует вдвое меньше операций, чем LU, и читает только нижний треугольник A.
+ * <p>
+ * Выбор ведущего элемента не выполняется. Для матрицы контурных сопротивлений пассивной схемы это допустимо:
+ * ее вещественная часть положительно определена, а значит, положительно определены и вещественные части всех
+ * ведущих подматриц, и элементы D не обращаются в ноль.
+ * </p>
+ * <p>
+ * Два варианта хранения множителя:
+ * <ul>
+ *     <li>плотный - разложение выполняется на месте, в массиве данных переданной матрицы ({@link #modifiesA()});</li>
+ *     <li>упакованный - нижний треугольник по строкам во внутреннем массиве из <code>n(n+1)</code> чисел double,
+ *     вдвое меньшем плотной матрицы; исходная матрица не изменяется.</li>
+ * </ul>
+ * В обоих случаях элемент L[i][k] расположен по смещению <code>rowStart(i) + k</code>, а D[i] - на месте L[i][i].
+ * </p>
+ */
+public class ComplexSymmetricLdl implements LinearSolverDense<ZMatrixRMaj> {
+
+    /** Наибольший размер массивов кучи. */
+    private static final int MAX_HEAP_ENTRIES = Integer.MAX_VALUE - 8;
+
+    private final boolean packed;
+    private double[] packedData = new double[0];
+    private double[] ld;
+    private int[] rowStarts = new int[0];
+    private double[] v = new double[0];
+    private int n;
+    private double quality;
+
+    /** Плотный вариант (разложение на месте). */
+    public ComplexSymmetricLdl() {
+        this(false);
+    }
+
+    /**
+     * @param packed <code>true</code> - хранить множитель в упакованном нижнем треугольнике.
+     */
+    public ComplexSymmetricLdl(boolean packed) {
+        this.packed = packed;
+    }
+
+    @Override
+    public boolean setA(@NotNull ZMatrixRMaj A) {
+        if (A.numRows != A.numCols) {
+            throw new IllegalArgumentException("Матрица должна быть квадратной");
+        }
+        long size = (long) A.numRows * (A.numRows + 1);
+        if (packed && size > MAX_HEAP_ENTRIES) {
+            throw new IllegalArgumentException(
+                    "Упакованный множитель матрицы порядка " + A.numRows + " (" + size + " чисел double) не "
+                            + "помещается в массив кучи"
+            );
+        }
+        n = A.numRows;
+        if (rowStarts.length < n) {
+            rowStarts = new int[n];
+            v = new double[2 * n];
+        }
+        if (packed) {
+            if (packedData.length < size) {
+                packedData = new double[(int) size];
+            }
+            for (int i = 0; i < n; i++) {
+                rowStarts[i] = (int) ((long) i * (i + 1) / 2);
+                System.arraycopy(A.data, 2 * i * n, packedData, 2 * rowStarts[i], 2 * (i + 1));
+            }
+            ld = packedData;
+        } else {
+            for (int i = 0; i < n; i++) {
+                rowStarts[i] = i * n;
+            }
+            ld = A.data;
+        }
+        return decompose();
+    }
+
+    @Override
+    public double quality() {
+        return quality;
+    }
+
+    /**
+     * Решить систему для одной или нескольких правых частей (столбцы <code>B</code>). Несколько правых частей
+     * решаются одновременно: множитель читается один раз на ход, а строки решения непрерывны.
+     * @param B Правые части.
+     * @param X Матрица для сохранения решения. Может совпадать с <code>B</code>.
+     */
+    @Override
+    public void solve(@NotNull ZMatrixRMaj B, @NotNull ZMatrixRMaj X) {
+        if (B.numRows != n) {
+            throw new IllegalArgumentException("Неверное количество строк правой части");
+        }
+        if (B.numCols == 1) {
+            X.reshape(n, 1);
+            System.arraycopy(B.data, 0, v, 0, 2 * n);
+            solve(v);
+            System.arraycopy(v, 0, X.data, 0, 2 * n);
+            return;
+        }
+        if (X != B) {
+            X.reshape(n, B.numCols);
+            System.arraycopy(B.data, 0, X.data, 0, 2 * n * B.numCols);
+        }
+        solveBlock(X.data, 2 * B.numCols);
+    }
+
+    @Override
+    public void invert(@NotNull ZMatrixRMaj A_inv) {
+        A_inv.reshape(n, n);
+        A_inv.zero();
+        for (int i = 0; i < n; i++) {
+            A_inv.data[2 * (i * n + i)] = 1;
+        }
+        solve(A_inv, A_inv);
+    }
+
+    @Override
+    public boolean modifiesA() {
+        return !packed;
+    }
+
+    @Override
+    public boolean modifiesB() {
+        return false;
+    }
+
+    /**
+     * Разложение не представлено стандартным интерфейсом EJML.
+     * @throws UnsupportedOperationException Всегда.
+     */
+    @Override
+    public <D extends DecompositionInterface> D getDecomposition() {
+        throw new UnsupportedOperationException("Разложение LDLT не представлено интерфейсом EJML");
+    }
+
+    /**
+     * Построчное разложение: для строки <code>j</code> вычисляются v[k] = L[j][k]&#183D[k], затем D[j] и столбец
+     * <code>j</code> множителя L. Все скалярные произведения проходят по непрерывным участкам строк.
+     */
+    private boolean decompose() {
+        double[] a = ld;
+        double minAbs = Double.MAX_VALUE;
+        double maxAbs = 0;
+        for (int j = 0; j < n; j++) {
+            int rj = 2 * rowStarts[j];
+            for (int k = 0; k < j; k++) {
+                int lk = rj + 2 * k;
+                int dk = 2 * (rowStarts[k] + k);
+                double lRe = a[lk];
+                double lIm = a[lk + 1];
+                v[2 * k] = lRe * a[dk] - lIm * a[dk + 1];
+                v[2 * k + 1] = lRe * a[dk + 1] + lIm * a[dk];
+            }
+            int dj = rj + 2 * j;
+            double dRe = a[dj];
+            double dIm = a[dj + 1];
+            for (int k = 0; k < j; k++) {
+                int lk = rj + 2 * k;
+                dRe -= a[lk] * v[2 * k] - a[lk + 1] * v[2 * k + 1];
+                dIm -= a[lk] * v[2 * k + 1] + a[lk + 1] * v[2 * k];
+            }
+            double abs = Math.hypot(dRe, dIm);
+            if (abs == 0 || Double.isNaN(abs)) {
+                quality = 0;
+                return false;
+            }
+            minAbs = Math.min(minAbs, abs);
+            maxAbs = Math.max(maxAbs, abs);
+            a[dj] = dRe;
+            a[dj + 1] = dIm;
+            double denom = dRe * dRe + dIm * dIm;
+            double invRe = dRe / denom;
+            double invIm = -dIm / denom;
+            for (int i = j + 1; i < n; i++) {
+                int ri = 2 * rowStarts[i];
+                double re = a[ri + 2 * j];
+                double im = a[ri + 2 * j + 1];
+                for (int k = 0; k < j; k++) {
+                    int lk = ri + 2 * k;
+                    re -= a[lk] * v[2 * k] - a[lk + 1] * v[2 * k + 1];
+                    im -= a[lk] * v[2 * k + 1] + a[lk + 1] * v[2 * k];
+                }
+                a[ri + 2 * j] = re * invRe - im * invIm;
+                a[ri + 2 * j + 1] = re * invIm + im * invRe;
+            }
+        }
+        quality = n == 0 ? 1 : minAbs / maxAbs;
+        return true;
+    }
+
+    /** То же, что {@link #solve(double[])}, для строк <code>x</code> длиной <code>stride</code> (m комплексных чисел). */
+    private void solveBlock(double[] x, int stride) {
+        double[] a = ld;
+        for (int i = 0; i < n; i++) {
+            int ri = 2 * rowStarts[i];
+            int xi = i * stride;
+            for (int k = 0; k < i; k++) {
+                double lRe = a[ri + 2 * k];
+                double lIm = a[ri + 2 * k + 1];
+                int xk = k * stride;
+                for (int c = 0; c < stride; c += 2) {
+                    x[xi + c] -= lRe * x[xk + c] - lIm * x[xk + c + 1];
+                    x[xi + c + 1] -= lRe * x[xk + c + 1] + lIm * x[xk + c];
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int di = 2 * (rowStarts[i] + i);
+            double denom = a[di] * a[di] + a[di + 1] * a[di + 1];
+            double invRe = a[di] / denom;
+            double invIm = -a[di + 1] / denom;
+            for (int c = i * stride; c < (i + 1) * stride; c += 2) {
+                double re = x[c];
+                double im = x[c + 1];
+                x[c] = re * invRe - im * invIm;
+                x[c + 1] = re * invIm + im * invRe;
+            }
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int ri = 2 * rowStarts[i];
+            int xi = i * stride;
+            for (int k = 0; k < i; k++) {
+                double lRe = a[ri + 2 * k];
+                double lIm = a[ri + 2 * k + 1];
+                int xk = k * stride;
+                for (int c = 0; c < stride; c += 2) {
+                    x[xk + c] -= lRe * x[xi + c] - lIm * x[xi + c + 1];
+                    x[xk + c + 1] -= lRe * x[xi + c + 1] + lIm * x[xi + c];
+                }
+            }
+        }
+    }
+
+    /** Прямой ход по L, деление на D и обратный ход по L<sup>T</sup> (по строкам L, в обратном порядке). */
+    private void solve(double[] x) {
+        double[] a = ld;
+        for (int i = 0; i < n; i++) {
+            int ri = 2 * rowStarts[i];
+            double re = x[2 * i];
+            double im = x[2 * i + 1];
+            for (int k = 0; k < i; k++) {
+                int lk = ri + 2 * k;
+                re -= a[lk] * x[2 * k] - a[lk + 1] * x[2 * k + 1];
+                im -= a[lk] * x[2 * k + 1] + a[lk + 1] * x[2 * k];
+            }
+            x[2 * i] = re;
+            x[2 * i + 1] = im;
+        }
+        for (int i = 0; i < n; i++) {
+            int di = 2 * (rowStarts[i] + i);
+            double re = x[2 * i];
+            double im = x[2 * i + 1];
+            double denom = a[di] * a[di] + a[di + 1] * a[di + 1];
+            x[2 * i] = (re * a[di] + im * a[di + 1]) / denom;
+            x[2 * i + 1] = (im * a[di] - re * a[di + 1]) / denom;
+        }
+        /* Обратный ход: x[k] -= L[i][k] x[i] для i > k. */
+        for (int i = n - 1; i > 0; i--) {
+            int ri = 2 * rowStarts[i];
+            double re = x[2 * i];
+            double im = x[2 * i + 1];
+            for (int k = 0; k < i; k++) {
+                int lk = ri + 2 * k;
+                x[2 * k] -= a[lk] * re - a[lk + 1] * im;
+                x[2 * k + 1] -= a[lk] * im + a[lk + 1] * re;
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ic.solver;
+
+import ic.matrix.KZKTPattern;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Решатель, выбирающий плотное или разреженное разложение Холецкого по портрету матрицы контурных сопротивлений.
+ * <p>
+ * При назначении портрета выполняется символьный анализ {@link DcSparseCholesky} (упорядочение и подсчет элементов
+ * множителя L), после чего стоимости обоих разложений сравниваются по модели {@link SolverCalibration}. Выбор
+ * пересматривается только при изменении топологии.
+ * </p>
+ */
+public class DcAdaptiveSolver implements DcLoopSolver {
+
+    private final SolverCalibration calibration;
+    private final DcDenseCholesky dense = new DcDenseCholesky();
+    private final DcSparseCholesky sparse = new DcSparseCholesky();
+    private DcLoopSolver active;
+
+    /**
+     * @param calibration Модель стоимости разложений, измеренная {@link SolverCalibration#measure()} или заданная
+     *                    явно.
+     */
+    public DcAdaptiveSolver(@NotNull SolverCalibration calibration) {
+        this.calibration = calibration;
+    }
+
+    @Override
+    public void setPattern(@NotNull KZKTPattern pattern) {
+        sparse.setPattern(pattern);
+        if (calibration.preferSparse(pattern.size(), sparse.factorFlops())) {
+            active = sparse;
+        } else {
+            dense.setPattern(pattern);
+            active = dense;
+        }
+    }
+
+    @Override
+    public boolean setImpedances(@NotNull ZMatrixDc Z) {
+        return active.setImpedances(Z);
+    }
+
+    @Override
+    public void solve(@NotNull DMatrixRMaj B, @NotNull DMatrixRMaj X) {
+        active.solve(B, X);
+    }
+
+    /** Выбрано ли разреженное разложение для текущего портрета. */
+    public boolean isSparse() {
+        return active == sparse;
+    }
+}
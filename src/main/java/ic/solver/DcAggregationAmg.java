@@ -0,0 +1,321 @@
+package ic.solver;
+
+import ic.matrix.KZKTPattern;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Алгебраический многосеточный предобусловливатель (попарная агрегация) для матрицы контурных сопротивлений
+ * постоянного тока.
+ * <p>
+ * Иерархия уровней строится при первом вызове {@link #setMatrix} после изменения топологии ({@link #setPattern}) и
+ * затем переиспользуется на всех шагах расчета. На каждом уровне контуры объединяются в пары по наиболее сильной
+ * связи <code>|a<sub>ij</sub>| / &#8730(a<sub>ii</sub>a<sub>jj</sub>)</code>, так что контуры с общими ребрами большого
+ * сопротивления попадают в один агрегат. Матрица следующего уровня - произведение Галеркина
+ * P<sup>T</sup>&#215A&#215P, где P - кусочно-постоянное продолжение со знаками, согласующими ориентацию контуров
+ * агрегата. Портрет и карта сложения элементов вычисляются вместе с иерархией, поэтому при изменении сопротивлений
+ * выполняется только линейный проход по картам. На самом грубом уровне (не более {@value #COARSE_SIZE} контуров)
+ * применяется плотное разложение Холецкого.
+ * </p>
+ * <p>
+ * {@link #apply} выполняет один V-цикл с симметричным сглаживанием Гаусса - Зейделя (прямой проход до перехода на
+ * грубый уровень, обратный - после), поэтому предобусловливатель симметричен и положительно определен и пригоден для
+ * метода сопряженных градиентов.
+ * </p>
+ */
+final class DcAggregationAmg {
+
+    /** Наибольший порядок матрицы самого грубого уровня. */
+    static final int COARSE_SIZE = 64;
+
+    private final List<Level> levels = new ArrayList<>();
+    private final DMatrixRMaj coarse = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj coarseB = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj coarseX = new DMatrixRMaj(1, 1);
+    private LinearSolverDense<DMatrixRMaj> coarseSolver;
+    /** Номер элемента портрета (верхний треугольник CSC) для каждого элемента полной матрицы первого уровня. */
+    private int[] fineSlots = new int[0];
+
+    /** Матрица одного уровня в формате CSR (оба треугольника) с рабочими векторами. */
+    private static final class Level {
+        final int n;
+        final int[] rows;
+        final int[] cols;
+        final double[] values;
+        final int[] diag;
+        final double[] x;
+        final double[] b;
+        /** Номер агрегата (строки следующего уровня) для каждой строки; пуст на самом грубом уровне. */
+        int[] aggregates = new int[0];
+        /** Знак строки в агрегате (элемент P); пуст на самом грубом уровне. */
+        int[] signs = new int[0];
+        /** Номер элемента матрицы следующего уровня, к которому прибавляется каждый элемент этого уровня. */
+        int[] coarseSlots = new int[0];
+
+        Level(int n, int[] rows, int[] cols, int[] diag) {
+            this.n = n;
+            this.rows = rows;
+            this.cols = cols;
+            this.diag = diag;
+            values = new double[cols.length];
+            x = new double[n];
+            b = new double[n];
+        }
+    }
+
+    /** Назначить портрет матрицы контурных сопротивлений. Иерархия будет построена заново при {@link #setMatrix}. */
+    void setPattern(@NotNull KZKTPattern pattern) {
+        levels.clear();
+        levels.add(fineLevel(pattern));
+        coarseSolver = null;
+    }
+
+    /**
+     * Вычислить матрицы всех уровней для матрицы первого уровня <code>A</code> (при необходимости построив иерархию)
+     * и факторизовать матрицу самого грубого уровня.
+     * @param A Матрица контурных сопротивлений (верхний треугольник CSC с портретом, переданным в {@link #setPattern}).
+     * @return <code>false</code>, если матрица самого грубого уровня не является положительно определенной.
+     */
+    boolean setMatrix(@NotNull DMatrixSparseCSC A) {
+        Level fine = levels.get(0);
+        for (int k = 0; k < fine.values.length; k++) {
+            fine.values[k] = A.nz_values[fineSlots[k]];
+        }
+        if (coarseSolver == null) {
+            coarsen();
+        }
+        for (int l = 0; l + 1 < levels.size(); l++) {
+            galerkin(levels.get(l), levels.get(l + 1));
+        }
+        Level last = levels.get(levels.size() - 1);
+        coarse.zero();
+        for (int i = 0; i < last.n; i++) {
+            for (int k = last.rows[i]; k < last.rows[i + 1]; k++) {
+                coarse.data[i * last.n + last.cols[k]] = last.values[k];
+            }
+        }
+        return coarseSolver.setA(coarse);
+    }
+
+    /** <code>z = M<sup>-1</sup>&#215r</code> - один V-цикл. */
+    void apply(@NotNull double[] r, @NotNull double[] z) {
+        Level fine = levels.get(0);
+        System.arraycopy(r, 0, fine.b, 0, fine.n);
+        cycle(0);
+        System.arraycopy(fine.x, 0, z, 0, fine.n);
+    }
+
+    /** Построить грубые уровни по значениям матрицы первого уровня. */
+    private void coarsen() {
+        Level level = levels.get(0);
+        while (level.n > COARSE_SIZE) {
+            int coarseCnt = aggregate(level);
+            if (coarseCnt == level.n) {
+                break;
+            }
+            Level next = galerkinPattern(level, coarseCnt);
+            galerkin(level, next);
+            levels.add(next);
+            level = next;
+        }
+        Level last = levels.get(levels.size() - 1);
+        coarse.reshape(last.n, last.n);
+        coarseB.reshape(last.n, 1);
+        coarseX.reshape(last.n, 1);
+        coarseSolver = LinearSolverFactory_DDRM.chol(last.n);
+    }
+
+    private void cycle(int l) {
+        Level level = levels.get(l);
+        if (l == levels.size() - 1) {
+            System.arraycopy(level.b, 0, coarseB.data, 0, level.n);
+            coarseSolver.solve(coarseB, coarseX);
+            System.arraycopy(coarseX.data, 0, level.x, 0, level.n);
+            return;
+        }
+        Arrays.fill(level.x, 0);
+        smoothForward(level);
+        Level next = levels.get(l + 1);
+        Arrays.fill(next.b, 0);
+        for (int i = 0; i < level.n; i++) {
+            double s = level.b[i];
+            for (int k = level.rows[i]; k < level.rows[i + 1]; k++) {
+                s -= level.values[k] * level.x[level.cols[k]];
+            }
+            next.b[level.aggregates[i]] += level.signs[i] * s;
+        }
+        cycle(l + 1);
+        for (int i = 0; i < level.n; i++) {
+            level.x[i] += level.signs[i] * next.x[level.aggregates[i]];
+        }
+        smoothBackward(level);
+    }
+
+    /** Матрица следующего уровня P<sup>T</sup>&#215A&#215P по карте сложения элементов. */
+    private static void galerkin(Level level, Level next) {
+        Arrays.fill(next.values, 0);
+        for (int i = 0; i < level.n; i++) {
+            for (int k = level.rows[i]; k < level.rows[i + 1]; k++) {
+                next.values[level.coarseSlots[k]] += level.signs[i] * level.signs[level.cols[k]] * level.values[k];
+            }
+        }
+    }
+
+    private static void smoothForward(Level level) {
+        for (int i = 0; i < level.n; i++) {
+            relax(level, i);
+        }
+    }
+
+    private static void smoothBackward(Level level) {
+        for (int i = level.n - 1; i >= 0; i--) {
+            relax(level, i);
+        }
+    }
+
+    /** Шаг Гаусса - Зейделя для строки <code>i</code>. */
+    private static void relax(Level level, int i) {
+        double s = level.b[i];
+        for (int k = level.rows[i]; k < level.rows[i + 1]; k++) {
+            s -= level.values[k] * level.x[level.cols[k]];
+        }
+        int d = level.diag[i];
+        level.x[i] += s / level.values[d];
+    }
+
+    /** Полная матрица первого уровня: строка <code>i</code> портрета и элементы столбца <code>i</code> ниже нее. */
+    private Level fineLevel(KZKTPattern pattern) {
+        int n = pattern.size();
+        int[] rows = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            for (int k = pattern.rows.get(i); k < pattern.rows.get(i + 1); k++) {
+                int j = pattern.cols.get(k);
+                rows[i + 1]++;
+                if (j != i) {
+                    rows[j + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            rows[i + 1] += rows[i];
+        }
+        int[] next = Arrays.copyOf(rows, n);
+        int[] cols = new int[rows[n]];
+        int[] diag = new int[n];
+        if (fineSlots.length < cols.length) {
+            fineSlots = new int[cols.length];
+        }
+        for (int i = 0; i < n; i++) {
+            for (int k = pattern.rows.get(i); k < pattern.rows.get(i + 1); k++) {
+                int j = pattern.cols.get(k);
+                if (j == i) {
+                    diag[i] = next[i];
+                }
+                cols[next[i]] = j;
+                fineSlots[next[i]++] = k;
+                if (j != i) {
+                    cols[next[j]] = i;
+                    fineSlots[next[j]++] = k;
+                }
+            }
+        }
+        return new Level(n, rows, cols, diag);
+    }
+
+    /**
+     * Разбить строки уровня на агрегаты - пары строк. Свободная строка объединяется со свободным соседом, связь с
+     * которым (<code>|a<sub>ij</sub>| / &#8730(a<sub>ii</sub>a<sub>jj</sub>)</code>) сильнее всего. Знак второй
+     * строки пары выбирается так, чтобы их связь стала отрицательной: тогда гладкие составляющие погрешности
+     * кусочно-постоянны с точностью до знаков, несмотря на произвольную ориентацию контуров.
+     * @return количество агрегатов.
+     */
+    private static int aggregate(Level level) {
+        int n = level.n;
+        int[] agg = new int[n];
+        int[] signs = new int[n];
+        Arrays.fill(agg, -1);
+        int cnt = 0;
+        for (int i = 0; i < n; i++) {
+            if (agg[i] >= 0) {
+                continue;
+            }
+            double dii = level.values[level.diag[i]];
+            double best = 0;
+            int bestK = -1;
+            for (int k = level.rows[i]; k < level.rows[i + 1]; k++) {
+                int j = level.cols[k];
+                if (j != i && agg[j] < 0) {
+                    double a = level.values[k];
+                    double strength = a * a / (dii * level.values[level.diag[j]]);
+                    if (strength > best) {
+                        best = strength;
+                        bestK = k;
+                    }
+                }
+            }
+            agg[i] = cnt;
+            signs[i] = 1;
+            if (bestK >= 0) {
+                int j = level.cols[bestK];
+                agg[j] = cnt;
+                signs[j] = level.values[bestK] > 0 ? -1 : 1;
+            }
+            cnt++;
+        }
+        level.aggregates = agg;
+        level.signs = signs;
+        return cnt;
+    }
+
+    /** Портрет матрицы P<sup>T</sup>&#215A&#215P следующего уровня и карта сложения элементов. */
+    private static Level galerkinPattern(Level level, int coarseCnt) {
+        int n = level.n;
+        int[] agg = level.aggregates;
+        int[] memberRows = new int[coarseCnt + 1];
+        for (int i = 0; i < n; i++) {
+            memberRows[agg[i] + 1]++;
+        }
+        for (int c = 0; c < coarseCnt; c++) {
+            memberRows[c + 1] += memberRows[c];
+        }
+        int[] members = new int[n];
+        int[] next = Arrays.copyOf(memberRows, coarseCnt);
+        for (int i = 0; i < n; i++) {
+            members[next[agg[i]]++] = i;
+        }
+        int[] marks = new int[coarseCnt];
+        Arrays.fill(marks, -1);
+        int[] rows = new int[coarseCnt + 1];
+        int[] cols = new int[level.cols.length];
+        int[] diag = new int[coarseCnt];
+        int[] slots = new int[level.cols.length];
+        int nz = 0;
+        for (int c = 0; c < coarseCnt; c++) {
+            rows[c] = nz;
+            for (int m = memberRows[c]; m < memberRows[c + 1]; m++) {
+                int i = members[m];
+                for (int k = level.rows[i]; k < level.rows[i + 1]; k++) {
+                    int cc = agg[level.cols[k]];
+                    if (marks[cc] < rows[c]) {
+                        marks[cc] = nz;
+                        if (cc == c) {
+                            diag[c] = nz;
+                        }
+                        cols[nz++] = cc;
+                    }
+                    slots[k] = marks[cc];
+                }
+            }
+        }
+        rows[coarseCnt] = nz;
+        level.coarseSlots = slots;
+        return new Level(coarseCnt, rows, Arrays.copyOf(cols, nz), diag);
+    }
+}
@@ -0,0 +1,288 @@
+package ic.solver;
+
+import ic.matrix.DcLoopOperator;
+import ic.matrix.DcMatrixOps;
+import ic.matrix.IMatrixCsr;
+import ic.matrix.KZKTPattern;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Итерационный решатель системы контурных уравнений постоянного тока - метод сопряженных градиентов с
+ * предобусловливанием диагональю (Якоби).
+ * <p>
+ * Матрица контурных сопротивлений собирается по портрету в верхний треугольник CSC без факторизации. Начальным
+ * приближением служит содержимое <code>X</code>, переданной в {@link #solve}, если ее размер совпадает с размером
+ * правых частей: в пошаговом расчете это решение предыдущего шага, которое обычно мало отличается от нового, и
+ * для сходимости достаточно нескольких итераций. Иначе итерации начинаются с нуля.
+ * </p>
+ * <p>
+ * В режиме без сборки матрицы ({@link #DcConjugateGradient(double, int, boolean)}) портрет не строится, а каждая
+ * итерация умножает на K&#215Z&#215K<sup>T</sup> тремя проходами по K<sup>T</sup>, Z и K ({@link DcLoopOperator}):
+ * память не зависит от количества ненулевых элементов матрицы контурных сопротивлений.
+ * </p>
+ * <p>
+ * Если сопротивления ребер различаются на много порядков (например, сопротивления рельс - земля и внутренние
+ * сопротивления подстанций), диагонального предобусловливания недостаточно: для собранной матрицы можно применить
+ * многосеточное ({@link Preconditioner#MULTIGRID}). Его иерархия строится
+ * по сопротивлениям первого шага после изменения топологии и переиспользуется на следующих шагах.
+ * </p>
+ */
+public class DcConjugateGradient implements DcLoopSolver {
+
+    /** Предобусловливание. */
+    public enum Preconditioner {
+        /** Диагональ матрицы (Якоби). */
+        JACOBI,
+        /** V-цикл алгебраического многосеточного метода с агрегацией контуров ({@link DcAggregationAmg}). */
+        MULTIGRID
+    }
+
+    private final DMatrixSparseCSC A = new DMatrixSparseCSC(1, 1, 1);
+    private final double tolerance;
+    private final int maxIterations;
+    @Nullable
+    private final DcLoopOperator operator;
+    @Nullable
+    private final DcAggregationAmg amg;
+    private KZKTPattern pattern;
+    private double[] invDiag = new double[0];
+    private double[] x = new double[0];
+    private double[] r = new double[0];
+    private double[] z = new double[0];
+    private double[] p = new double[0];
+    private double[] q = new double[0];
+    private int n;
+    private int iterations;
+
+    /** Относительная невязка 10<sup>-10</sup>, не более <code>10n</code> итераций на правую часть. */
+    public DcConjugateGradient() {
+        this(1e-10, 0);
+    }
+
+    /**
+     * @param tolerance     Допустимая относительная невязка <code>|b - Ax| / |b|</code>.
+     * @param maxIterations Наибольшее количество итераций на правую часть; 0 - <code>10n</code>, где
+     *                      <code>n</code> - порядок матрицы (в точной арифметике метод сходится не более чем за
+     *                      <code>n</code> итераций, запас покрывает ошибки округления).
+     */
+    public DcConjugateGradient(double tolerance, int maxIterations) {
+        this(tolerance, maxIterations, false);
+    }
+
+    /**
+     * @param tolerance     Допустимая относительная невязка <code>|b - Ax| / |b|</code>.
+     * @param maxIterations Наибольшее количество итераций на правую часть (см.
+     *                      {@link #DcConjugateGradient(double, int)}).
+     * @param matrixFree    Не собирать матрицу контурных сопротивлений, а умножать на нее через
+     *                      {@link DcLoopOperator}.
+     */
+    public DcConjugateGradient(double tolerance, int maxIterations, boolean matrixFree) {
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        this.operator = matrixFree ? new DcLoopOperator() : null;
+        this.amg = null;
+    }
+
+    /**
+     * Решатель с собранной матрицей контурных сопротивлений.
+     * @param tolerance      Допустимая относительная невязка <code>|b - Ax| / |b|</code>.
+     * @param maxIterations  Наибольшее количество итераций на правую часть (см.
+     *                       {@link #DcConjugateGradient(double, int)}).
+     * @param preconditioner Предобусловливание.
+     */
+    public DcConjugateGradient(double tolerance, int maxIterations, @NotNull Preconditioner preconditioner) {
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        this.operator = null;
+        this.amg = preconditioner == Preconditioner.MULTIGRID ? new DcAggregationAmg() : null;
+    }
+
+    @Override
+    public boolean usesPattern() {
+        return operator == null;
+    }
+
+    @Override
+    public void setTopology(@NotNull IMatrixCsr K, @NotNull IMatrixCsr KT) {
+        if (operator != null) {
+            operator.setTopology(K, KT);
+            allocate(K.numRows());
+        }
+    }
+
+    @Override
+    public void setPattern(@NotNull KZKTPattern pattern) {
+        this.pattern = pattern;
+        allocate(pattern.size());
+        if (amg != null) {
+            amg.setPattern(pattern);
+        }
+    }
+
+    @Override
+    public boolean setImpedances(@NotNull ZMatrixDc Z) {
+        if (operator != null) {
+            operator.setImpedances(Z);
+            operator.diagonal(invDiag);
+            for (int i = 0; i < n; i++) {
+                if (!(invDiag[i] > 0)) {
+                    return false;
+                }
+                invDiag[i] = 1 / invDiag[i];
+            }
+            return true;
+        }
+        DcMatrixOps.KZKT(pattern, Z, A);
+        for (int i = 0; i < A.numCols; i++) {
+            double d = 0;
+            for (int k = A.col_idx[i]; k < A.col_idx[i + 1]; k++) {
+                if (A.nz_rows[k] == i) {
+                    d = A.nz_values[k];
+                }
+            }
+            if (!(d > 0)) {
+                return false;
+            }
+            invDiag[i] = 1 / d;
+        }
+        return amg == null || amg.setMatrix(A);
+    }
+
+    /**
+     * Решить систему для каждого столбца <code>B</code>, начиная с соответствующего столбца <code>X</code> (см.
+     * описание класса).
+     * @throws IllegalStateException если точность не достигнута за допустимое количество итераций или метод
+     *                               прервался: матрица не положительно определена (<code>(p, Ap) &#8804 0</code>)
+     *                               либо невязка нечисловая.
+     */
+    @Override
+    public void solve(@NotNull DMatrixRMaj B, @NotNull DMatrixRMaj X) {
+        int m = B.numCols;
+        if (X.numRows != n || X.numCols != m) {
+            X.reshape(n, m);
+            X.zero();
+        }
+        int limit = maxIterations > 0 ? maxIterations : Math.max(10 * n, 1);
+        iterations = 0;
+        for (int c = 0; c < m; c++) {
+            double bNorm2 = 0;
+            for (int i = 0; i < n; i++) {
+                double b = B.data[i * m + c];
+                x[i] = X.data[i * m + c];
+                r[i] = b;
+                bNorm2 += b * b;
+            }
+            if (bNorm2 == 0) {
+                for (int i = 0; i < n; i++) {
+                    X.data[i * m + c] = 0;
+                }
+                continue;
+            }
+            mult(x, q);
+            double threshold = tolerance * tolerance * bNorm2;
+            double rNorm2 = 0;
+            for (int i = 0; i < n; i++) {
+                r[i] -= q[i];
+                rNorm2 += r[i] * r[i];
+            }
+            double rz = precondition();
+            System.arraycopy(z, 0, p, 0, n);
+            int it = 0;
+            while (rNorm2 > threshold || !Double.isFinite(rNorm2)) {
+                if (it == limit || !Double.isFinite(rNorm2)) {
+                    throw new IllegalStateException("Метод сопряженных градиентов не сошелся за " + it + " итераций");
+                }
+                mult(p, q);
+                double pq = 0;
+                for (int i = 0; i < n; i++) {
+                    pq += p[i] * q[i];
+                }
+                if (!(pq > 0)) {
+                    throw new IllegalStateException("Метод сопряженных градиентов: матрица не положительно определена");
+                }
+                double alpha = rz / pq;
+                rNorm2 = 0;
+                for (int i = 0; i < n; i++) {
+                    x[i] += alpha * p[i];
+                    r[i] -= alpha * q[i];
+                    rNorm2 += r[i] * r[i];
+                }
+                double rzNext = precondition();
+                double beta = rzNext / rz;
+                rz = rzNext;
+                for (int i = 0; i < n; i++) {
+                    p[i] = z[i] + beta * p[i];
+                }
+                it++;
+            }
+            iterations += it;
+            for (int i = 0; i < n; i++) {
+                X.data[i * m + c] = x[i];
+            }
+        }
+    }
+
+    /** Суммарное количество итераций последнего вызова {@link #solve} по всем правым частям. */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * <code>z = M<sup>-1</sup>&#215r</code>.
+     * @return <code>(r, z)</code>.
+     */
+    private double precondition() {
+        if (amg != null) {
+            amg.apply(r, z);
+        } else {
+            for (int i = 0; i < n; i++) {
+                z[i] = invDiag[i] * r[i];
+            }
+        }
+        double rz = 0;
+        for (int i = 0; i < n; i++) {
+            rz += r[i] * z[i];
+        }
+        return rz;
+    }
+
+    private void allocate(int n) {
+        this.n = n;
+        if (invDiag.length < n) {
+            invDiag = new double[n];
+            x = new double[n];
+            r = new double[n];
+            z = new double[n];
+            p = new double[n];
+            q = new double[n];
+        }
+    }
+
+    /** <code>y = A&#215v</code> по верхнему треугольнику симметричной матрицы или через оператор. */
+    private void mult(double[] v, double[] y) {
+        if (operator != null) {
+            operator.mult(v, y);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            y[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            double vi = v[i];
+            double s = 0;
+            for (int k = A.col_idx[i]; k < A.col_idx[i + 1]; k++) {
+                int j = A.nz_rows[k];
+                double a = A.nz_values[k];
+                s += a * v[j];
+                if (j != i) {
+                    y[j] += a * vi;
+                }
+            }
+            y[i] += s;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ic.solver;
+
+import ic.matrix.DcMatrixOps;
+import ic.matrix.KZKTPattern;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.jetbrains.annotations.NotNull;
+
+/** Плотное разложение Холецкого (EJML) матрицы контурных сопротивлений. */
+public class DcDenseCholesky implements DcLoopSolver {
+
+    private final DMatrixRMaj KZKT = new DMatrixRMaj(1, 1);
+    private KZKTPattern pattern;
+    private LinearSolverDense<DMatrixRMaj> solver;
+    private int solverSize = -1;
+
+    @Override
+    public void setPattern(@NotNull KZKTPattern pattern) {
+        this.pattern = pattern;
+        if (pattern.size() != solverSize) {
+            solver = LinearSolverFactory_DDRM.chol(pattern.size());
+            solverSize = pattern.size();
+        }
+    }
+
+    @Override
+    public boolean setImpedances(@NotNull ZMatrixDc Z) {
+        DcMatrixOps.KZKT(pattern, Z, KZKT);
+        return solver.setA(KZKT);
+    }
+
+    @Override
+    public void solve(@NotNull DMatrixRMaj B, @NotNull DMatrixRMaj X) {
+        solver.solve(B, X);
+    }
+}
@@ -0,0 +1,48 @@
+package ic.solver;
+
+import ic.matrix.IMatrixCsr;
+import ic.matrix.KZKTPattern;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Решатель системы контурных уравнений K&#215Z&#215K<sup>T</sup>&#215I<sub>cc</sub> = B для схем постоянного тока.
+ * <p>
+ * Жизненный цикл: {@link #setTopology} и {@link #setPattern} при изменении топологии &#8594 {@link #setImpedances}
+ * при изменении сопротивлений &#8594 {@link #solve} для каждой правой части.
+ * </p>
+ */
+public interface DcLoopSolver {
+
+    /**
+     * Нужен ли решателю портрет матрицы контурных сопротивлений. Решатель без сборки матрицы возвращает
+     * <code>false</code>: портрет для него не строится, и {@link #setPattern} не вызывается.
+     */
+    default boolean usesPattern() {
+        return true;
+    }
+
+    /**
+     * Назначить матрицу контуров (не копируется). Вызывается только при изменении топологии, до {@link #setPattern}.
+     * Нужна решателям, умножающим на K&#215Z&#215K<sup>T</sup> без сборки матрицы.
+     */
+    default void setTopology(@NotNull IMatrixCsr K, @NotNull IMatrixCsr KT) {
+    }
+
+    /** Назначить портрет матрицы контурных сопротивлений. Вызывается только при изменении топологии. */
+    void setPattern(@NotNull KZKTPattern pattern);
+
+    /**
+     * Сформировать матрицу контурных сопротивлений для <code>Z</code> и подготовить ее к решению (факторизовать).
+     * @return <code>false</code>, если матрица не является положительно определенной.
+     */
+    boolean setImpedances(@NotNull ZMatrixDc Z);
+
+    /**
+     * Решить систему для одной или нескольких правых частей (столбцы <code>B</code>).
+     * @param B Правые части.
+     * @param X Матрица для сохранения решения того же размера, что и <code>B</code>.
+     */
+    void solve(@NotNull DMatrixRMaj B, @NotNull DMatrixRMaj X);
+}
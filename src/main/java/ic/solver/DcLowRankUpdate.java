@@ -0,0 +1,180 @@
+package ic.solver;
+
+import ic.matrix.IMatrixCsr;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.jetbrains.annotations.NotNull;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
+
+import java.util.Arrays;
+
+/**
+ * Поправка решения системы контурных уравнений постоянного тока при изменении сопротивлений немногих ребер
+ * (формула Шермана - Моррисона - Вудбери).
+ * <p>
+ * Пусть M = K&#215Z<sub>0</sub>&#215K<sup>T</sup> факторизована, а сопротивления ребер множества C изменились на
+ * &#916<sub>c</sub>. Тогда M' = M + U&#215&#916&#215U<sup>T</sup>, где столбцы U - столбцы K (строки K<sup>T</sup>)
+ * ребер C, и
+ * <pre>
+ * M'<sup>-1</sup>&#215b = x - W&#215(I + &#916&#215G)<sup>-1</sup>&#215&#916&#215U<sup>T</sup>&#215x,
+ * x = M<sup>-1</sup>&#215b, W = M<sup>-1</sup>&#215U, G = U<sup>T</sup>&#215W.
+ * </pre>
+ * W и G зависят только от M и множества C, поэтому при переходе к следующему шагу вычисляются лишь столбцы новых
+ * ребер (по одному прямому и обратному ходу на ребро), а матрица емкости I + &#916&#215G порядка k = |C|
+ * факторизуется заново. Поправка одного решения стоит <code>O(L&#183k + k<sup>2</sup>)</code>.
+ * </p>
+ * <p>
+ * Множество C отсчитывается от сопротивлений последней полной факторизации и только растет; когда k превышает
+ * заданный предел, вызывающий код выполняет полную факторизацию и вызывает {@link #rebase}.
+ * </p>
+ */
+final class DcLowRankUpdate {
+
+    private final DynamicIntArray edges = new DynamicIntArray(16);
+    private final DMatrixRMaj WT = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj G = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj capacitance = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj U = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj W = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj Y = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj V = new DMatrixRMaj(1, 1);
+    private final LinearSolverDense<DMatrixRMaj> capacitanceSolver = LinearSolverFactory_DDRM.lu(16);
+    private double[] base = new double[0];
+    private double[] delta = new double[0];
+    private int[] positions = new int[0];
+    private int maxRank;
+
+    /**
+     * Запомнить сопротивления, для которых выполнена полная факторизация, и сбросить поправку.
+     * @param Z        Матрица сопротивлений.
+     * @param numLoops Количество контуров.
+     * @param maxRank  Наибольший ранг поправки.
+     */
+    void rebase(@NotNull ZMatrixDc Z, int numLoops, int maxRank) {
+        int n = Z.size();
+        if (base.length != n) {
+            base = new double[n];
+            positions = new int[n];
+        }
+        System.arraycopy(Z.data, 0, base, 0, n);
+        Arrays.fill(positions, -1);
+        if (this.maxRank != maxRank || WT.numCols != numLoops) {
+            this.maxRank = maxRank;
+            delta = new double[maxRank];
+            WT.reshape(maxRank, numLoops);
+            G.reshape(maxRank, maxRank);
+        }
+        edges.setSize(0);
+    }
+
+    /**
+     * Обновить поправку для текущих сопротивлений.
+     * @param Z      Матрица сопротивлений.
+     * @param KT     Транспонированная матрица независимых контуров.
+     * @param solver Решатель с факторизацией для сопротивлений {@link #rebase}.
+     * @return <code>false</code>, если поправка невозможна (изменилась размерность, ранг превышает предел или матрица
+     * емкости вырождена) и требуется полная факторизация.
+     */
+    boolean update(@NotNull ZMatrixDc Z, @NotNull IMatrixCsr KT, @NotNull DcLoopSolver solver) {
+        if (Z.size() != base.length || KT.numCols() != WT.numCols) {
+            return false;
+        }
+        int first = edges.getSize();
+        for (int e = 0; e < base.length; e++) {
+            if (Z.data[e] != base[e] && positions[e] < 0) {
+                if (edges.getSize() == maxRank) {
+                    return false;
+                }
+                positions[e] = edges.getSize();
+                edges.append(e);
+            }
+        }
+        int k = edges.getSize();
+        if (k > first) {
+            addColumns(first, k, KT, solver);
+        }
+        if (k == 0) {
+            return true;
+        }
+        capacitance.reshape(k, k);
+        for (int a = 0; a < k; a++) {
+            int e = edges.get(a);
+            delta[a] = Z.data[e] - base[e];
+            for (int b = 0; b < k; b++) {
+                capacitance.data[a * k + b] = delta[a] * G.data[a * maxRank + b] + (a == b ? 1 : 0);
+            }
+        }
+        return capacitanceSolver.setA(capacitance) && capacitanceSolver.quality() > 1e-12;
+    }
+
+    /**
+     * Применить поправку к решениям <code>X</code> (<code>L&#215m</code>), полученным с факторизацией для
+     * сопротивлений {@link #rebase}.
+     */
+    void correct(@NotNull DMatrixRMaj X, @NotNull IMatrixCsr KT) {
+        int k = edges.getSize();
+        if (k == 0) {
+            return;
+        }
+        int m = X.numCols;
+        int numLoops = X.numRows;
+        Y.reshape(k, m);
+        for (int a = 0; a < k; a++) {
+            int e = edges.get(a);
+            for (int c = 0; c < m; c++) {
+                double s = 0;
+                for (int l = KT.begin(e); l < KT.end(e); l++) {
+                    s += KT.value(l) * X.data[KT.col(l) * m + c];
+                }
+                Y.data[a * m + c] = delta[a] * s;
+            }
+        }
+        capacitanceSolver.solve(Y, V);
+        for (int a = 0; a < k; a++) {
+            int w = a * numLoops;
+            for (int i = 0; i < numLoops; i++) {
+                double wa = WT.data[w + i];
+                for (int c = 0; c < m; c++) {
+                    X.data[i * m + c] -= wa * V.data[a * m + c];
+                }
+            }
+        }
+    }
+
+    /** Ранг текущей поправки (количество ребер с измененными сопротивлениями). */
+    int rank() {
+        return edges.getSize();
+    }
+
+    /** Столбцы W и строки/столбцы G для ребер <code>[first, k)</code> множества C. */
+    private void addColumns(int first, int k, IMatrixCsr KT, DcLoopSolver solver) {
+        int numLoops = WT.numCols;
+        int cnt = k - first;
+        U.reshape(numLoops, cnt);
+        U.zero();
+        for (int a = first; a < k; a++) {
+            int e = edges.get(a);
+            for (int l = KT.begin(e); l < KT.end(e); l++) {
+                U.data[KT.col(l) * cnt + a - first] = KT.value(l);
+            }
+        }
+        W.reshape(numLoops, cnt);
+        solver.solve(U, W);
+        for (int b = first; b < k; b++) {
+            for (int i = 0; i < numLoops; i++) {
+                WT.data[b * numLoops + i] = W.data[i * cnt + b - first];
+            }
+            for (int a = 0; a < k; a++) {
+                int e = edges.get(a);
+                double s = 0;
+                for (int l = KT.begin(e); l < KT.end(e); l++) {
+                    s += KT.value(l) * WT.data[b * numLoops + KT.col(l)];
+                }
+                G.data[a * maxRank + b] = s;
+                G.data[b * maxRank + a] = s;
+            }
+        }
+    }
+}
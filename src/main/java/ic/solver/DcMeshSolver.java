@@ -0,0 +1,249 @@
+package ic.solver;
+
+import graph.CycleBasis;
+import ic.matrix.DcMatrixOps;
+import ic.matrix.IMatrixCsr;
+import ic.matrix.KZKTPattern;
+import ic.matrix.VectorDc;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DGrowArray;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.IGrowArray;
+import org.jetbrains.annotations.NotNull;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicDoubleArray;
+
+import java.util.List;
+
+/**
+ * Сеанс решателя схем МПЗ постоянного тока методом контурных токов.
+ * <p>
+ * Владеет всеми рабочими массивами конвейера
+ * K&#215Z&#215K<sup>T</sup> &#8594 факторизация &#8594 K<sup>T</sup>&#215I<sub>cc</sub> &#8594 Z&#215J,
+ * поэтому после первого шага (прогрева) вызов {@link #solve} не выделяет память, пока не изменится топология схемы.
+ * Портрет матрицы K&#215Z&#215K<sup>T</sup> ({@link KZKTPattern}) строится один раз при изменении топологии, а
+ * сама система решается назначенным {@link DcLoopSolver} (по умолчанию - плотным разложением Холецкого
+ * {@link DcDenseCholesky}; выбор между плотным и разреженным разложением по калибровке машины -
+ * {@link DcAdaptiveSolver}).
+ * </p>
+ * <p>
+ * Если между шагами меняются сопротивления лишь немногих ребер (например, ребер поездов), вместо повторной
+ * факторизации можно поправлять решение по формуле Вудбери ({@link #setMaxUpdateRank}).
+ * </p>
+ * <p>Порядок использования: {@link #setTopology} &#8594 {@link #setImpedances} &#8594 {@link #solve} на каждом шаге.</p>
+ */
+public class DcMeshSolver {
+
+    private final IMatrixCsr K = new IMatrixCsr(0, true);
+    private final IMatrixCsr KT = new IMatrixCsr(0, true);
+    private final KZKTPattern pattern = new KZKTPattern();
+    private final DynamicDoubleArray KE = new DynamicDoubleArray(16);
+    private final DynamicDoubleArray KZI = new DynamicDoubleArray(16);
+    private final DMatrixRMaj rhs = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj Icc = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj J = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj dU = new DMatrixRMaj(1, 1);
+    private final IGrowArray gw = new IGrowArray();
+    private final DGrowArray gx = new DGrowArray();
+    private final DMatrixRMaj rhsBatch = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj IccBatch = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj JBatch = new DMatrixRMaj(1, 1);
+    private final DMatrixRMaj dUBatch = new DMatrixRMaj(1, 1);
+    private final DcLowRankUpdate update = new DcLowRankUpdate();
+    private final DcLoopSolver solver;
+    private ZMatrixDc Z;
+    private boolean factorized;
+    private boolean rebased;
+    private int maxUpdateRank;
+
+    /** Решатель - плотное разложение Холецкого ({@link DcDenseCholesky}). */
+    public DcMeshSolver() {
+        this(new DcDenseCholesky());
+    }
+
+    /**
+     * @param solver Решатель системы контурных уравнений, например {@link DcSparseCholesky} для схем с большим
+     *               количеством контуров или итерационный {@link DcConjugateGradient}, начинающий итерации с
+     *               контурных токов предыдущего шага (в том числе без сборки матрицы контурных сопротивлений).
+     */
+    public DcMeshSolver(@NotNull DcLoopSolver solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Построить матрицу независимых контуров для графа, назначенного <code>basis</code>.
+     * @param basis      алгоритм поиска базиса циклов с уже назначенным графом.
+     * @param traversing способ обхода графа.
+     */
+    public void setTopology(@NotNull CycleBasis<?, ?, ?> basis, @NotNull CycleBasis.Traversing traversing) {
+        basis.getCycles(K, traversing);
+        onTopologyChanged();
+    }
+
+    /**
+     * Назначить готовую матрицу независимых контуров. Матрица копируется во внутренний буфер сеанса.
+     */
+    public void setTopology(@NotNull IMatrixCsr K) {
+        K.copyTo(this.K);
+        onTopologyChanged();
+    }
+
+    /**
+     * Назначить матрицу сопротивлений. Вызывать также после каждого изменения ее элементов: матрица
+     * K&#215Z&#215K<sup>T</sup> будет вычислена и факторизована заново при следующем вызове {@link #solve}
+     * (или поправлена, см. {@link #setMaxUpdateRank}).
+     */
+    public void setImpedances(@NotNull ZMatrixDc Z) {
+        this.Z = Z;
+        factorized = false;
+    }
+
+    /**
+     * Разрешить поправку факторизации низкого ранга вместо полной факторизации.
+     * <p>
+     * При следующих вызовах {@link #solve} сопротивления сравниваются с сопротивлениями последней полной
+     * факторизации. Если изменились сопротивления не более чем <code>maxRank</code> ребер, факторизация сохраняется,
+     * а решение поправляется по формуле Вудбери: на каждое впервые изменившееся ребро выполняется один прямой и
+     * обратный ход, на каждое решение - <code>O(L&#183k)</code> операций. Иначе выполняется полная факторизация, от
+     * которой отсчитываются последующие изменения.
+     * </p>
+     * <p>
+     * Поправка не применяется с решателем без сборки матрицы ({@link DcLoopSolver#usesPattern()} возвращает
+     * <code>false</code>): он умножает на текущую Z по ссылке, а не на Z последней полной факторизации, и поправка
+     * учла бы изменение сопротивлений дважды.
+     * </p>
+     * @param maxRank Наибольшее количество ребер с измененными сопротивлениями; 0 - поправка отключена.
+     */
+    public void setMaxUpdateRank(int maxRank) {
+        if (maxRank < 0) {
+            throw new IllegalArgumentException("Отрицательный ранг поправки: " + maxRank);
+        }
+        maxUpdateRank = maxRank;
+        rebased = false;
+        factorized = false;
+    }
+
+    /** Ранг поправки к факторизации, примененной последним вызовом {@link #solve} (0 - поправки нет). */
+    public int getUpdateRank() {
+        return rebased ? update.rank() : 0;
+    }
+
+    /**
+     * Рассчитать токи в ребрах для заданных векторов ЭДС и задающих токов.
+     * @param E Вектор ЭДС.
+     * @param I Вектор задающих токов.
+     * @return вектор токов в ребрах <code>J</code>. Принадлежит сеансу и перезаписывается при следующем вызове.
+     * @throws IllegalStateException Если не вызван {@link #setImpedances}.
+     */
+    @NotNull
+    public DMatrixRMaj solve(@NotNull VectorDc E, @NotNull VectorDc I) {
+        factorize();
+        DcMatrixOps.mult(E, KT, KE);
+        DcMatrixOps.mult(I, Z, KT, KZI);
+        DcMatrixOps.add(KE, KZI, rhs);
+        solveLoops(rhs, Icc);
+        DcMatrixOps.mult(KT, Icc, J);
+        DcMatrixOps.mult(Z, J, dU);
+        return J;
+    }
+
+    /**
+     * Рассчитать токи в ребрах сразу для пакета нагрузок (например, вариантов графика движения) при неизменных
+     * топологии и сопротивлениях. Правые части <code>KE + KZI</code> всех нагрузок формируются за один проход по
+     * K<sup>T</sup>, система решается для всех столбцов одним вызовом решателя, а токи в ребрах и падения напряжений
+     * рассчитываются для всех столбцов за один проход по K<sup>T</sup> и Z.
+     * @param E Векторы ЭДС.
+     * @param I Векторы задающих токов (столько же, сколько векторов ЭДС).
+     * @return матрица токов в ребрах, столбец <code>c</code> - решение для <code>E[c], I[c]</code>. Принадлежит сеансу
+     * и перезаписывается при следующем вызове.
+     * @throws IllegalStateException Если не вызван {@link #setImpedances}.
+     */
+    @NotNull
+    public DMatrixRMaj solveBatch(@NotNull List<VectorDc> E, @NotNull List<VectorDc> I) {
+        factorize();
+        DcMatrixOps.rhs(E, I, Z, KT, rhsBatch, gw, gx);
+        solveLoops(rhsBatch, IccBatch);
+        DcMatrixOps.mult(KT, IccBatch, JBatch);
+        DcMatrixOps.mult(Z, JBatch, dUBatch);
+        return JBatch;
+    }
+
+    /** Матрица независимых контуров. */
+    @NotNull
+    public IMatrixCsr getK() {
+        return K;
+    }
+
+    /** Транспонированная матрица независимых контуров. */
+    @NotNull
+    public IMatrixCsr getKT() {
+        return KT;
+    }
+
+    /** Контурные токи, рассчитанные последним вызовом {@link #solve}. */
+    @NotNull
+    public DMatrixRMaj getIcc() {
+        return Icc;
+    }
+
+    /** Токи в ребрах, рассчитанные последним вызовом {@link #solve}. */
+    @NotNull
+    public DMatrixRMaj getJ() {
+        return J;
+    }
+
+    /** Падения напряжений на ребрах, рассчитанные последним вызовом {@link #solve}. */
+    @NotNull
+    public DMatrixRMaj getDU() {
+        return dU;
+    }
+
+    /** Контурные токи пакета нагрузок, рассчитанные последним вызовом {@link #solveBatch}. */
+    @NotNull
+    public DMatrixRMaj getIccBatch() {
+        return IccBatch;
+    }
+
+    /** Падения напряжений на ребрах для пакета нагрузок, рассчитанные последним вызовом {@link #solveBatch}. */
+    @NotNull
+    public DMatrixRMaj getDUBatch() {
+        return dUBatch;
+    }
+
+    private void onTopologyChanged() {
+        DcMatrixOps.transpose(K, KT);
+        solver.setTopology(K, KT);
+        if (solver.usesPattern()) {
+            pattern.symbolicDc(K, KT);
+            solver.setPattern(pattern);
+        }
+        rebased = false;
+        factorized = false;
+    }
+
+    private void factorize() {
+        if (Z == null) {
+            throw new IllegalStateException(
+                    "Матрица сопротивлений не назначена: вызовите DcMeshSolver.setImpedances()"
+            );
+        }
+        if (!factorized) {
+            if (!rebased || !update.update(Z, KT, solver)) {
+                if (!solver.setImpedances(Z)) {
+                    throw new IllegalStateException("Матрица контурных сопротивлений не является положительно определенной");
+                }
+                rebased = maxUpdateRank > 0 && solver.usesPattern();
+                if (rebased) {
+                    update.rebase(Z, K.numRows(), maxUpdateRank);
+                }
+            }
+            factorized = true;
+        }
+    }
+
+    private void solveLoops(DMatrixRMaj B, DMatrixRMaj X) {
+        solver.solve(B, X);
+        if (rebased) {
+            update.correct(X, KT);
+        }
+    }
+}
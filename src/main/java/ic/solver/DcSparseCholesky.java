@@ -0,0 +1,243 @@
+package ic.solver;
+
+import ic.matrix.KZKTPattern;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DGrowArray;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.sparse.ComputePermutation;
+import org.ejml.sparse.csc.decomposition.chol.CholeskyUpLooking_DSCC;
+import org.ejml.sparse.csc.misc.TriangularSolver_DSCC;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.vniizht.asuterkortes.counter.latticemodel.DynamicIntArray;
+
+import java.util.Arrays;
+
+/**
+ * Разреженное разложение Холецкого матрицы контурных сопротивлений с кэшированием символьного анализа.
+ * <p>
+ * При назначении портрета ({@link #setPattern}) однократно вычисляются упорядочение, уменьшающее заполнение,
+ * переставленный портрет и символьное разложение (дерево исключения, количество элементов в столбцах L).
+ * Карта рассеяния {@link KZKTPattern} пересчитывается так, что числовая фаза сразу пишет значения в переставленную
+ * матрицу. На каждом шаге выполняется только числовое разложение.
+ * </p>
+ */
+public class DcSparseCholesky implements DcLoopSolver {
+
+    @Nullable
+    private final ComputePermutation<DMatrixSparseCSC> ordering;
+    private final CholeskyUpLooking_DSCC cholesky = new CholeskyUpLooking_DSCC();
+    private final DMatrixSparseCSC A = new DMatrixSparseCSC(1, 1, 1);
+    private final DynamicIntArray slots = new DynamicIntArray(16);
+    private final DGrowArray gx = new DGrowArray();
+    private KZKTPattern pattern;
+    private int[] perm = new int[0];
+    private int[] pinv = new int[0];
+    private int[] tmp = new int[0];
+
+    /** Упорядочение по минимальной степени ({@link MinimumDegreeOrdering}). */
+    public DcSparseCholesky() {
+        this(new MinimumDegreeOrdering());
+    }
+
+    /**
+     * @param ordering Алгоритм упорядочения (используется только перестановка строк). Если <code>null</code>,
+     *                 матрица не переставляется.
+     */
+    public DcSparseCholesky(@Nullable ComputePermutation<DMatrixSparseCSC> ordering) {
+        this.ordering = ordering;
+    }
+
+    @Override
+    public void setPattern(@NotNull KZKTPattern pattern) {
+        this.pattern = pattern;
+        int n = pattern.size();
+        int nz = pattern.nzCnt();
+        A.reshape(n, n, nz);
+        System.arraycopy(pattern.rows.getData(), 0, A.col_idx, 0, n + 1);
+        System.arraycopy(pattern.cols.getData(), 0, A.nz_rows, 0, nz);
+        A.nz_length = nz;
+        if (perm.length < n) {
+            perm = new int[n];
+        }
+        if (ordering != null) {
+            ordering.process(A);
+            System.arraycopy(ordering.getRow().data, 0, perm, 0, n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                perm[i] = i;
+            }
+        }
+        permuteStructure(n, nz);
+        cholesky.setStructureLocked(false);
+        cholesky.performSymbolic(A);
+        cholesky.setStructureLocked(true);
+    }
+
+    @Override
+    public boolean setImpedances(@NotNull ZMatrixDc Z) {
+        double[] values = A.nz_values;
+        Arrays.fill(values, 0, pattern.nzCnt(), 0);
+        int[] s = slots.getData();
+        int[] zIdx = pattern.zIdx.getData();
+        int[] coefs = pattern.coefs.getData();
+        double[] z = Z.data;
+        for (int t = 0; t < pattern.contributionsCnt(); t++) {
+            values[s[t]] += coefs[t] * z[zIdx[t]];
+        }
+        return cholesky.decompose(A);
+    }
+
+    @Override
+    public void solve(@NotNull DMatrixRMaj B, @NotNull DMatrixRMaj X) {
+        int n = pattern.size();
+        int m = B.numCols;
+        if (m > 1) {
+            solveBlock(B, X, n, m);
+            return;
+        }
+        X.reshape(n, 1);
+        double[] x = gx.reshape(n).data;
+        DMatrixSparseCSC L = cholesky.getL();
+        for (int k = 0; k < n; k++) {
+            x[k] = B.data[perm[k]];
+        }
+        TriangularSolver_DSCC.solveL(L, x);
+        TriangularSolver_DSCC.solveTranL(L, x);
+        for (int k = 0; k < n; k++) {
+            X.data[perm[k]] = x[k];
+        }
+    }
+
+    /**
+     * Прямой и обратный ход сразу для <code>m</code> правых частей: каждый столбец L читается один раз на ход,
+     * а строки рабочей матрицы (по одной на неизвестное) непрерывны.
+     */
+    private void solveBlock(DMatrixRMaj B, DMatrixRMaj X, int n, int m) {
+        double[] x = gx.reshape(n * m).data;
+        for (int k = 0; k < n; k++) {
+            System.arraycopy(B.data, perm[k] * m, x, k * m, m);
+        }
+        DMatrixSparseCSC L = cholesky.getL();
+        int[] colIdx = L.col_idx;
+        int[] rows = L.nz_rows;
+        double[] values = L.nz_values;
+        /* Диагональный элемент - первый в столбце L. */
+        for (int j = 0; j < n; j++) {
+            int xj = j * m;
+            double inv = 1 / values[colIdx[j]];
+            for (int c = 0; c < m; c++) {
+                x[xj + c] *= inv;
+            }
+            for (int p = colIdx[j] + 1; p < colIdx[j + 1]; p++) {
+                int xi = rows[p] * m;
+                double l = values[p];
+                for (int c = 0; c < m; c++) {
+                    x[xi + c] -= l * x[xj + c];
+                }
+            }
+        }
+        for (int j = n - 1; j >= 0; j--) {
+            int xj = j * m;
+            for (int p = colIdx[j] + 1; p < colIdx[j + 1]; p++) {
+                int xi = rows[p] * m;
+                double l = values[p];
+                for (int c = 0; c < m; c++) {
+                    x[xj + c] -= l * x[xi + c];
+                }
+            }
+            double inv = 1 / values[colIdx[j]];
+            for (int c = 0; c < m; c++) {
+                x[xj + c] *= inv;
+            }
+        }
+        X.reshape(n, m);
+        for (int k = 0; k < n; k++) {
+            System.arraycopy(x, k * m, X.data, perm[k] * m, m);
+        }
+    }
+
+    /** Количество ненулевых элементов множителя L (характеризует заполнение). */
+    public int nzCntL() {
+        return cholesky.getL().nz_length;
+    }
+
+    /**
+     * Оценка трудоемкости числового разложения - сумма квадратов количеств элементов в столбцах L.
+     * Известна сразу после {@link #setPattern}.
+     */
+    public long factorFlops() {
+        DMatrixSparseCSC L = cholesky.getL();
+        long res = 0;
+        for (int j = 0; j < L.numCols; j++) {
+            long cnt = L.col_idx[j + 1] - L.col_idx[j];
+            res += cnt * cnt;
+        }
+        return res;
+    }
+
+    /**
+     * Переставить портрет (A'[k, l] = A[perm[k], perm[l]]), сохранив форму верхнего треугольника и упорядоченность
+     * индексов строк в столбцах, и пересчитать номера элементов в карте рассеяния.
+     */
+    private void permuteStructure(int n, int nz) {
+        if (tmp.length < 5 * nz + 2 * n + 2) {
+            tmp = new int[5 * nz + 2 * n + 2];
+        }
+        if (pinv.length < n) {
+            pinv = new int[n];
+        }
+        for (int k = 0; k < n; k++) {
+            pinv[perm[k]] = k;
+        }
+        /* Новые координаты всех элементов портрета. */
+        int newRowsOff = 0;
+        int newColsOff = nz;
+        int byRowOff = 2 * nz;
+        int newSlotOff = 3 * nz;
+        int rowStartOff = 4 * nz;
+        int colStartOff = 4 * nz + n + 1;
+        Arrays.fill(tmp, rowStartOff, rowStartOff + 2 * n + 2, 0);
+        int[] rows = pattern.rows.getData();
+        int[] cols = pattern.cols.getData();
+        for (int i = 0; i < n; i++) {
+            for (int k = rows[i]; k < rows[i + 1]; k++) {
+                int r = pinv[cols[k]];
+                int c = pinv[i];
+                if (r > c) {
+                    int t = r;
+                    r = c;
+                    c = t;
+                }
+                tmp[newRowsOff + k] = r;
+                tmp[newColsOff + k] = c;
+                tmp[rowStartOff + r + 1]++;
+                tmp[colStartOff + c + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            tmp[rowStartOff + i + 1] += tmp[rowStartOff + i];
+            tmp[colStartOff + i + 1] += tmp[colStartOff + i];
+        }
+        System.arraycopy(tmp, colStartOff, A.col_idx, 0, n + 1);
+        /* Корзинная сортировка по строкам, затем раскладка по столбцам: строки в столбцах окажутся упорядочены. */
+        for (int k = 0; k < nz; k++) {
+            tmp[byRowOff + tmp[rowStartOff + tmp[newRowsOff + k]]++] = k;
+        }
+        for (int q = 0; q < nz; q++) {
+            int k = tmp[byRowOff + q];
+            int pos = tmp[colStartOff + tmp[newColsOff + k]]++;
+            A.nz_rows[pos] = tmp[newRowsOff + k];
+            tmp[newSlotOff + k] = pos;
+        }
+        A.indicesSorted = true;
+        int cnt = pattern.contributionsCnt();
+        slots.setSize(cnt);
+        int[] src = pattern.slots.getData();
+        int[] dst = slots.getData();
+        for (int t = 0; t < cnt; t++) {
+            dst[t] = tmp[newSlotOff + src[t]];
+        }
+    }
+}
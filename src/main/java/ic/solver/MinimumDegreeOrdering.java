@@ -0,0 +1,212 @@
+package ic.solver;
+
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.sparse.ComputePermutation;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Упорядочение по минимальной степени для симметричных матриц - предшественник AMD, которого нет в EJML 0.43.
+ * <p>
+ * Граф исключения хранится явно (упорядоченные списки смежности), на каждом шаге исключается вершина наименьшей
+ * степени, а ее соседи образуют клику. При равных степенях выбирается вершина с меньшим индексом, так что результат
+ * детерминирован. Вычисляется однократно для портрета матрицы, поэтому простота предпочтена скорости.
+ * </p>
+ * <p>
+ * Результат: <code>getRow().data[k]</code> - исходный индекс <code>k</code>-й исключаемой строки (столбца).
+ * Используется как верхний или полный портрет матрицы, значения элементов не важны.
+ * </p>
+ */
+public class MinimumDegreeOrdering extends ComputePermutation<DMatrixSparseCSC> {
+
+    private int[][] adj = new int[0][];
+    private int[] deg = new int[0];
+    private int[] buf = new int[16];
+    private final IndexedMinHeap heap = new IndexedMinHeap();
+
+    public MinimumDegreeOrdering() {
+        super(true, false);
+    }
+
+    @Override
+    public void process(@NotNull DMatrixSparseCSC m) {
+        int n = m.numCols;
+        buildGraph(m);
+        prow.reshape(n);
+        int[] perm = prow.data;
+        heap.init(deg, n);
+        for (int k = 0; k < n; k++) {
+            int v = heap.pop();
+            perm[k] = v;
+            int[] nbrs = adj[v];
+            int cnt = deg[v];
+            for (int i = 0; i < cnt; i++) {
+                int u = nbrs[i];
+                eliminate(u, v, nbrs, cnt);
+                heap.update(u);
+            }
+            adj[v] = null;
+        }
+    }
+
+    /** Исключить <code>v</code> из списка смежности <code>u</code> и добавить в него остальных соседей <code>v</code>. */
+    private void eliminate(int u, int v, int[] nbrs, int cnt) {
+        int[] a = adj[u];
+        int na = deg[u];
+        if (buf.length < na + cnt) {
+            buf = new int[Math.max(2 * buf.length, na + cnt)];
+        }
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < na || j < cnt) {
+            int x;
+            if (j >= cnt || (i < na && a[i] < nbrs[j])) {
+                x = a[i++];
+            } else if (i >= na || nbrs[j] < a[i]) {
+                x = nbrs[j++];
+            } else {
+                x = a[i++];
+                j++;
+            }
+            if (x != u && x != v) {
+                buf[size++] = x;
+            }
+        }
+        if (a.length < size) {
+            a = new int[Math.max(2 * a.length, size)];
+            adj[u] = a;
+        }
+        System.arraycopy(buf, 0, a, 0, size);
+        deg[u] = size;
+    }
+
+    private void buildGraph(DMatrixSparseCSC m) {
+        int n = m.numCols;
+        if (deg.length < n) {
+            deg = new int[n];
+            adj = new int[n][];
+        }
+        Arrays.fill(deg, 0, n, 0);
+        for (int c = 0; c < n; c++) {
+            for (int k = m.col_idx[c]; k < m.col_idx[c + 1]; k++) {
+                int r = m.nz_rows[k];
+                if (r != c) {
+                    deg[r]++;
+                    deg[c]++;
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            adj[v] = new int[Math.max(deg[v], 4)];
+            deg[v] = 0;
+        }
+        for (int c = 0; c < n; c++) {
+            for (int k = m.col_idx[c]; k < m.col_idx[c + 1]; k++) {
+                int r = m.nz_rows[k];
+                if (r != c) {
+                    adj[r][deg[r]++] = c;
+                    adj[c][deg[c]++] = r;
+                }
+            }
+        }
+        /* Упорядочить списки и убрать дубликаты (портрет может быть полным, а не только верхним). */
+        for (int v = 0; v < n; v++) {
+            int[] a = adj[v];
+            Arrays.sort(a, 0, deg[v]);
+            int size = 0;
+            for (int i = 0; i < deg[v]; i++) {
+                if (size == 0 || a[size - 1] != a[i]) {
+                    a[size++] = a[i];
+                }
+            }
+            deg[v] = size;
+        }
+    }
+
+    /** Двоичная куча индексов вершин, упорядоченная по (степень, индекс). */
+    private static class IndexedMinHeap {
+
+        private int[] heap = new int[0];
+        private int[] pos = new int[0];
+        private int[] keys;
+        private int size;
+
+        void init(int[] keys, int n) {
+            this.keys = keys;
+            if (heap.length < n) {
+                heap = new int[n];
+                pos = new int[n];
+            }
+            size = n;
+            for (int i = 0; i < n; i++) {
+                heap[i] = i;
+                pos[i] = i;
+            }
+            for (int i = n / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        int pop() {
+            int top = heap[0];
+            pos[top] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                pos[heap[0]] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        void update(int v) {
+            int i = pos[v];
+            if (i >= 0) {
+                siftUp(i);
+                siftDown(pos[v]);
+            }
+        }
+
+        private boolean less(int a, int b) {
+            return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+        }
+
+        private void siftUp(int i) {
+            int v = heap[i];
+            while (i > 0) {
+                int p = (i - 1) / 2;
+                if (!less(v, heap[p])) {
+                    break;
+                }
+                heap[i] = heap[p];
+                pos[heap[i]] = i;
+                i = p;
+            }
+            heap[i] = v;
+            pos[v] = i;
+        }
+
+        private void siftDown(int i) {
+            int v = heap[i];
+            while (true) {
+                int c = 2 * i + 1;
+                if (c >= size) {
+                    break;
+                }
+                if (c + 1 < size && less(heap[c + 1], heap[c])) {
+                    c++;
+                }
+                if (!less(heap[c], v)) {
+                    break;
+                }
+                heap[i] = heap[c];
+                pos[heap[i]] = i;
+                i = c;
+            }
+            heap[i] = v;
+            pos[v] = i;
+        }
+    }
+}
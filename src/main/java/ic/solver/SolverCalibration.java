@@ -0,0 +1,205 @@
+package ic.solver;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.ejml.sparse.csc.decomposition.chol.CholeskyUpLooking_DSCC;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Калибровка модели стоимости плотного и разреженного разложения Холецкого на текущей машине.
+ * <p>
+ * Модель: плотное разложение стоит <code>denseNsPerFlop&#183n<sup>3</sup>/3</code> нс, разреженное -
+ * <code>sparseNsPerFlop&#183flops + sparseNsPerColumn&#183n</code> нс, где <code>flops</code> - сумма квадратов
+ * количеств элементов в столбцах множителя L (известна после символьного анализа). Коэффициенты определяются
+ * микробенчмарком на ленточных матрицах ({@link #measure()}, десятые доли секунды) либо задаются явно.
+ * </p>
+ * <p>
+ * Калибровка не выполняется неявно: приложение измеряет ее один раз ({@link #measure()}) или читает из своего файла
+ * ({@link #loadOrMeasure}) и передает решателям ({@link DcAdaptiveSolver}).
+ * </p>
+ */
+public class SolverCalibration {
+
+    private static final int VERSION = 1;
+    private static final int BENCHMARK_SIZE = 240;
+    private static final long BENCHMARK_BUDGET_NS = 40_000_000L;
+
+    private final double denseNsPerFlop;
+    private final double sparseNsPerFlop;
+    private final double sparseNsPerColumn;
+
+    public SolverCalibration(double denseNsPerFlop, double sparseNsPerFlop, double sparseNsPerColumn) {
+        this.denseNsPerFlop = denseNsPerFlop;
+        this.sparseNsPerFlop = sparseNsPerFlop;
+        this.sparseNsPerColumn = sparseNsPerColumn;
+    }
+
+    /**
+     * Прочитать калибровку из файла. Если файла нет или он устарел, выполнить бенчмарк и сохранить результат. Ошибки
+     * чтения и записи файла не фатальны: в худшем случае калибровка будет выполнена повторно.
+     */
+    @NotNull
+    public static SolverCalibration loadOrMeasure(@NotNull Path file) {
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                Properties p = new Properties();
+                p.load(in);
+                if (Integer.parseInt(p.getProperty("version", "0")) == VERSION) {
+                    return new SolverCalibration(
+                            Double.parseDouble(p.getProperty("dense.nsPerFlop")),
+                            Double.parseDouble(p.getProperty("sparse.nsPerFlop")),
+                            Double.parseDouble(p.getProperty("sparse.nsPerColumn"))
+                    );
+                }
+            } catch (IOException | RuntimeException ignored) {
+                /* Поврежденный файл перезаписывается новой калибровкой. */
+            }
+        }
+        SolverCalibration res = measure();
+        try {
+            res.store(file);
+        } catch (IOException ignored) {
+            /* Калибровка останется действительной до конца работы процесса. */
+        }
+        return res;
+    }
+
+    /** Выполнить микробенчмарк плотного и разреженного разложения. */
+    @NotNull
+    public static SolverCalibration measure() {
+        int n = BENCHMARK_SIZE;
+        double denseNs = measureDense(n, 8);
+        double narrowNs = measureSparse(n, 2);
+        double wideNs = measureSparse(n, 24);
+        double narrowFlops = bandFlops(n, 2);
+        double wideFlops = bandFlops(n, 24);
+        /* Две точки - два неизвестных: время = nsPerFlop * flops + nsPerColumn * n. */
+        double nsPerFlop = Math.max((wideNs - narrowNs) / (wideFlops - narrowFlops), 1e-3);
+        double nsPerColumn = Math.max((narrowNs - nsPerFlop * narrowFlops) / n, 0);
+        return new SolverCalibration(denseNs / denseFlops(n), nsPerFlop, nsPerColumn);
+    }
+
+    /** Сохранить калибровку в файл, создав при необходимости родительский каталог. */
+    public void store(@NotNull Path file) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("version", Integer.toString(VERSION));
+        p.setProperty("dense.nsPerFlop", Double.toString(denseNsPerFlop));
+        p.setProperty("sparse.nsPerFlop", Double.toString(sparseNsPerFlop));
+        p.setProperty("sparse.nsPerColumn", Double.toString(sparseNsPerColumn));
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            p.store(out, "Dense vs sparse Cholesky cost model");
+        }
+    }
+
+    /** Прогноз времени плотного разложения матрицы порядка <code>n</code>, нс. */
+    public double denseCostNs(int n) {
+        return denseNsPerFlop * denseFlops(n);
+    }
+
+    /**
+     * Прогноз времени разреженного разложения, нс.
+     * @param n     порядок матрицы.
+     * @param flops сумма квадратов количеств элементов в столбцах множителя L.
+     */
+    public double sparseCostNs(int n, long flops) {
+        return sparseNsPerFlop * flops + sparseNsPerColumn * n;
+    }
+
+    /** Выгоднее ли разреженное разложение, чем плотное. */
+    public boolean preferSparse(int n, long flops) {
+        return sparseCostNs(n, flops) < denseCostNs(n);
+    }
+
+    public double getDenseNsPerFlop() {
+        return denseNsPerFlop;
+    }
+
+    public double getSparseNsPerFlop() {
+        return sparseNsPerFlop;
+    }
+
+    public double getSparseNsPerColumn() {
+        return sparseNsPerColumn;
+    }
+
+    private static double denseFlops(int n) {
+        return (double) n * n * n / 3;
+    }
+
+    /** Ленточная матрица не дает заполнения: в каждом столбце L не более <code>w + 1</code> элементов. */
+    private static double bandFlops(int n, int w) {
+        double res = 0;
+        for (int j = 0; j < n; j++) {
+            double cnt = Math.min(w, n - 1 - j) + 1;
+            res += cnt * cnt;
+        }
+        return res;
+    }
+
+    private static double measureDense(int n, int w) {
+        DMatrixRMaj A = new DMatrixRMaj(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = Math.max(0, i - w); j <= Math.min(n - 1, i + w); j++) {
+                A.set(i, j, i == j ? 2 * w + 1 : -0.5);
+            }
+        }
+        /* Разложение выполняется на месте: каждый замер - на свежей копии исходной матрицы. */
+        DMatrixRMaj work = new DMatrixRMaj(n, n);
+        LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.chol(n);
+        return timeNs(() -> work.setTo(A), () -> solver.setA(work));
+    }
+
+    private static double measureSparse(int n, int w) {
+        /* Верхний треугольник по столбцам, как его читает CholeskyUpLooking_DSCC. */
+        DMatrixSparseCSC A = new DMatrixSparseCSC(n, n, n * (w + 1));
+        int nz = 0;
+        for (int j = 0; j < n; j++) {
+            A.col_idx[j] = nz;
+            for (int i = Math.max(0, j - w); i <= j; i++) {
+                A.nz_rows[nz] = i;
+                A.nz_values[nz++] = i == j ? 2 * w + 1 : -0.5;
+            }
+        }
+        A.col_idx[n] = nz;
+        A.nz_length = nz;
+        A.indicesSorted = true;
+        CholeskyUpLooking_DSCC cholesky = new CholeskyUpLooking_DSCC();
+        cholesky.setStructureLocked(true);
+        return timeNs(() -> { }, () -> cholesky.decompose(A));
+    }
+
+    /**
+     * Среднее время выполнения <code>action</code> после прогрева, нс. Перед каждым выполнением вызывается
+     * <code>prepare</code>, его время не учитывается.
+     */
+    private static double timeNs(Runnable prepare, Runnable action) {
+        for (int i = 0; i < 20; i++) {
+            prepare.run();
+            action.run();
+        }
+        int cnt = 0;
+        long elapsed = 0;
+        long t0 = System.nanoTime();
+        do {
+            prepare.run();
+            long t = System.nanoTime();
+            action.run();
+            elapsed += System.nanoTime() - t;
+            cnt++;
+        } while (System.nanoTime() - t0 < BENCHMARK_BUDGET_NS);
+        return (double) elapsed / cnt;
+    }
+}
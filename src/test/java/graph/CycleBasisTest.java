@@ -1,21 +1,31 @@
 package graph;
 
 import graph.data.SchemaGraphTestDataProvider;
+import ic.matrix.DcMatrixOps;
 import ic.matrix.IMatrixCsr;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
 import org.jgrapht.Graph;
 import org.jgrapht.graph.TestEdge;
 import org.jgrapht.graph.TestVertex;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -47,6 +57,316 @@ class CycleBasisTest {
         assertCyclesEqual(refCycles, cycles);
     }
 
+    /**
+     * Поезда делят ребра решетки и присоединяются к случайным вершинам (хорды), часть присоединений снимается.
+     * После каждого шага исправленные на месте K и K<sup>T</sup> должны оставаться базисом циклов.
+     */
+    @Test
+    void incremental() {
+        SchemaGraph<TestVertex, TestEdge> g = td.grid(20, 20);
+        SchemaGraphCycleBasis<TestVertex, TestEdge> b = new SchemaGraphCycleBasis<>(g);
+        IMatrixCsr K = b.getCycles(null, traversing);
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        List<ICircuitEdge> edges = new ArrayList<>(g.getEdges());
+        List<ICircuitNode> vertices = new ArrayList<>(g.getVertices());
+        Random rnd = new Random(1);
+        int removed = 0;
+        assertBasis(K, KT, edges, vertices.size(), edges.size() - vertices.size() + 1);
+        for (int train = 0; train < 60; train++) {
+            ICircuitEdge e = edges.get(rnd.nextInt(edges.size()));
+            ICircuitNode w = new TestVertex(vertices.size(), 1);
+            vertices.add(w);
+            ICircuitEdge added = edge(w, e.getTargetNode(), edges);
+            e.setTargetNode(w);
+            b.splitEdge(e, added, K, KT);
+            int loops = K.numRows();
+            ICircuitEdge feeder = edge(w, vertices.get(rnd.nextInt(vertices.size() - 1)), edges);
+            assertTrue(b.addEdge(feeder, K, KT));
+            assertEquals(loops + 1, K.numRows());
+            if (train % 3 == 0) {
+                b.removeEdge(feeder, K, KT);
+                removed++;
+            }
+            if (train % 10 == 0) {
+                ICircuitNode isolated = new TestVertex(vertices.size(), 1);
+                vertices.add(isolated);
+                assertFalse(b.addEdge(edge(isolated, w, edges), K, KT));
+                assertThrows(IllegalArgumentException.class, () -> b.removeEdge(added, K, KT));
+            }
+            assertBasis(K, KT, edges, vertices.size(), edges.size() - removed - vertices.size() + 1);
+        }
+
+        SchemaGraph<TestVertex, TestEdge> fresh = td.grid(20, 20);
+        SchemaGraphCycleBasis<TestVertex, TestEdge> fb = new SchemaGraphCycleBasis<>(fresh);
+        IMatrixCsr[] full = {null, null};
+        measureTimeMs("getCycles + transpose", 2000, () -> {
+            full[0] = fb.getCycles(full[0], traversing);
+            full[1] = DcMatrixOps.transpose(full[0], full[1]);
+        });
+        full[0] = fb.getCycles(full[0], traversing);
+        full[1] = DcMatrixOps.transpose(full[0], full[1]);
+        List<ICircuitEdge> freshEdges = new ArrayList<>(fresh.getEdges());
+        List<ICircuitNode> freshVertices = fresh.getVertices().stream().map(v -> (ICircuitNode) v).toList();
+        measureTimeMs("addEdge + removeEdge", 2000, () -> {
+            ICircuitEdge feeder = edge(freshVertices.get(0), freshVertices.get(freshVertices.size() - 1), freshEdges);
+            fb.addEdge(feeder, full[0], full[1]);
+            fb.removeEdge(feeder, full[0], full[1]);
+        });
+    }
+
+    /**
+     * Хорда от вершины к ее потомку в остове: путь от второго конца хорды возвращается в корень, и путь от корня к
+     * корню остова в контур не входит.
+     */
+    @Test
+    void addEdgeToDescendant() {
+        SchemaGraph<TestVertex, TestEdge> g = td.grid(1, 4);
+        SchemaGraphCycleBasis<TestVertex, TestEdge> b = new SchemaGraphCycleBasis<>(g);
+        IMatrixCsr K = b.getCycles(null, traversing);
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        List<ICircuitEdge> edges = new ArrayList<>(g.getEdges());
+        List<ICircuitNode> vertices = new ArrayList<>(g.getVertices());
+        assertTrue(b.addEdge(edge(vertices.get(1), vertices.get(3), edges), K, KT));
+        assertBasis(K, KT, edges, vertices.size(), 1);
+        assertEquals(3, K.nzCnt());
+    }
+
+    @ParameterizedTest
+    @MethodSource("hortonTestData")
+    void horton(SchemaGraph<TestVertex, TestEdge> graph) {
+        HortonCycleBasis<TestVertex, TestEdge> horton = new HortonCycleBasis<>(graph);
+        SchemaGraphCycleBasis<TestVertex, TestEdge> fundamental = new SchemaGraphCycleBasis<>(graph);
+        IMatrixCsr[] res = {null, null};
+        measureTimeMs("fundamental", 20, () -> res[0] = fundamental.getCycles(res[0], traversing));
+        measureTimeMs("horton", 20, () -> res[1] = horton.getCycles(res[1], traversing));
+        System.out.printf("nnz: %d -> %d\n", res[0].nzCnt(), res[1].nzCnt());
+        List<ICircuitEdge> edges = new ArrayList<>(graph.getEdges());
+        assertBasis(res[1], DcMatrixOps.transpose(res[1], null), edges, graph.getVertices().size(), res[0].numRows());
+        assertTrue(res[1].nzCnt() <= res[0].nzCnt());
+    }
+
+    @ParameterizedTest
+    @MethodSource("hortonTestData")
+    void pseudoCenterRoot(SchemaGraph<TestVertex, TestEdge> graph) {
+        List<ICircuitEdge> edges = new ArrayList<>(graph.getEdges());
+        for (CycleBasis.Traversing t : CycleBasis.Traversing.values()) {
+            SchemaGraphCycleBasis<TestVertex, TestEdge> b = new SchemaGraphCycleBasis<>(graph);
+            IMatrixCsr first = b.getCycles(null, t);
+            b.setRoot(SchemaGraphCycleBasis.Root.PSEUDO_CENTER);
+            IMatrixCsr[] center = {null};
+            measureTimeMs("pseudo center", 20, () -> center[0] = b.getCycles(center[0], t));
+            System.out.printf("%s nnz: first vertex %d, pseudo center %d\n", t, first.nzCnt(), center[0].nzCnt());
+            assertBasis(center[0], DcMatrixOps.transpose(center[0], null), edges, graph.getVertices().size(),
+                        first.numRows());
+        }
+    }
+
+    /** На решетке корень в первой вершине - угол, псевдоцентр - середина: контуры в среднем короче. */
+    @Test
+    void pseudoCenterRootShortensGridLoops() {
+        SchemaGraph<TestVertex, TestEdge> g = td.grid(30, 30);
+        for (CycleBasis.Traversing t : CycleBasis.Traversing.values()) {
+            SchemaGraphCycleBasis<TestVertex, TestEdge> b = new SchemaGraphCycleBasis<>(g);
+            int first = b.getCycles(null, t).nzCnt();
+            b.setRoot(SchemaGraphCycleBasis.Root.PSEUDO_CENTER);
+            int center = b.getCycles(null, t).nzCnt();
+            System.out.printf("%s nnz: first vertex %d, pseudo center %d\n", t, first, center);
+            assertTrue(center < first);
+        }
+    }
+
+    /**
+     * Параллельное построение по компонентам связности побитово совпадает с последовательным, в том числе после
+     * инкрементальных операций.
+     */
+    @Test
+    void parallelComponents() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<SchemaGraph<TestVertex, TestEdge>> graphs = List.of(td.disjointGrids(13, 8, 8), td.g7(), td.grid(15, 15));
+        for (SchemaGraph<TestVertex, TestEdge> g : graphs) {
+            for (SchemaGraphCycleBasis.Root root : SchemaGraphCycleBasis.Root.values()) {
+                for (CycleBasis.Traversing t : CycleBasis.Traversing.values()) {
+                    SchemaGraphCycleBasis<TestVertex, TestEdge> seq = new SchemaGraphCycleBasis<>(g);
+                    SchemaGraphCycleBasis<TestVertex, TestEdge> par = new SchemaGraphCycleBasis<>(g);
+                    seq.setRoot(root);
+                    par.setRoot(root);
+                    IMatrixCsr seqK = seq.getCycles(null, t);
+                    IMatrixCsr parK = par.getCycles(new IMatrixCsr(0, true), t, pool);
+                    assertSameMatrix(seqK, parK);
+                    IMatrixCsr seqKT = DcMatrixOps.transpose(seqK, null);
+                    IMatrixCsr parKT = DcMatrixOps.transpose(parK, null);
+                    List<ICircuitEdge> seqEdges = new ArrayList<>(g.getEdges());
+                    List<ICircuitEdge> parEdges = new ArrayList<>(g.getEdges());
+                    int last = g.getVertices().size() - 1;
+                    /* Первое ребро может объединить компоненты, второе (параллельное ему) - всегда хорда. */
+                    for (int k = 0; k < 2; k++) {
+                        seq.addEdge(edge(g.getVertices().get(0), g.getVertices().get(last), seqEdges), seqK, seqKT);
+                        par.addEdge(edge(g.getVertices().get(0), g.getVertices().get(last), parEdges), parK, parKT);
+                    }
+                    seq.removeEdge(seqEdges.get(seqEdges.size() - 1), seqK, seqKT);
+                    par.removeEdge(parEdges.get(parEdges.size() - 1), parK, parKT);
+                    assertSameMatrix(seqK, parK);
+                    assertSameMatrix(seqKT, parKT);
+                    assertBasis(parK, parKT, parEdges, g.getVertices().size(), seqK.numRows());
+                }
+            }
+        }
+        SchemaGraph<TestVertex, TestEdge> g = td.disjointGrids(16, 40, 40);
+        SchemaGraphCycleBasis<TestVertex, TestEdge> b = new SchemaGraphCycleBasis<>(g);
+        IMatrixCsr[] res = {null};
+        measureTimeMs("sequential", 200, () -> res[0] = b.getCycles(res[0], traversing));
+        measureTimeMs("parallel", 200, () -> res[0] = b.getCycles(res[0], traversing, pool));
+        pool.shutdown();
+    }
+
+    @ParameterizedTest
+    @MethodSource("hortonTestData")
+    void planarFaces(SchemaGraph<TestVertex, TestEdge> graph) {
+        PlanarCycleBasis<TestVertex, TestEdge> planar = new PlanarCycleBasis<>(graph);
+        IMatrixCsr fundamentalK = new SchemaGraphCycleBasis<>(graph).getCycles(null, traversing);
+        IMatrixCsr[] K = {null};
+        measureTimeMs("planar", 20, () -> K[0] = planar.getCycles(K[0], traversing));
+        System.out.printf("nnz: fundamental %d, planar %d (%s)\n", fundamentalK.nzCnt(), K[0].nzCnt(),
+                          planar.isPlanar() ? "faces" : "fundamental");
+        List<ICircuitEdge> edges = new ArrayList<>(graph.getEdges());
+        assertBasis(K[0], DcMatrixOps.transpose(K[0], null), edges, graph.getVertices().size(), fundamentalK.numRows());
+    }
+
+    /** Укладка двухпутного участка не обязательно естественная, но после укорачивания контуры - ячейки между перемычками. */
+    @Test
+    void planarDoubleTrack() {
+        IMatrixCsr K = new PlanarCycleBasis<>(td.doubleTrack(200, 10)).getCycles(null, traversing);
+        assertEquals(20, K.numRows());
+        assertEquals(20 * 22, K.nzCnt());
+    }
+
+    @Test
+    void planarGridAndParallelEdges() {
+        SchemaGraph<TestVertex, TestEdge> g = td.grid(30, 30);
+        List<TestVertex> v = g.getVertices();
+        g.addEdge(v.get(1), v.get(0), new TestEdge());
+        g.addEdge(v.get(0), v.get(1), new TestEdge());
+        IMatrixCsr K = new PlanarCycleBasis<>(g).getCycles(null, traversing);
+        assertEquals(29 * 29 + 2, K.numRows());
+        assertEquals(4 * 29 * 29 + 2 * 2, K.nzCnt());
+        assertBasis(K, DcMatrixOps.transpose(K, null), new ArrayList<>(g.getEdges()), v.size(), 29 * 29 + 2);
+    }
+
+    @Test
+    void planarGridShorterThanFundamental() {
+        SchemaGraph<TestVertex, TestEdge> g = td.grid(30, 30);
+        IMatrixCsr fundamentalK = new SchemaGraphCycleBasis<>(g).getCycles(null, traversing);
+        IMatrixCsr K = new PlanarCycleBasis<>(g).getCycles(null, traversing);
+        System.out.printf("nnz: fundamental %d, planar %d\n", fundamentalK.nzCnt(), K.nzCnt());
+        assertTrue(K.nzCnt() <= fundamentalK.nzCnt());
+    }
+
+    /** Укладка переиспользуется, пока не изменилась топология; новое ребро дает новую укладку. */
+    @Test
+    void planarEmbeddingCache() {
+        SchemaGraph<TestVertex, TestEdge> g = td.grid(10, 10);
+        PlanarCycleBasis<TestVertex, TestEdge> planar = new PlanarCycleBasis<>(g);
+        IMatrixCsr first = planar.getCycles(null, traversing);
+        assertSameMatrix(first, planar.getCycles(null, traversing));
+        List<TestVertex> v = g.getVertices();
+        g.addEdge(v.get(0), v.get(11), new TestEdge());
+        IMatrixCsr K = planar.getCycles(null, traversing);
+        assertEquals(first.numRows() + 1, K.numRows());
+        assertBasis(K, DcMatrixOps.transpose(K, null), new ArrayList<>(g.getEdges()), v.size(), first.numRows() + 1);
+    }
+
+    /** K<sub>3,3</sub> не планарен: строится фундаментальный базис. */
+    @Test
+    void nonPlanarFallback() {
+        SchemaGraph<TestVertex, TestEdge> g = SchemaGraph.dc(3);
+        for (int i = 0; i < 6; i++) {
+            g.addVertex(new TestVertex(i, i), 3);
+        }
+        List<TestVertex> v = g.getVertices();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 3; j < 6; j++) {
+                g.addEdge(v.get(i), v.get(j), new TestEdge());
+            }
+        }
+        PlanarCycleBasis<TestVertex, TestEdge> planar = new PlanarCycleBasis<>(g);
+        IMatrixCsr K = planar.getCycles(null, traversing);
+        assertFalse(planar.isPlanar());
+        assertBasis(K, DcMatrixOps.transpose(K, null), new ArrayList<>(g.getEdges()), 6, 9 - 6 + 1);
+    }
+
+    @Test
+    void hortonGridFaces() {
+        IMatrixCsr K = new HortonCycleBasis<>(td.grid(30, 30)).getCycles(null, traversing);
+        assertEquals(29 * 29, K.numRows());
+        assertEquals(4 * 29 * 29, K.nzCnt());
+    }
+
+    @Test
+    void hortonFallsBackToFundamental() {
+        SchemaGraph<TestVertex, TestEdge> g = td.grid(10, 10);
+        HortonCycleBasis<TestVertex, TestEdge> horton = new HortonCycleBasis<>(g);
+        horton.setMaxCandidates(10);
+        IMatrixCsr expected = new SchemaGraphCycleBasis<>(g).getCycles(null, traversing);
+        assertSameMatrix(expected, horton.getCycles(null, traversing));
+    }
+
+    private Stream<SchemaGraph<TestVertex, TestEdge>> hortonTestData() {
+        return Stream.of(td.g1(), td.g2(), td.g3(), td.g4(), td.g5(), td.g6(), td.g7(), td.g8(), td.grid(30, 30),
+                         td.doubleTrack(200, 10), td.doubleTrack(201, 7));
+    }
+
+    private static ICircuitEdge edge(ICircuitNode src, ICircuitNode tgt, List<ICircuitEdge> edges) {
+        TestEdge e = new TestEdge();
+        e.setIndex(edges.size());
+        e.setSourceNode(src);
+        e.setTargetNode(tgt);
+        edges.add(e);
+        return e;
+    }
+
+    private static void assertSameMatrix(IMatrixCsr expected, IMatrixCsr actual) {
+        assertEquals(expected.numRows(), actual.numRows());
+        assertEquals(expected.numCols(), actual.numCols());
+        assertEquals(expected.nzCnt(), actual.nzCnt());
+        for (int i = 0; i <= expected.numRows(); i++) {
+            assertEquals(expected.rows.get(i), actual.rows.get(i));
+        }
+        for (int k = 0; k < expected.nzCnt(); k++) {
+            assertEquals(expected.col(k), actual.col(k));
+            assertEquals(expected.value(k), actual.value(k));
+        }
+    }
+
+    /** Строки K - замкнутые, линейно независимые контуры; K<sup>T</sup> совпадает с транспонированной K. */
+    private void assertBasis(IMatrixCsr K, IMatrixCsr KT, List<ICircuitEdge> edges, int verticesQty, int loopsQty) {
+        assertEquals(loopsQty, K.numRows());
+        assertEquals(edges.size(), K.numCols());
+        IMatrixCsr refKT = DcMatrixOps.transpose(K, null);
+        assertEquals(refKT.numRows(), KT.numRows());
+        assertEquals(refKT.numCols(), KT.numCols());
+        for (int i = 0; i < refKT.numRows(); i++) {
+            assertEquals(refKT.end(i) - refKT.begin(i), KT.end(i) - KT.begin(i));
+            for (int k = refKT.begin(i), l = KT.begin(i); k < refKT.end(i); k++, l++) {
+                assertEquals(refKT.col(k), KT.col(l));
+                assertEquals(refKT.value(k), KT.value(l));
+            }
+        }
+        DMatrixRMaj dense = new DMatrixRMaj(K.numRows(), K.numCols());
+        int[] balance = new int[verticesQty];
+        for (int i = 0; i < K.numRows(); i++) {
+            for (int k = K.begin(i); k < K.end(i); k++) {
+                ICircuitEdge e = edges.get(K.col(k));
+                balance[e.getSourceNode().getIndex()] += K.value(k);
+                balance[e.getTargetNode().getIndex()] -= K.value(k);
+                dense.set(i, K.col(k), K.value(k));
+            }
+            for (int v = 0; v < verticesQty; v++) {
+                assertEquals(0, balance[v]);
+            }
+        }
+        assertEquals(K.numRows(), MatrixFeatures_DDRM.rank(dense));
+    }
+
     private Stream<SchemaGraph<TestVertex, TestEdge>> getCyclesTestData() {
         return Stream.of(td.g1(), td.g2(), td.g3(), td.g4(), td.g5(), td.g6(), td.g7());
     }
@@ -64,7 +384,7 @@ class CycleBasisTest {
             int end = K.end(i);
             res[i] = new int[end - begin];
             for (int j = begin, idx = 0; j < end; j++, idx++) {
-                int k = (K.cols.get(j) + 1) * K.data.get(j);
+                int k = (K.col(j) + 1) * K.value(j);
                 res[i][idx] = k;
             }
         }
@@ -236,6 +236,79 @@ public class SchemaGraphTestDataProvider {
                                """, true);
     }
 
+    /**
+     * Прямоугольная решетка <code>rows&#215cols</code> вершин - модель сильно связанной сети. Ребра нумеруются
+     * в порядке обхода вершин по строкам: для каждой вершины - ребро вправо, затем ребро вниз.
+     */
+    public SchemaGraph<TestVertex, TestEdge> grid(int rows, int cols) {
+        SchemaGraph<TestVertex, TestEdge> g = SchemaGraph.dc(4);
+        for (int i = 0; i < rows * cols; i++) {
+            g.addVertex(new TestVertex(i, i), 4);
+        }
+        List<TestVertex> v = g.getVertices();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int i = r * cols + c;
+                if (c + 1 < cols) {
+                    g.addEdge(v.get(i), v.get(i + 1), new TestEdge());
+                }
+                if (r + 1 < rows) {
+                    g.addEdge(v.get(i), v.get(i + cols), new TestEdge());
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * <code>count</code> несвязанных решеток <code>rows&#215cols</code> (см. {@link #grid}) - модель схемы из многих
+     * фидерных зон. Вершины решеток чередуются: вершина <code>i</code> принадлежит решетке <code>i % count</code>.
+     */
+    public SchemaGraph<TestVertex, TestEdge> disjointGrids(int count, int rows, int cols) {
+        SchemaGraph<TestVertex, TestEdge> g = SchemaGraph.dc(4);
+        for (int i = 0; i < count * rows * cols; i++) {
+            g.addVertex(new TestVertex(i, i), 4);
+        }
+        List<TestVertex> v = g.getVertices();
+        for (int k = 0; k < count; k++) {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    int i = r * cols + c;
+                    if (c + 1 < cols) {
+                        g.addEdge(v.get(i * count + k), v.get((i + 1) * count + k), new TestEdge());
+                    }
+                    if (r + 1 < rows) {
+                        g.addEdge(v.get(i * count + k), v.get((i + cols) * count + k), new TestEdge());
+                    }
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Двухпутный участок из <code>spans</code> пролетов с перемычками между путями через каждые <code>step</code>
+     * пролетов и на концах. Вершины пути 1 - <code>0..spans</code>, пути 2 - <code>spans + 1..2 spans + 1</code>.
+     */
+    public SchemaGraph<TestVertex, TestEdge> doubleTrack(int spans, int step) {
+        SchemaGraph<TestVertex, TestEdge> g = SchemaGraph.dc(3);
+        for (int i = 0; i < 2 * (spans + 1); i++) {
+            g.addVertex(new TestVertex(i, i), 3);
+        }
+        List<TestVertex> v = g.getVertices();
+        for (int i = 0; i < spans; i++) {
+            g.addEdge(v.get(i), v.get(i + 1), new TestEdge());
+            g.addEdge(v.get(spans + 1 + i), v.get(spans + 2 + i), new TestEdge());
+        }
+        for (int i = 0; i <= spans; i += step) {
+            g.addEdge(v.get(i), v.get(spans + 1 + i), new TestEdge());
+        }
+        if (spans % step != 0) {
+            g.addEdge(v.get(spans), v.get(2 * spans + 1), new TestEdge());
+        }
+        return g;
+    }
+
     @NotNull
     private static <V extends ICircuitNode, E extends ICircuitEdge>
     SchemaGraph<V, E> fromDot(@NotNull String dot) {
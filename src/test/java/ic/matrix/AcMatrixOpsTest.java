@@ -1,6 +1,8 @@
 package ic.matrix;
 
 import org.ejml.data.Complex_F64;
+import org.ejml.data.DGrowArray;
+import org.ejml.data.IGrowArray;
 import org.ejml.data.ZMatrixRMaj;
 import org.ejml.dense.row.CommonOps_ZDRM;
 import org.ejml.dense.row.RandomMatrices_ZDRM;
@@ -8,12 +10,19 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import ru.vniizht.asuterkortes.counter.latticemodel.DynamicComplexArray;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
 import static ic.matrix.util.IcMatrixTestHelper.randomDenseZMatrix;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class AcMatrixOpsTest {
@@ -80,6 +89,221 @@ class AcMatrixOpsTest {
         assertArrayEquals(refKZKT.data, KZKT.data, 0.5e-6);
     }
 
+    @Test
+    public void KZKTPattern() {
+        KZKTPattern pattern = new KZKTPattern().symbolicAc(K, Z, KT);
+        measureTimeMs("symbolic", timesToRepeat, () -> pattern.symbolicAc(K, Z, KT));
+        CommonOps_ZDRM.mult(refK, refZ, refKZ);
+        CommonOps_ZDRM.multTransB(refKZ, refK, refKZKT);
+        ZMatrixRMaj actual = AcMatrixOps.KZKT(pattern, Z, (ZMatrixRMaj) null);
+        measureTimeMs("numeric", timesToRepeat, () -> AcMatrixOps.KZKT(pattern, Z, actual));
+        assertArrayEquals(refKZKT.data, actual.data, 0.5e-6);
+    }
+
+    @Test
+    public void KZKTFused() {
+        CommonOps_ZDRM.mult(refK, refZ, refKZ);
+        CommonOps_ZDRM.multTransB(refKZ, refK, refKZKT);
+        IGrowArray gw = new IGrowArray();
+        DGrowArray gx = new DGrowArray();
+        ZMatrixRMaj actual = AcMatrixOps.KZKT(K, Z, KT, null, gw, gx);
+        measureTimeMs("fused", timesToRepeat, () -> AcMatrixOps.KZKT(K, Z, KT, actual, gw, gx));
+        assertArrayEquals(refKZKT.data, actual.data, 0.5e-6);
+    }
+
+    @Test
+    public void KZKTParallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ZMatrixRMaj expected = AcMatrixOps.KZKT(K, Z, KT, null, null, null);
+            ZMatrixRMaj actual = AcMatrixOps.KZKT(K, Z, KT, null, pool);
+            assertArrayEquals(expected.data, actual.data, 0);
+            List<IGrowArray> gw = new ArrayList<>();
+            List<DGrowArray> gx = new ArrayList<>();
+            AcMatrixOps.KZKT(K, Z, KT, actual, pool, gw, gx);
+            int[] w = gw.get(0).data;
+            double[] x = gx.get(0).data;
+            measureTimeMs("parallel", 2_000, () -> AcMatrixOps.KZKT(K, Z, KT, actual, pool, gw, gx));
+            assertArrayEquals(expected.data, actual.data, 0);
+            assertSame(w, gw.get(0).data);
+            assertSame(x, gx.get(0).data);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void couplingGroups() {
+        int[] groupSizes = { 10, 15, 25 };
+        ZMatrixRMaj refZ = new ZMatrixRMaj(numberOfEdges, numberOfEdges);
+        ZMatrixAc Z = new ZMatrixAc(numberOfBlockEdges, groupSizes);
+        Random r = ThreadLocalRandom.current();
+        for (int i = 0; i < numberOfBlockEdges; i++) {
+            refZ.set(i, i, r.nextDouble(1, 2), r.nextDouble());
+        }
+        for (int g = 0; g < Z.groupCount(); g++) {
+            for (int i = Z.groupBegin(g); i < Z.groupEnd(g); i++) {
+                for (int j = i; j < Z.groupEnd(g); j++) {
+                    double re = i == j ? r.nextDouble(1, 2) : r.nextDouble(0, 0.1);
+                    double im = r.nextDouble(0, 0.1);
+                    refZ.set(i, j, re, im);
+                    refZ.set(j, i, re, im);
+                }
+            }
+        }
+        fill(Z, refZ);
+        CommonOps_ZDRM.mult(refK, refZ, refKZ);
+        CommonOps_ZDRM.multTransB(refKZ, refK, refKZKT);
+        ZMatrixRMaj grouped = AcMatrixOps.KZKT(K, Z, KT, null, null, null);
+        ZMatrixAc singleZ = zMatrixAc(refZ);
+        ZMatrixRMaj single = AcMatrixOps.KZKT(K, singleZ, KT, null, null, null);
+        assertArrayEquals(refKZKT.data, grouped.data, 0.5e-6);
+        assertArrayEquals(refKZKT.data, AcMatrixOps.KZKT(new KZKTPattern().symbolicAc(K, Z, KT), Z, null).data, 0.5e-6);
+        ZMatrixRMaj J = AcMatrixOps.mult(KT, Icc, null);
+        ZMatrixRMaj refDu = new ZMatrixRMaj(numberOfEdges, 1);
+        CommonOps_ZDRM.mult(refZ, J, refDu);
+        assertArrayEquals(refDu.data, AcMatrixOps.mult(Z, J, null).data, 0.5e-6);
+        measureTimeMs("single group", timesToRepeat, () -> AcMatrixOps.KZKT(K, singleZ, KT, single, null, null));
+        measureTimeMs("coupling groups", timesToRepeat, () -> AcMatrixOps.KZKT(K, Z, KT, grouped, null, null));
+    }
+
+    @Test
+    public void offHeap() {
+        int[] groupSizes = { 20, 30 };
+        ZMatrixAc heapZ = new ZMatrixAc(numberOfBlockEdges, groupSizes);
+        ZMatrixAc Z = ZMatrixAc.offHeap(numberOfBlockEdges, groupSizes);
+        ZMatrixRMaj refZ = randomDenseZMatrix(numberOfBlockEdges, numberOfEdges, 1);
+        for (int g = 0; g < Z.groupCount(); g++) {
+            for (int i = Z.groupBegin(g); i < Z.groupEnd(g); i++) {
+                for (int j = i + 1; j < Z.groupEnd(g); j += 3) {
+                    refZ.set(i, j, 0.1, 0.2);
+                    refZ.set(j, i, 0.1, 0.2);
+                }
+            }
+        }
+        fill(heapZ, refZ);
+        fill(Z, refZ);
+        assertTrue(Z.isOffHeap());
+        assertEquals(heapZ.nzCnt(), Z.nzCnt());
+        ZMatrixRMaj expected = AcMatrixOps.KZKT(K, heapZ, KT, null, null, null);
+        ZMatrixRMaj actual = AcMatrixOps.KZKT(K, Z, KT, null, null, null);
+        assertArrayEquals(expected.data, actual.data, 0);
+        assertThrows(IllegalArgumentException.class, () -> new KZKTPattern().symbolicAc(K, Z, KT));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertArrayEquals(expected.data, AcMatrixOps.KZKT(K, Z, KT, null, pool).data, 0);
+        } finally {
+            pool.shutdown();
+        }
+        ZMatrixRMaj J = AcMatrixOps.mult(KT, Icc, null);
+        assertArrayEquals(AcMatrixOps.mult(heapZ, J, null).data, AcMatrixOps.mult(Z, J, null).data, 0);
+        measureTimeMs("heap", timesToRepeat, () -> AcMatrixOps.KZKT(K, heapZ, KT, expected, null, null));
+        measureTimeMs("off-heap", timesToRepeat, () -> AcMatrixOps.KZKT(K, Z, KT, actual, null, null));
+    }
+
+    @Test
+    public void symmetricStorage() {
+        int[] groupSizes = { numberOfEdges - numberOfBlockEdges };
+        ZMatrixRMaj refZ = new ZMatrixRMaj(numberOfEdges, numberOfEdges);
+        Random r = ThreadLocalRandom.current();
+        for (int i = 0; i < numberOfBlockEdges; i++) {
+            refZ.set(i, i, r.nextDouble(1, 2), r.nextDouble());
+        }
+        for (int i = numberOfBlockEdges; i < numberOfEdges; i++) {
+            for (int j = i; j < numberOfEdges; j++) {
+                double re = i == j ? r.nextDouble(1, 2) : r.nextDouble(0, 0.1);
+                double im = r.nextDouble(0, 0.1);
+                refZ.set(i, j, re, im);
+                refZ.set(j, i, re, im);
+            }
+        }
+        ZMatrixAc fullZ = new ZMatrixAc(numberOfBlockEdges, groupSizes);
+        ZMatrixAc Z = new ZMatrixAc(numberOfBlockEdges, groupSizes, true);
+        ZMatrixAc offHeapZ = ZMatrixAc.offHeap(numberOfBlockEdges, groupSizes, true);
+        fill(fullZ, refZ);
+        fill(Z, refZ);
+        fill(offHeapZ, refZ);
+        System.out.printf("nnz: full = %d, symmetric = %d%n", fullZ.nzCnt(), Z.nzCnt());
+        CommonOps_ZDRM.mult(refK, refZ, refKZ);
+        CommonOps_ZDRM.multTransB(refKZ, refK, refKZKT);
+        assertArrayEquals(refKZ.data, AcMatrixOps.KZ(K, Z, null).data, 0.5e-6);
+        assertArrayEquals(refKZ.data, AcMatrixOps.KZ(K, offHeapZ, null).data, 0.5e-6);
+        ZMatrixRMaj symmetric = AcMatrixOps.KZKT(K, Z, KT, null, null, null);
+        assertArrayEquals(refKZKT.data, symmetric.data, 0.5e-6);
+        assertArrayEquals(symmetric.data, AcMatrixOps.KZKT(K, offHeapZ, KT, null, null, null).data, 0);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertArrayEquals(symmetric.data, AcMatrixOps.KZKT(K, Z, KT, null, pool).data, 0);
+        } finally {
+            pool.shutdown();
+        }
+        assertThrows(IllegalArgumentException.class, () -> new KZKTPattern().symbolicAc(K, Z, KT));
+        ZMatrixRMaj J = AcMatrixOps.mult(KT, Icc, null);
+        ZMatrixRMaj refDu = new ZMatrixRMaj(numberOfEdges, 1);
+        CommonOps_ZDRM.mult(refZ, J, refDu);
+        assertArrayEquals(refDu.data, AcMatrixOps.mult(Z, J, null).data, 0.5e-6);
+        assertArrayEquals(refDu.data, AcMatrixOps.mult(offHeapZ, J, null).data, 0.5e-6);
+        ZMatrixRMaj JBatch = RandomMatrices_ZDRM.rectangle(numberOfEdges, 3, r);
+        ZMatrixRMaj refDuBatch = new ZMatrixRMaj(numberOfEdges, 3);
+        CommonOps_ZDRM.mult(refZ, JBatch, refDuBatch);
+        assertArrayEquals(refDuBatch.data, AcMatrixOps.mult(Z, JBatch, null).data, 0.5e-6);
+        ZMatrixRMaj full = AcMatrixOps.KZKT(K, fullZ, KT, null, null, null);
+        measureTimeMs("full", timesToRepeat, () -> AcMatrixOps.KZKT(K, fullZ, KT, full, null, null));
+        measureTimeMs("symmetric", timesToRepeat, () -> AcMatrixOps.KZKT(K, Z, KT, symmetric, null, null));
+    }
+
+    private void fill(ZMatrixAc Z, ZMatrixRMaj refZ) {
+        Complex_F64 z = new Complex_F64();
+        for (int i = 0; i < refZ.numRows; i++) {
+            for (int j = Z.isSymmetric() ? i : 0; j < refZ.numCols; j++) {
+                refZ.get(i, j, z);
+                if (z.real != 0 || z.imaginary != 0) {
+                    Z.insert(i, j, z.real, z.imaginary);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void prunedMutualImpedances() {
+        ZMatrixRMaj refZ = randomDenseZMatrix(numberOfBlockEdges, numberOfEdges, numberOfEdges - numberOfBlockEdges);
+        double minAbs = 0.9;
+        ZMatrixAc Z = ZMatrixAc.sparse(numberOfBlockEdges, numberOfEdges - numberOfBlockEdges);
+        Z.setMinMutualAbs(minAbs);
+        Complex_F64 z = new Complex_F64();
+        for (int i = 0; i < numberOfEdges; i++) {
+            for (int j = 0; j < numberOfEdges; j++) {
+                refZ.get(i, j, z);
+                if (z.real != 0 || z.imaginary != 0) {
+                    Z.insert(i, j, z.real, z.imaginary);
+                }
+            }
+        }
+        Z.compress();
+        ZMatrixAc fullZ = zMatrixAc(refZ);
+        for (int i = 0; i < numberOfEdges; i++) {
+            for (int j = 0; j < numberOfEdges; j++) {
+                refZ.get(i, j, z);
+                if (i != j && z.getMagnitude() < minAbs) {
+                    refZ.set(i, j, 0, 0);
+                }
+            }
+        }
+        CommonOps_ZDRM.mult(refK, refZ, refKZ);
+        CommonOps_ZDRM.multTransB(refKZ, refK, refKZKT);
+        ZMatrixRMaj pruned = AcMatrixOps.KZKT(K, Z, KT, null, null, null);
+        ZMatrixRMaj full = AcMatrixOps.KZKT(K, fullZ, KT, null, null, null);
+        assertArrayEquals(refKZKT.data, pruned.data, 0.5e-6);
+        assertArrayEquals(refKZ.data, AcMatrixOps.KZ(K, Z, null).data, 0.5e-6);
+        ZMatrixRMaj J = AcMatrixOps.mult(KT, Icc, null);
+        ZMatrixRMaj refDu = new ZMatrixRMaj(numberOfEdges, 1);
+        CommonOps_ZDRM.mult(refZ, J, refDu);
+        assertArrayEquals(refDu.data, AcMatrixOps.mult(Z, J, null).data, 0.5e-6);
+        System.out.printf("nnz: full = %d, pruned = %d%n", fullZ.nzCnt(), Z.nzCnt());
+        measureTimeMs("full", timesToRepeat, () -> AcMatrixOps.KZKT(K, fullZ, KT, full, null, null));
+        measureTimeMs("pruned", timesToRepeat, () -> AcMatrixOps.KZKT(K, Z, KT, pruned, null, null));
+    }
+
     @Test
     public void KxE() {
         int timesToRepeat = 200_000;
@@ -5,19 +5,26 @@ import org.ejml.data.DGrowArray;
 import org.ejml.data.DMatrixRMaj;
 import org.ejml.data.DMatrixSparseCSC;
 import org.ejml.data.IGrowArray;
+import org.ejml.dense.row.CommonOps_DDRM;
 import org.ejml.dense.row.RandomMatrices_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverSparse;
+import org.ejml.sparse.FillReducing;
 import org.ejml.sparse.csc.CommonOps_DSCC;
+import org.ejml.sparse.csc.factory.LinearSolverFactory_DSCC;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import ru.vniizht.asuterkortes.counter.latticemodel.DynamicDoubleArray;
 
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static ic.matrix.util.IcMatrixTestHelper.measureTimeMillis;
 import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SuppressWarnings({ "FieldCanBeLocal", "SameParameterValue" })
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -89,6 +96,102 @@ class DcMatrixOpsTest {
         assertArrayEquals(rMaj(refA), A[0].data, 0.5e-6);
     }
 
+    @Test
+    void KZKTSigned() {
+        IMatrixCsr Ks = new IMatrixCsr(0, true);
+        K.copyTo(Ks);
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        IMatrixCsr KTs = DcMatrixOps.transpose(Ks, null);
+        assertTrue(KTs.isSigned());
+        assertArrayEquals(rMaj(KT), rMaj(KTs), 0);
+        DMatrixRMaj A = DcMatrixOps.KZKT(K, Z, KT, null);
+        DMatrixRMaj As = DcMatrixOps.KZKT(Ks, Z, KTs, null);
+        measureTimeMs("int", timesToRepeat, () -> DcMatrixOps.KZKT(K, Z, KT, A));
+        measureTimeMs("signed", timesToRepeat, () -> DcMatrixOps.KZKT(Ks, Z, KTs, As));
+        assertArrayEquals(A.data, As.data, 0);
+        DMatrixRMaj Icc = RandomMatrices_DDRM.rectangle(K.numRows(), 1, ThreadLocalRandom.current());
+        assertArrayEquals(DcMatrixOps.mult(KT, Icc, null).data, DcMatrixOps.mult(KTs, Icc, null).data, 0);
+        DynamicDoubleArray KZI = DcMatrixOps.mult(I, Z, KT, null);
+        DynamicDoubleArray KZIs = DcMatrixOps.mult(I, Z, KTs, null);
+        assertArrayEquals(Arrays.copyOf(KZI.getData(), KZI.getSize()), Arrays.copyOf(KZIs.getData(), KZIs.getSize()), 0);
+    }
+
+    @Test
+    void KZKTParallel() {
+        int numRows = 600;
+        int numCols = 2_000;
+        ZMatrixDc Z = randomZMatrixDc(numCols);
+        IMatrixCsr K = kCsr(randomK(numRows, numCols, numCols / 20));
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            DMatrixRMaj expected = DcMatrixOps.KZKT(K, Z, KT, null);
+            DMatrixRMaj actual = DcMatrixOps.KZKT(K, Z, KT, null, pool);
+            measureTimeMs("serial", 20, () -> DcMatrixOps.KZKT(K, Z, KT, expected));
+            measureTimeMs("parallel", 20, () -> DcMatrixOps.KZKT(K, Z, KT, actual, pool));
+            assertArrayEquals(expected.data, actual.data, 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void KZKTCsc() {
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        DMatrixRMaj A = DcMatrixOps.KZKT(K, Z, KT, null);
+        DMatrixSparseCSC[] As = { null };
+        measureTimeMs("dense", timesToRepeat, () -> DcMatrixOps.KZKT(K, Z, KT, A));
+        measureTimeMs("csc", timesToRepeat, () -> As[0] = DcMatrixOps.KZKT(K, Z, KT, As[0], gw, gx));
+        DMatrixSparseCSC upper = As[0];
+        for (int j = 0; j < upper.numCols; j++) {
+            for (int k = upper.col_idx[j]; k < upper.col_idx[j + 1]; k++) {
+                assertTrue(upper.nz_rows[k] <= j);
+            }
+        }
+        DMatrixRMaj symmetric = new DMatrixRMaj(A.numRows, A.numCols);
+        for (int i = 0; i < A.numRows; i++) {
+            for (int j = 0; j < A.numCols; j++) {
+                symmetric.set(i, j, i <= j ? upper.get(i, j) : upper.get(j, i));
+            }
+        }
+        assertArrayEquals(A.data, symmetric.data, 0.5e-6);
+
+        DMatrixRMaj b = RandomMatrices_DDRM.rectangle(K.numRows(), 1, ThreadLocalRandom.current());
+        DMatrixRMaj expected = new DMatrixRMaj(K.numRows(), 1);
+        DMatrixRMaj actual = new DMatrixRMaj(K.numRows(), 1);
+        CommonOps_DDRM.solve(A, b, expected);
+        LinearSolverSparse<DMatrixSparseCSC, DMatrixRMaj> chol = LinearSolverFactory_DSCC.cholesky(FillReducing.NONE);
+        assertTrue(chol.setA(upper));
+        chol.solve(b, actual);
+        assertArrayEquals(expected.data, actual.data, 0.5e-6);
+    }
+
+    @Test
+    void KZKTPattern() {
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        KZKTPattern pattern = new KZKTPattern();
+        measureTimeMs("symbolic", timesToRepeat, () -> pattern.symbolicDc(K, KT));
+        DMatrixSparseCSC expected = DcMatrixOps.KZKT(K, Z, KT, null, gw, gx);
+        DMatrixSparseCSC actual = DcMatrixOps.KZKT(pattern, Z, (DMatrixSparseCSC) null);
+        DMatrixRMaj dense = DcMatrixOps.KZKT(pattern, Z, (DMatrixRMaj) null);
+        measureTimeMs("numeric, csc", timesToRepeat, () -> DcMatrixOps.KZKT(pattern, Z, actual));
+        measureTimeMs("numeric, dense", timesToRepeat, () -> DcMatrixOps.KZKT(pattern, Z, dense));
+        assertArrayEquals(
+                Arrays.copyOf(expected.col_idx, K.numRows() + 1),
+                Arrays.copyOf(actual.col_idx, K.numRows() + 1)
+        );
+        assertArrayEquals(
+                Arrays.copyOf(expected.nz_rows, expected.nz_length),
+                Arrays.copyOf(actual.nz_rows, actual.nz_length)
+        );
+        assertArrayEquals(
+                Arrays.copyOf(expected.nz_values, expected.nz_length),
+                Arrays.copyOf(actual.nz_values, actual.nz_length),
+                0.5e-6
+        );
+        assertArrayEquals(DcMatrixOps.KZKT(K, Z, KT, null).data, dense.data, 0.5e-6);
+    }
+
     @Test
     void KE() {
         DMatrixSparseCSC refKE = new DMatrixSparseCSC(K.numRows(), 1);
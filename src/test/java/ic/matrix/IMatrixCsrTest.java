@@ -5,6 +5,9 @@ import org.junit.jupiter.api.Test;
 import static ic.matrix.util.IcMatrixTestHelper.measureTimeMillis;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class IMatrixCsrTest {
 
@@ -25,21 +28,19 @@ class IMatrixCsrTest {
 
     @Test
     void initialState() {
-        assertEquals(0, K.data.getSize());
         assertEquals(1, K.rows.getSize());
         assertEquals(0, K.rows.get(0));
-        assertEquals(0, K.cols.getSize());
+        assertEquals(0, K.nzCnt());
         assertEquals(0, K.numRows());
     }
 
     @Test
     void addRow() {
         K.addRow();
-        assertEquals(0, K.data.getSize());
         assertEquals(2, K.rows.getSize());
         assertEquals(0, K.rows.get(0));
         assertEquals(0, K.rows.get(1));
-        assertEquals(0, K.cols.getSize());
+        assertEquals(0, K.nzCnt());
     }
 
     @Test
@@ -82,6 +83,31 @@ class IMatrixCsrTest {
         }
     }
 
+    @Test
+    void signed() {
+        IMatrixCsr S = new IMatrixCsr(numCols, true);
+        fillKMatrix(S);
+        assertTrue(S.isSigned());
+        for (int i = 0; i < data.length; i++) {
+            assertArrayEquals(data[i], denseRow(S, i));
+        }
+        IMatrixCsr ST = DcMatrixOps.transpose(S, null);
+        IMatrixCsr A = new IMatrixCsr(0);
+        ST.copyTo(A);
+        assertEquals(S.nzCnt(), A.nzCnt());
+        assertFalse(A.isSigned());
+        S.addRow();
+        assertThrows(IllegalArgumentException.class, () -> S.append(0, 2));
+        assertThrows(IllegalArgumentException.class, () -> S.append(0, 0));
+        IMatrixCsr AT = DcMatrixOps.transpose(A, new IMatrixCsr(0, true));
+        for (int i = 0; i < data.length; i++) {
+            assertArrayEquals(data[i], denseRow(AT, i));
+            for (int j = 0; j < numCols; j++) {
+                assertEquals(data[i][j], A.get(j, i));
+            }
+        }
+    }
+
     private void fillKMatrix(IMatrixCsr K) {
         for (int[] datum : data) {
             K.addRow();
@@ -97,8 +123,7 @@ class IMatrixCsrTest {
     private int[] denseRow(IMatrixCsr K, int rowIdx) {
         int[] res = new int[K.numCols()];
         for (int k = K.begin(rowIdx); k < K.end(rowIdx); k++) {
-            int colIdx = K.cols.get(k);
-            res[colIdx] = K.data.get(k);
+            res[K.col(k)] = K.value(k);
         }
         return res;
     }
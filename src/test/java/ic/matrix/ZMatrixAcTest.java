@@ -8,6 +8,9 @@ import org.junit.jupiter.api.Test;
 
 import static ic.matrix.util.IcMatrixTestHelper.randomDenseZMatrix;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ZMatrixAcTest {
 
@@ -24,6 +27,177 @@ class ZMatrixAcTest {
         }
     }
 
+    @Test
+    void couplingGroups() {
+        int[] groupSizes = { 4, 7, 9 };
+        ZMatrixAc Z = new ZMatrixAc(numberOfBlockEdges, groupSizes);
+        assertEquals(3, Z.groupCount());
+        assertEquals(totalNumberOfEdges, Z.size());
+        assertEquals(numberOfBlockEdges + 16 + 49 + 81, Z.data.getSize());
+        ZMatrixRMaj refZ = new ZMatrixRMaj(totalNumberOfEdges, totalNumberOfEdges);
+        for (int i = 0; i < numberOfBlockEdges; i++) {
+            refZ.set(i, i, i + 1, 1);
+        }
+        for (int g = 0; g < Z.groupCount(); g++) {
+            for (int i = Z.groupBegin(g); i < Z.groupEnd(g); i++) {
+                for (int j = Z.groupBegin(g); j < Z.groupEnd(g); j++) {
+                    refZ.set(i, j, i + 1, j + 1);
+                    Z.insert(i, j, i + 1, j + 1);
+                }
+            }
+        }
+        for (int i = 0; i < numberOfBlockEdges; i++) {
+            Z.insert(i, i, i + 1, 1);
+        }
+        assertArrayEquals(refZ.data, rMaj(Z), 0);
+        Z.reset(numberOfBlockEdges, wiringEdgesQty());
+        assertEquals(1, Z.groupCount());
+        assertEquals(numberOfBlockEdges + wiringEdgesQty() * wiringEdgesQty(), Z.data.getSize());
+    }
+
+    @Test
+    void symmetricUpperTriangle() {
+        int[] groupSizes = { 4, 7, 9 };
+        ZMatrixAc Z = new ZMatrixAc(numberOfBlockEdges, groupSizes, true);
+        assertTrue(Z.isSymmetric());
+        assertEquals(numberOfBlockEdges + 10 + 28 + 45, Z.data.getSize());
+        ZMatrixRMaj refZ = new ZMatrixRMaj(totalNumberOfEdges, totalNumberOfEdges);
+        for (int i = 0; i < numberOfBlockEdges; i++) {
+            refZ.set(i, i, i + 1, 1);
+            Z.insert(i, i, i + 1, 1);
+        }
+        for (int g = 0; g < Z.groupCount(); g++) {
+            for (int i = Z.groupBegin(g); i < Z.groupEnd(g); i++) {
+                for (int j = i; j < Z.groupEnd(g); j++) {
+                    double re = i + 1;
+                    double im = j + 1;
+                    refZ.set(i, j, re, im);
+                    refZ.set(j, i, re, im);
+                    Z.insert(i, j, re, im);
+                }
+            }
+        }
+        int lowerRow = Z.groupBegin(0) + 1;
+        assertThrows(IllegalArgumentException.class, () -> Z.insert(lowerRow, lowerRow - 1, 1, 1));
+        assertEquals(numberOfBlockEdges + 10 + 28 + 45, Z.nzCnt());
+        assertArrayEquals(refZ.data, rMaj(Z), 0);
+        ZMatrixAc offHeapZ = ZMatrixAc.offHeap(numberOfBlockEdges, groupSizes, true);
+        for (int i = 0; i < totalNumberOfEdges; i++) {
+            for (int j = i; j < totalNumberOfEdges; j++) {
+                if (refZ.getReal(i, j) != 0) {
+                    offHeapZ.insert(i, j, refZ.getReal(i, j), refZ.getImag(i, j));
+                }
+            }
+        }
+        assertEquals(Z.nzCnt(), offHeapZ.nzCnt());
+        assertArrayEquals(refZ.data, rMaj(offHeapZ), 0);
+    }
+
+    @Test
+    void sparseWithCutoff() {
+        double minAbs = 0.5;
+        ZMatrixRMaj refZ = randomDenseZMatrix(numberOfBlockEdges, totalNumberOfEdges, wiringEdgesQty() / 2);
+        ZMatrixAc Z = ZMatrixAc.sparse(numberOfBlockEdges, wiringEdgesQty());
+        Z.setMinMutualAbs(minAbs);
+        for (int step = 0; step < 2; step++) {
+            zMatrixAc(refZ, Z);
+            Z.compress();
+        }
+        int nzCnt = 0;
+        for (int i = 0; i < totalNumberOfEdges; i++) {
+            for (int j = 0; j < totalNumberOfEdges; j++) {
+                double re = refZ.getReal(i, j);
+                double im = refZ.getImag(i, j);
+                if (i != j && Math.hypot(re, im) < minAbs) {
+                    refZ.set(i, j, 0, 0);
+                } else if (re != 0 || im != 0) {
+                    nzCnt++;
+                }
+            }
+        }
+        assertEquals(nzCnt, Z.nzCnt());
+        assertEquals(nzCnt, Z.data.getSize());
+        assertEquals(Z.end(totalNumberOfEdges - 1), Z.data.getSize());
+        assertArrayEquals(refZ.data, rMaj(Z), 0);
+    }
+
+    @Test
+    void sparseRequiresCompress() {
+        ZMatrixAc Z = ZMatrixAc.sparse(1, 2);
+        Z.insert(0, 0, 1, 1);
+        Z.insert(1, 1, 2, 2);
+        Z.insert(1, 2, 0.1, 0.1);
+        assertEquals(0, Z.begin(0));
+        assertThrows(IllegalStateException.class, () -> Z.begin(1));
+        assertThrows(IllegalStateException.class, () -> Z.end(2));
+        assertThrows(IllegalStateException.class, Z::nzCnt);
+        IMatrixCsr K = new IMatrixCsr(3);
+        K.addRow();
+        K.append(1, 1);
+        assertThrows(IllegalStateException.class, () -> AcMatrixOps.KZ(K, Z, null));
+        Z.compress();
+        assertEquals(3, Z.nzCnt());
+        Z.insert(2, 2, 3, 3);
+        assertThrows(IllegalStateException.class, () -> Z.begin(2));
+        Z.compress();
+        assertEquals(4, Z.nzCnt());
+        Z.reset(1, 2);
+        assertThrows(IllegalStateException.class, () -> Z.begin(1));
+    }
+
+    @Test
+    void sparseMatchesGroupBlocks() {
+        ZMatrixRMaj refZ = randomDenseZMatrix(numberOfBlockEdges, totalNumberOfEdges, wiringEdgesQty() / 3);
+        ZMatrixAc Z = zMatrixAc(refZ, ZMatrixAc.sparse(numberOfBlockEdges, wiringEdgesQty()));
+        Z.compress();
+        ZMatrixAc blocksZ = zMatrixAc(refZ, null);
+        assertEquals(blocksZ.nzCnt(), Z.nzCnt());
+        assertArrayEquals(rMaj(blocksZ), rMaj(Z), 0);
+    }
+
+    @Test
+    void distanceCutoff() {
+        ZMatrixAc Z = new ZMatrixAc(0, 3);
+        Z.setMaxMutualDistance(10);
+        Z.insert(0, 0, 1, 1, 0);
+        Z.insert(0, 1, 0.1, 0.1, 5);
+        Z.insert(0, 2, 0.1, 0.1, 50);
+        assertEquals(2, Z.nzCnt());
+    }
+
+    @Test
+    void heapOverflowIsDiagnosed() {
+        IllegalArgumentException e = assertThrows(
+                IllegalArgumentException.class, () -> new ZMatrixAc(numberOfBlockEdges, 50_000)
+        );
+        assertTrue(e.getMessage().contains("ZMatrixAc.offHeap"));
+    }
+
+    @Test
+    void offHeapRowsSpanPages() {
+        int w = 1500; /* Строки в середине блока пересекают границу страниц OffHeapEntries. */
+        ZMatrixAc Z = ZMatrixAc.offHeap(numberOfBlockEdges, new int[] { w });
+        for (int i = 0; i < numberOfBlockEdges; i++) {
+            Z.insert(i, i, i, 1);
+        }
+        int n = numberOfBlockEdges + w;
+        for (int i = numberOfBlockEdges; i < n; i++) {
+            Z.insert(i, i, i, -1);
+            Z.insert(i, n - 1 - (i - numberOfBlockEdges), 0.5, i);
+        }
+        Complex_F64 z = new Complex_F64();
+        for (int i = 0; i < n; i++) {
+            Z.get(i, i, z);
+            assertEquals(i, z.real);
+            if (i >= numberOfBlockEdges) {
+                int j = n - 1 - (i - numberOfBlockEdges);
+                Z.get(i, j, z);
+                assertEquals(i, z.imaginary);
+            }
+        }
+        assertEquals(numberOfBlockEdges + 2L * w, Z.nzCnt());
+    }
+
     private double[] rMaj(ZMatrixAc Z) {
         int sz = Z.size();
         double[] res = new double[2 * sz * sz];
@@ -0,0 +1,372 @@
+package ic.solver;
+
+import graph.CycleBasis;
+import graph.GraphUtils;
+import graph.SchemaGraph;
+import graph.data.SchemaGraphTestDataProvider;
+import ic.matrix.IMatrixCsr;
+import ic.matrix.VectorAc;
+import ic.matrix.ZMatrixAc;
+import org.ejml.data.ZMatrixRMaj;
+import org.ejml.dense.row.CommonOps_ZDRM;
+import org.ejml.dense.row.factory.LinearSolverFactory_ZDRM;
+import org.ejml.interfaces.decomposition.DecompositionInterface;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.jgrapht.graph.TestEdge;
+import org.jgrapht.graph.TestVertex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AcMeshSolverTest {
+
+    private final int timesToRepeat = 20_000;
+    private final SchemaGraphTestDataProvider td = new SchemaGraphTestDataProvider();
+    private final SchemaGraph<TestVertex, TestEdge> graph = td.g7();
+    private final int numEdges = graph.getEdges().size();
+    private final int numBlockEdges = 40;
+    private final CycleBasis<TestVertex, TestEdge, SchemaGraph<TestVertex, TestEdge>> basis = GraphUtils.cycleBasis(graph);
+    private final Random r = ThreadLocalRandom.current();
+
+    @Test
+    void solve() {
+        solve(new AcMeshSolver());
+    }
+
+    @Test
+    void solvePacked() {
+        solve(new AcMeshSolver(new ComplexSymmetricLdl(true)));
+    }
+
+    @Test
+    void solveLu() {
+        solve(new AcMeshSolver(LinearSolverFactory_ZDRM.lu(16)));
+    }
+
+    @Test
+    void solveIterative() {
+        solve(new AcMeshSolver(new ComplexSymmetricCocg()));
+    }
+
+    @Test
+    void solveMatrixFree() {
+        solve(new AcMeshSolver(new ComplexSymmetricCocg(), true));
+    }
+
+    @Test
+    void solveMatrixFreeOffHeapSymmetric() {
+        AcMeshSolver solver = new AcMeshSolver(new ComplexSymmetricCocg(), true);
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        ZMatrixRMaj refZ = randomZ();
+        ZMatrixAc Z = fill(ZMatrixAc.offHeap(numBlockEdges, new int[] { numEdges - numBlockEdges }, true), refZ);
+        VectorAc E = vectorAc(randomVector(3));
+        VectorAc I = vectorAc(randomVector(5));
+        solver.setImpedances(Z);
+        assertArrayEquals(refJ(solver.getK(), refZ, E, I).data, solver.solve(E, I).data, 0.5e-6);
+    }
+
+    private void solve(AcMeshSolver solver) {
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        for (int step = 0; step < 5; step++) {
+            ZMatrixRMaj refZ = randomZ();
+            ZMatrixAc Z = zMatrixAc(refZ);
+            VectorAc E = vectorAc(randomVector(3));
+            VectorAc I = vectorAc(randomVector(5));
+            solver.setImpedances(Z);
+            ZMatrixRMaj J = solver.solve(E, I);
+            ZMatrixRMaj refJ = refJ(solver.getK(), refZ, E, I);
+            assertArrayEquals(refJ.data, J.data, 0.5e-6);
+            ZMatrixRMaj refDu = new ZMatrixRMaj(numEdges, 1);
+            CommonOps_ZDRM.mult(refZ, refJ, refDu);
+            assertArrayEquals(refDu.data, solver.getDU().data, 0.5e-6);
+        }
+    }
+
+    @Test
+    void solveWithoutImpedances() {
+        AcMeshSolver solver = new AcMeshSolver();
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        VectorAc E = vectorAc(randomVector(3));
+        VectorAc I = vectorAc(randomVector(5));
+        assertThrows(IllegalStateException.class, () -> solver.solve(E, I));
+        assertThrows(IllegalStateException.class, () -> solver.solveBatch(List.of(E), List.of(I)));
+    }
+
+    @Test
+    void factorizationIsReusedWhenOnlyRhsChanges() {
+        CountingSolver counting = new CountingSolver();
+        AcMeshSolver solver = new AcMeshSolver(counting);
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        ZMatrixRMaj refZ = randomZ();
+        ZMatrixAc Z = zMatrixAc(refZ);
+        solver.setImpedances(Z);
+        VectorAc[] E = { vectorAc(randomVector(3)), vectorAc(randomVector(3)) };
+        VectorAc I = vectorAc(randomVector(5));
+        for (VectorAc e : E) {
+            ZMatrixRMaj J = solver.solve(e, I);
+            assertArrayEquals(refJ(solver.getK(), refZ, e, I).data, J.data, 0.5e-6);
+        }
+        assertEquals(1, counting.factorizations);
+        int[] step = { 0 };
+        measureTimeMs("solve", timesToRepeat, () -> solver.solve(E[step[0]++ % 2], I));
+        assertEquals(1, counting.factorizations);
+        solver.setImpedances(Z);
+        solver.solve(E[0], I);
+        assertEquals(2, counting.factorizations);
+        measureTimeMs("setImpedances + solve", timesToRepeat, () -> {
+            solver.setImpedances(Z);
+            solver.solve(E[0], I);
+        });
+    }
+
+    /** Решатель, считающий факторизации ({@link LinearSolverDense#setA}). */
+    private static class CountingSolver implements LinearSolverDense<ZMatrixRMaj> {
+
+        private final ComplexSymmetricLdl solver = new ComplexSymmetricLdl();
+        private int factorizations;
+
+        @Override
+        public boolean setA(ZMatrixRMaj A) {
+            factorizations++;
+            return solver.setA(A);
+        }
+
+        @Override
+        public double quality() {
+            return solver.quality();
+        }
+
+        @Override
+        public void solve(ZMatrixRMaj B, ZMatrixRMaj X) {
+            solver.solve(B, X);
+        }
+
+        @Override
+        public void invert(ZMatrixRMaj A_inv) {
+            solver.invert(A_inv);
+        }
+
+        @Override
+        public boolean modifiesA() {
+            return solver.modifiesA();
+        }
+
+        @Override
+        public boolean modifiesB() {
+            return solver.modifiesB();
+        }
+
+        @Override
+        public <D extends DecompositionInterface> D getDecomposition() {
+            return solver.getDecomposition();
+        }
+    }
+
+    @Test
+    void solveBatch() {
+        solveBatch(new AcMeshSolver());
+        solveBatch(new AcMeshSolver(new ComplexSymmetricLdl(true)));
+        solveBatch(new AcMeshSolver(LinearSolverFactory_ZDRM.lu(16)));
+    }
+
+    private void solveBatch(AcMeshSolver solver) {
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        int m = 16;
+        ZMatrixAc Z = zMatrixAc(randomZ());
+        solver.setImpedances(Z);
+        List<VectorAc> E = new ArrayList<>();
+        List<VectorAc> I = new ArrayList<>();
+        for (int c = 0; c < m; c++) {
+            E.add(vectorAc(randomVector(3)));
+            I.add(vectorAc(randomVector(5)));
+        }
+        ZMatrixRMaj J = solver.solveBatch(E, I).copy();
+        ZMatrixRMaj dU = solver.getDUBatch().copy();
+        for (int c = 0; c < m; c++) {
+            solver.solve(E.get(c), I.get(c));
+            assertArrayEquals(solver.getJ().data, CommonOps_ZDRM.extract(J, 0, numEdges, c, c + 1).data, 1e-9);
+            assertArrayEquals(solver.getDU().data, CommonOps_ZDRM.extract(dU, 0, numEdges, c, c + 1).data, 1e-9);
+        }
+        measureTimeMs("solve x " + m, timesToRepeat / m, () -> {
+            for (int c = 0; c < m; c++) {
+                solver.solve(E.get(c), I.get(c));
+            }
+        });
+        measureTimeMs("solveBatch(" + m + ")", timesToRepeat / m, () -> solver.solveBatch(E, I));
+    }
+
+    @Test
+    void lowRankUpdate() {
+        lowRankUpdate(new AcMeshSolver());
+        lowRankUpdate(new AcMeshSolver(LinearSolverFactory_ZDRM.lu(16)));
+    }
+
+    @Test
+    void lowRankUpdateMatrixFree() {
+        AcMeshSolver solver = new AcMeshSolver(new ComplexSymmetricCocg(), true);
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        solver.setMaxUpdateRank(4);
+        ZMatrixRMaj refZ = randomZ();
+        ZMatrixAc Z = zMatrixAc(refZ);
+        VectorAc E = vectorAc(randomVector(3));
+        VectorAc I = vectorAc(randomVector(5));
+        solver.setImpedances(Z);
+        solver.solve(E, I);
+        for (int step = 0; step < 6; step++) {
+            /* Оператор читает Z по ссылке: поправка по формуле Вудбери учла бы изменение дважды. */
+            setDiagonal(refZ, Z, step % numBlockEdges);
+            solver.setImpedances(Z);
+            ZMatrixRMaj J = solver.solve(E, I);
+            assertEquals(0, solver.getUpdateRank());
+            assertArrayEquals(refJ(solver.getK(), refZ, E, I).data, J.data, 0.5e-6);
+        }
+    }
+
+    private void lowRankUpdate(AcMeshSolver solver) {
+        int maxRank = 4;
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        solver.setMaxUpdateRank(maxRank);
+        ZMatrixRMaj refZ = randomZ();
+        ZMatrixAc Z = zMatrixAc(refZ);
+        VectorAc E = vectorAc(randomVector(3));
+        VectorAc I = vectorAc(randomVector(5));
+        solver.setImpedances(Z);
+        solver.solve(E, I);
+        for (int step = 0; step < 12; step++) {
+            /* Поезд переходит на следующее ребро блока. */
+            setDiagonal(refZ, Z, step % numBlockEdges);
+            solver.setImpedances(Z);
+            ZMatrixRMaj J = solver.solve(E, I);
+            assertEquals((step + 1) % (maxRank + 1), solver.getUpdateRank());
+            assertArrayEquals(refJ(solver.getK(), refZ, E, I).data, J.data, 0.5e-6);
+        }
+        /* Изменение сопротивления ребра тяговой сети требует полной факторизации. */
+        setDiagonal(refZ, Z, numBlockEdges);
+        solver.setImpedances(Z);
+        assertArrayEquals(refJ(solver.getK(), refZ, E, I).data, solver.solve(E, I).data, 0.5e-6);
+        assertEquals(0, solver.getUpdateRank());
+        AcMeshSolver full = new AcMeshSolver();
+        full.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        measureTimeMs("refactorize", timesToRepeat, () -> {
+            setDiagonal(refZ, Z, 0);
+            full.setImpedances(Z);
+            full.solve(E, I);
+        });
+        measureTimeMs("low-rank update", timesToRepeat, () -> {
+            setDiagonal(refZ, Z, 0);
+            solver.setImpedances(Z);
+            solver.solve(E, I);
+        });
+        assertArrayEquals(refJ(solver.getK(), refZ, E, I).data, solver.getJ().data, 0.5e-6);
+    }
+
+    /** Новое собственное сопротивление ребра (для ребра тяговой сети диагональ - первый элемент строки). */
+    private void setDiagonal(ZMatrixRMaj refZ, ZMatrixAc Z, int edge) {
+        double re = r.nextDouble(1, 2);
+        double im = r.nextDouble(0, 1);
+        refZ.set(edge, edge, re, im);
+        Z.data.set(Z.begin(edge), re, im);
+    }
+
+    private ZMatrixRMaj refJ(IMatrixCsr K, ZMatrixRMaj Z, VectorAc E, VectorAc I) {
+        int n = K.numRows();
+        ZMatrixRMaj k = dense(K);
+        ZMatrixRMaj kz = new ZMatrixRMaj(n, numEdges);
+        CommonOps_ZDRM.mult(k, Z, kz);
+        ZMatrixRMaj kzkt = new ZMatrixRMaj(n, n);
+        CommonOps_ZDRM.multTransB(kz, k, kzkt);
+        ZMatrixRMaj rhs = new ZMatrixRMaj(n, 1);
+        CommonOps_ZDRM.mult(k, dense(E), rhs);
+        ZMatrixRMaj kzi = new ZMatrixRMaj(n, 1);
+        CommonOps_ZDRM.mult(kz, dense(I), kzi);
+        CommonOps_ZDRM.subtract(rhs, kzi, rhs);
+        ZMatrixRMaj icc = new ZMatrixRMaj(n, 1);
+        CommonOps_ZDRM.solve(kzkt, rhs, icc);
+        ZMatrixRMaj j = new ZMatrixRMaj(numEdges, 1);
+        CommonOps_ZDRM.multTransA(k, icc, j);
+        return j;
+    }
+
+    /** Блочные ребра - только диагональ; ребра тяговой сети связаны слабой взаимоиндукцией. */
+    private ZMatrixRMaj randomZ() {
+        ZMatrixRMaj Z = new ZMatrixRMaj(numEdges, numEdges);
+        for (int i = 0; i < numEdges; i++) {
+            Z.set(i, i, r.nextDouble(1, 2), r.nextDouble(0, 1));
+            if (i >= numBlockEdges) {
+                for (int j = i + 1; j < numEdges; j++) {
+                    double re = r.nextDouble(0, 0.1);
+                    double im = r.nextDouble(0, 0.1);
+                    Z.set(i, j, re, im);
+                    Z.set(j, i, re, im);
+                }
+            }
+        }
+        return Z;
+    }
+
+    private ZMatrixAc zMatrixAc(ZMatrixRMaj M) {
+        return fill(new ZMatrixAc(numBlockEdges, numEdges - numBlockEdges), M);
+    }
+
+    private ZMatrixAc fill(ZMatrixAc res, ZMatrixRMaj M) {
+        for (int i = 0; i < M.numRows; i++) {
+            for (int j = res.isSymmetric() ? i : 0; j < M.numCols; j++) {
+                double re = M.getReal(i, j);
+                double im = M.getImag(i, j);
+                if (re != 0 || im != 0) {
+                    res.insert(i, j, re, im);
+                }
+            }
+        }
+        return res;
+    }
+
+    /** Задающие токи и ЭДС - только в блочных ребрах. */
+    private ZMatrixRMaj randomVector(int nzCnt) {
+        ZMatrixRMaj res = new ZMatrixRMaj(numEdges, 1);
+        for (int i = 0; i < nzCnt; i++) {
+            res.set(r.nextInt(0, numBlockEdges), 0, r.nextDouble(-1, 1), r.nextDouble(-1, 1));
+        }
+        return res;
+    }
+
+    private VectorAc vectorAc(ZMatrixRMaj V) {
+        VectorAc res = new VectorAc(V.numRows);
+        for (int i = 0; i < V.numRows; i++) {
+            double re = V.getReal(i, 0);
+            double im = V.getImag(i, 0);
+            if (re != 0 || im != 0) {
+                res.insert(i, re, im);
+            }
+        }
+        return res;
+    }
+
+    private ZMatrixRMaj dense(IMatrixCsr K) {
+        ZMatrixRMaj res = new ZMatrixRMaj(K.numRows(), K.numCols());
+        for (int i = 0; i < K.numRows(); i++) {
+            for (int j = K.begin(i); j < K.end(i); j++) {
+                res.set(i, K.col(j), K.value(j), 0);
+            }
+        }
+        return res;
+    }
+
+    private ZMatrixRMaj dense(VectorAc v) {
+        ZMatrixRMaj res = new ZMatrixRMaj(numEdges, 1);
+        for (int i = 0; i < numEdges; i++) {
+            res.set(i, 0, v.data.getRe(i), v.data.getIm(i));
+        }
+        return res;
+    }
+}
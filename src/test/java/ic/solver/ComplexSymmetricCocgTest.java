@@ -0,0 +1,113 @@
+package ic.solver;
+
+import org.ejml.data.ZMatrixRMaj;
+import org.ejml.dense.row.CommonOps_ZDRM;
+import org.ejml.dense.row.RandomMatrices_ZDRM;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ComplexSymmetricCocgTest {
+
+    private final int timesToRepeat = 200;
+    private final Random r = ThreadLocalRandom.current();
+
+    @Test
+    void solve() {
+        for (int n : new int[] { 1, 2, 7, 40 }) {
+            ZMatrixRMaj A = randomLoopMatrix(n);
+            ZMatrixRMaj B = RandomMatrices_ZDRM.rectangle(n, 3, r);
+            ZMatrixRMaj expected = new ZMatrixRMaj(n, 3);
+            CommonOps_ZDRM.solve(A, B, expected);
+            ComplexSymmetricCocg cocg = new ComplexSymmetricCocg();
+            ZMatrixRMaj a = A.copy();
+            assertTrue(cocg.setA(a));
+            ZMatrixRMaj X = new ZMatrixRMaj(1, 1);
+            cocg.solve(B, X);
+            assertArrayEquals(expected.data, X.data, 0.5e-6);
+            assertArrayEquals(A.data, a.data, 0);
+            assertTrue(cocg.getRelativeResidual() <= 1e-10);
+            assertTrue(cocg.quality() > 0 && cocg.quality() <= 1);
+        }
+    }
+
+    @Test
+    void warmStart() {
+        int n = 200;
+        ZMatrixRMaj A = randomLoopMatrix(n);
+        ZMatrixRMaj b = RandomMatrices_ZDRM.rectangle(n, 1, r);
+        ZMatrixRMaj x = new ZMatrixRMaj(1, 1);
+        ComplexSymmetricCocg cocg = new ComplexSymmetricCocg();
+        cocg.setA(A);
+        cocg.solve(b, x);
+        int cold = cocg.getIterations();
+        /* Следующий шаг: матрица немного изменилась. */
+        for (int i = 0; i < n; i++) {
+            int d = 2 * (i * n + i);
+            A.data[d] *= 1 + r.nextDouble(-1e-3, 1e-3);
+        }
+        cocg.setA(A);
+        cocg.solve(b, x);
+        int warm = cocg.getIterations();
+        System.out.printf("n = %d, iterations: cold = %d, warm = %d\n", n, cold, warm);
+        assertTrue(warm < cold);
+        ZMatrixRMaj expected = new ZMatrixRMaj(n, 1);
+        CommonOps_ZDRM.solve(A, b, expected);
+        assertArrayEquals(expected.data, x.data, 0.5e-6);
+        ZMatrixRMaj previous = x.copy();
+        ZMatrixRMaj work = new ZMatrixRMaj(n, n);
+        ComplexSymmetricLdl ldl = new ComplexSymmetricLdl();
+        measureTimeMs("LDLT", timesToRepeat, () -> {
+            work.setTo(A);
+            ldl.setA(work);
+            ldl.solve(b, expected);
+        });
+        measureTimeMs("COCG, warm start", timesToRepeat, () -> {
+            x.setTo(previous);
+            cocg.setA(A);
+            cocg.solve(b, x);
+        });
+    }
+
+    /** Вырожденная матрица: метод прерывается исключением, а не возвращает NaN как решение. */
+    @Test
+    void breakdown() {
+        ZMatrixRMaj A = new ZMatrixRMaj(2, 2);
+        for (int i = 0; i < 4; i++) {
+            A.data[2 * i] = 1;
+        }
+        ZMatrixRMaj b = new ZMatrixRMaj(2, 1);
+        b.data[0] = 1;
+        ComplexSymmetricCocg cocg = new ComplexSymmetricCocg();
+        assertTrue(cocg.setA(A));
+        assertThrows(IllegalStateException.class, () -> cocg.solve(b, new ZMatrixRMaj(1, 1)));
+        /* (r, r) = 1 + i * i = 0 без сопряжения. */
+        ZMatrixRMaj I = CommonOps_ZDRM.identity(2);
+        b.data[3] = 1;
+        assertTrue(cocg.setA(I));
+        assertThrows(IllegalStateException.class, () -> cocg.solve(b, new ZMatrixRMaj(1, 1)));
+    }
+
+    /** Комплексная симметричная матрица с положительно определенной вещественной частью. */
+    private ZMatrixRMaj randomLoopMatrix(int n) {
+        ZMatrixRMaj A = new ZMatrixRMaj(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+                double re = r.nextDouble(-1, 1);
+                double im = r.nextDouble(-1, 1);
+                A.set(i, j, re, im);
+                A.set(j, i, re, im);
+            }
+            A.set(i, i, n + r.nextDouble(0, 1), r.nextDouble(0, 2 * n));
+        }
+        return A;
+    }
+}
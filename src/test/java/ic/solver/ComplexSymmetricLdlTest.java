@@ -0,0 +1,103 @@
+package ic.solver;
+
+import org.ejml.data.ZMatrixRMaj;
+import org.ejml.dense.row.CommonOps_ZDRM;
+import org.ejml.dense.row.RandomMatrices_ZDRM;
+import org.ejml.dense.row.factory.LinearSolverFactory_ZDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ComplexSymmetricLdlTest {
+
+    private final int timesToRepeat = 200;
+    private final Random r = ThreadLocalRandom.current();
+
+    @Test
+    void solve() {
+        for (int n : new int[] { 1, 2, 7, 40 }) {
+            ZMatrixRMaj A = randomLoopMatrix(n);
+            ZMatrixRMaj B = RandomMatrices_ZDRM.rectangle(n, 3, r);
+            ZMatrixRMaj expected = new ZMatrixRMaj(n, 3);
+            CommonOps_ZDRM.solve(A, B, expected);
+            for (boolean packed : new boolean[] { false, true }) {
+                ComplexSymmetricLdl ldl = new ComplexSymmetricLdl(packed);
+                ZMatrixRMaj a = A.copy();
+                assertTrue(ldl.setA(a));
+                ZMatrixRMaj X = new ZMatrixRMaj(n, 3);
+                ldl.solve(B, X);
+                assertArrayEquals(expected.data, X.data, 0.5e-6);
+                if (packed) {
+                    assertArrayEquals(A.data, a.data, 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    void singular() {
+        ZMatrixRMaj A = new ZMatrixRMaj(2, 2);
+        A.set(0, 0, 1, 1);
+        A.set(0, 1, 1, 1);
+        A.set(1, 0, 1, 1);
+        A.set(1, 1, 1, 1);
+        assertFalse(new ComplexSymmetricLdl().setA(A));
+    }
+
+    @Test
+    void packedSizeOverflow() {
+        /* Порядок задается без выделения данных: размер проверяется до обращения к ним. */
+        ZMatrixRMaj A = new ZMatrixRMaj(1, 1);
+        A.numRows = A.numCols = 50_000;
+        assertThrows(IllegalArgumentException.class, () -> new ComplexSymmetricLdl(true).setA(A));
+    }
+
+    @Test
+    void decompositionIsNotExposed() {
+        assertThrows(UnsupportedOperationException.class, () -> new ComplexSymmetricLdl().getDecomposition());
+    }
+
+    @Test
+    void performance() {
+        int n = 200;
+        ZMatrixRMaj A = randomLoopMatrix(n);
+        ZMatrixRMaj work = new ZMatrixRMaj(n, n);
+        LinearSolverDense<ZMatrixRMaj> lu = LinearSolverFactory_ZDRM.lu(n);
+        ComplexSymmetricLdl dense = new ComplexSymmetricLdl();
+        ComplexSymmetricLdl packed = new ComplexSymmetricLdl(true);
+        measureTimeMs("LU", timesToRepeat, () -> {
+            work.setTo(A);
+            lu.setA(work);
+        });
+        measureTimeMs("LDLT", timesToRepeat, () -> {
+            work.setTo(A);
+            dense.setA(work);
+        });
+        measureTimeMs("LDLT, packed", timesToRepeat, () -> packed.setA(A));
+    }
+
+    /** Комплексная симметричная матрица с положительно определенной вещественной частью. */
+    private ZMatrixRMaj randomLoopMatrix(int n) {
+        ZMatrixRMaj A = new ZMatrixRMaj(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+                double re = r.nextDouble(-1, 1);
+                double im = r.nextDouble(-1, 1);
+                A.set(i, j, re, im);
+                A.set(j, i, re, im);
+            }
+            A.set(i, i, n + r.nextDouble(0, 1), r.nextDouble(0, 2 * n));
+        }
+        return A;
+    }
+}
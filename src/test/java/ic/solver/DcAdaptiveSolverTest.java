@@ -0,0 +1,89 @@
+package ic.solver;
+
+import graph.CycleBasis;
+import graph.GraphUtils;
+import graph.SchemaGraph;
+import graph.data.SchemaGraphTestDataProvider;
+import ic.matrix.DcMatrixOps;
+import ic.matrix.IMatrixCsr;
+import ic.matrix.KZKTPattern;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.RandomMatrices_DDRM;
+import org.jgrapht.graph.TestEdge;
+import org.jgrapht.graph.TestVertex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DcAdaptiveSolverTest {
+
+    private final SchemaGraphTestDataProvider td = new SchemaGraphTestDataProvider();
+    private final Random r = ThreadLocalRandom.current();
+
+    @Test
+    void calibrationIsPersisted(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("calibration").resolve("solver.properties");
+        SolverCalibration measured = SolverCalibration.loadOrMeasure(file);
+        System.out.printf("dense: %.4f нс/flop, sparse: %.4f нс/flop + %.1f нс/столбец\n",
+                          measured.getDenseNsPerFlop(), measured.getSparseNsPerFlop(), measured.getSparseNsPerColumn());
+        assertTrue(measured.getDenseNsPerFlop() > 0);
+        assertTrue(measured.getSparseNsPerFlop() > 0);
+        SolverCalibration loaded = SolverCalibration.loadOrMeasure(file);
+        assertEquals(measured.getDenseNsPerFlop(), loaded.getDenseNsPerFlop());
+        assertEquals(measured.getSparseNsPerFlop(), loaded.getSparseNsPerFlop());
+        assertEquals(measured.getSparseNsPerColumn(), loaded.getSparseNsPerColumn());
+        for (SchemaGraph<TestVertex, TestEdge> g : List.of(td.g6(), td.grid(10, 10), td.grid(30, 30))) {
+            DcAdaptiveSolver solver = new DcAdaptiveSolver(loaded);
+            KZKTPattern pattern = pattern(g);
+            solver.setPattern(pattern);
+            System.out.printf("n = %d, nnz = %d: %s\n", pattern.size(), pattern.nzCnt(), solver.isSparse() ? "sparse" : "dense");
+        }
+    }
+
+    @Test
+    void selection() {
+        KZKTPattern pattern = pattern(td.grid(12, 12));
+        DcAdaptiveSolver denseFavoured = new DcAdaptiveSolver(new SolverCalibration(1e-3, 1e3, 0));
+        DcAdaptiveSolver sparseFavoured = new DcAdaptiveSolver(new SolverCalibration(1e3, 1e-3, 0));
+        DcDenseCholesky reference = new DcDenseCholesky();
+        denseFavoured.setPattern(pattern);
+        sparseFavoured.setPattern(pattern);
+        reference.setPattern(pattern);
+        assertFalse(denseFavoured.isSparse());
+        assertTrue(sparseFavoured.isSparse());
+        ZMatrixDc Z = new ZMatrixDc(pattern.edgesCnt());
+        for (int i = 0; i < pattern.edgesCnt(); i++) {
+            Z.set(i, r.nextDouble(1, 2));
+        }
+        DMatrixRMaj B = RandomMatrices_DDRM.rectangle(pattern.size(), 2, r);
+        DMatrixRMaj expected = new DMatrixRMaj(pattern.size(), 2);
+        DMatrixRMaj actual = new DMatrixRMaj(pattern.size(), 2);
+        assertTrue(reference.setImpedances(Z));
+        reference.solve(B, expected);
+        for (DcAdaptiveSolver solver : new DcAdaptiveSolver[] { denseFavoured, sparseFavoured }) {
+            assertTrue(solver.setImpedances(Z));
+            solver.solve(B, actual);
+            assertArrayEquals(expected.data, actual.data, 0.5e-6);
+        }
+    }
+
+    private KZKTPattern pattern(SchemaGraph<TestVertex, TestEdge> graph) {
+        CycleBasis<TestVertex, TestEdge, SchemaGraph<TestVertex, TestEdge>> basis = GraphUtils.cycleBasis(graph);
+        IMatrixCsr K = basis.getCycles(null, CycleBasis.Traversing.QUEUE_BASED);
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        return new KZKTPattern().symbolicDc(K, KT);
+    }
+}
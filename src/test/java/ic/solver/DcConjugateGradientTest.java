@@ -0,0 +1,206 @@
+package ic.solver;
+
+import graph.CycleBasis;
+import graph.GraphUtils;
+import graph.SchemaGraph;
+import graph.data.SchemaGraphTestDataProvider;
+import ic.matrix.DcMatrixOps;
+import ic.matrix.IMatrixCsr;
+import ic.matrix.KZKTPattern;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.RandomMatrices_DDRM;
+import org.jgrapht.graph.TestEdge;
+import org.jgrapht.graph.TestVertex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DcConjugateGradientTest {
+
+    private final int timesToRepeat = 500;
+    private final SchemaGraphTestDataProvider td = new SchemaGraphTestDataProvider();
+    private final Random r = ThreadLocalRandom.current();
+
+    @Test
+    void solve() {
+        KZKTPattern pattern = pattern(td.g6());
+        DcDenseCholesky dense = new DcDenseCholesky();
+        DcConjugateGradient cg = new DcConjugateGradient();
+        dense.setPattern(pattern);
+        cg.setPattern(pattern);
+        for (int step = 0; step < 5; step++) {
+            ZMatrixDc Z = randomZ(pattern.edgesCnt());
+            DMatrixRMaj B = RandomMatrices_DDRM.rectangle(pattern.size(), 3, r);
+            DMatrixRMaj expected = new DMatrixRMaj(pattern.size(), 3);
+            DMatrixRMaj actual = new DMatrixRMaj(1, 1);
+            assertTrue(dense.setImpedances(Z));
+            assertTrue(cg.setImpedances(Z));
+            dense.solve(B, expected);
+            cg.solve(B, actual);
+            assertArrayEquals(expected.data, actual.data, 0.5e-6);
+        }
+    }
+
+    @Test
+    void matrixFree() {
+        CycleBasis<TestVertex, TestEdge, SchemaGraph<TestVertex, TestEdge>> basis = GraphUtils.cycleBasis(td.grid(20, 20));
+        IMatrixCsr K = basis.getCycles(null, CycleBasis.Traversing.QUEUE_BASED);
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        KZKTPattern pattern = new KZKTPattern().symbolicDc(K, KT);
+        ZMatrixDc Z = randomZ(KT.numRows());
+        DMatrixRMaj b = RandomMatrices_DDRM.rectangle(K.numRows(), 1, r);
+        DMatrixRMaj expected = new DMatrixRMaj(1, 1);
+        DMatrixRMaj actual = new DMatrixRMaj(1, 1);
+        DcConjugateGradient assembled = new DcConjugateGradient();
+        DcConjugateGradient free = new DcConjugateGradient(1e-10, 0, true);
+        assembled.setPattern(pattern);
+        assertFalse(free.usesPattern());
+        free.setTopology(K, KT);
+        assertTrue(assembled.setImpedances(Z));
+        assertTrue(free.setImpedances(Z));
+        assembled.solve(b, expected);
+        free.solve(b, actual);
+        System.out.printf("iterations: assembled = %d, matrix-free = %d\n", assembled.getIterations(), free.getIterations());
+        assertArrayEquals(expected.data, actual.data, 0.5e-6);
+        measureTimeMs("PCG, assembled", timesToRepeat / 10, () -> {
+            assembled.setImpedances(Z);
+            expected.zero();
+            assembled.solve(b, expected);
+        });
+        measureTimeMs("PCG, matrix-free", timesToRepeat / 10, () -> {
+            free.setImpedances(Z);
+            actual.zero();
+            free.solve(b, actual);
+        });
+    }
+
+    @Test
+    void warmStart() {
+        KZKTPattern pattern = pattern(td.grid(20, 20));
+        ZMatrixDc Z = randomZ(pattern.edgesCnt());
+        DMatrixRMaj b = RandomMatrices_DDRM.rectangle(pattern.size(), 1, r);
+        DMatrixRMaj x = new DMatrixRMaj(1, 1);
+        DMatrixRMaj expected = new DMatrixRMaj(pattern.size(), 1);
+        DcSparseCholesky cholesky = new DcSparseCholesky();
+        DcConjugateGradient cg = new DcConjugateGradient();
+        cholesky.setPattern(pattern);
+        cg.setPattern(pattern);
+        cg.setImpedances(Z);
+        cg.solve(b, x);
+        int cold = cg.getIterations();
+        /* Следующий шаг: сопротивления немного изменились. */
+        for (int i = 0; i < Z.size(); i++) {
+            Z.set(i, Z.get(i) * (1 + r.nextDouble(-1e-3, 1e-3)));
+        }
+        cg.setImpedances(Z);
+        cg.solve(b, x);
+        int warm = cg.getIterations();
+        System.out.printf("n = %d, iterations: cold = %d, warm = %d\n", pattern.size(), cold, warm);
+        assertTrue(warm < cold);
+        cholesky.setImpedances(Z);
+        cholesky.solve(b, expected);
+        assertArrayEquals(expected.data, x.data, 0.5e-6);
+        DMatrixRMaj previous = x.copy();
+        measureTimeMs("sparse Cholesky", timesToRepeat, () -> {
+            cholesky.setImpedances(Z);
+            cholesky.solve(b, expected);
+        });
+        measureTimeMs("PCG, warm start", timesToRepeat, () -> {
+            x.setTo(previous);
+            cg.setImpedances(Z);
+            cg.solve(b, x);
+        });
+    }
+
+    @Test
+    void multigrid() {
+        KZKTPattern pattern = pattern(td.grid(30, 30));
+        DcSparseCholesky cholesky = new DcSparseCholesky();
+        DcConjugateGradient jacobi = new DcConjugateGradient(1e-8, 100_000);
+        DcConjugateGradient amg = new DcConjugateGradient(1e-8, 0, DcConjugateGradient.Preconditioner.MULTIGRID);
+        cholesky.setPattern(pattern);
+        jacobi.setPattern(pattern);
+        amg.setPattern(pattern);
+        DMatrixRMaj b = RandomMatrices_DDRM.rectangle(pattern.size(), 1, r);
+        DMatrixRMaj expected = new DMatrixRMaj(1, 1);
+        DMatrixRMaj x = new DMatrixRMaj(1, 1);
+        /* Иерархия строится на первом шаге и переиспользуется при изменении сопротивлений. */
+        for (int step = 0; step < 3; step++) {
+            /* Сопротивления различаются на 2 порядка. */
+            ZMatrixDc Z = new ZMatrixDc(pattern.edgesCnt());
+            for (int i = 0; i < Z.size(); i++) {
+                Z.set(i, Math.pow(10, r.nextDouble(-1, 1)));
+            }
+            assertTrue(cholesky.setImpedances(Z));
+            assertTrue(jacobi.setImpedances(Z));
+            assertTrue(amg.setImpedances(Z));
+            cholesky.solve(b, expected);
+            x.zero();
+            jacobi.solve(b, x);
+            x.zero();
+            amg.solve(b, x);
+            System.out.printf("n = %d, iterations: Jacobi = %d, multigrid = %d\n",
+                    pattern.size(), jacobi.getIterations(), amg.getIterations());
+            assertTrue(amg.getIterations() < jacobi.getIterations());
+            assertArrayEquals(expected.data, x.data, 0.5e-6);
+        }
+        measureTimeMs("PCG, Jacobi", timesToRepeat / 50, () -> {
+            x.zero();
+            jacobi.solve(b, x);
+        });
+        measureTimeMs("PCG, multigrid", timesToRepeat / 50, () -> {
+            x.zero();
+            amg.solve(b, x);
+        });
+    }
+
+    /**
+     * Два контура с общим ребром и отрицательными сопротивлениями остальных ребер: диагональ положительна, но
+     * матрица [[1, 2], [2, 1]] знаконеопределена. Метод прерывается исключением, а не возвращает NaN как решение.
+     */
+    @Test
+    void indefinite() {
+        IMatrixCsr K = new IMatrixCsr(3);
+        K.addRow();
+        K.append(0, 1);
+        K.append(1, 1);
+        K.addRow();
+        K.append(1, 1);
+        K.append(2, 1);
+        KZKTPattern pattern = new KZKTPattern().symbolicDc(K, DcMatrixOps.transpose(K, null));
+        ZMatrixDc Z = new ZMatrixDc(3);
+        Z.set(0, -1);
+        Z.set(1, 2);
+        Z.set(2, -1);
+        DcConjugateGradient cg = new DcConjugateGradient();
+        cg.setPattern(pattern);
+        assertTrue(cg.setImpedances(Z));
+        DMatrixRMaj b = new DMatrixRMaj(new double[][] { { 1 }, { -1 } });
+        assertThrows(IllegalStateException.class, () -> cg.solve(b, new DMatrixRMaj(1, 1)));
+    }
+
+    private KZKTPattern pattern(SchemaGraph<TestVertex, TestEdge> graph) {
+        CycleBasis<TestVertex, TestEdge, SchemaGraph<TestVertex, TestEdge>> basis = GraphUtils.cycleBasis(graph);
+        IMatrixCsr K = basis.getCycles(null, CycleBasis.Traversing.QUEUE_BASED);
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        return new KZKTPattern().symbolicDc(K, KT);
+    }
+
+    private ZMatrixDc randomZ(int size) {
+        ZMatrixDc Z = new ZMatrixDc(size);
+        for (int i = 0; i < size; i++) {
+            Z.set(i, r.nextDouble(1, 2));
+        }
+        return Z;
+    }
+}
@@ -0,0 +1,253 @@
+package ic.solver;
+
+import graph.CycleBasis;
+import graph.GraphUtils;
+import graph.SchemaGraph;
+import graph.data.SchemaGraphTestDataProvider;
+import ic.matrix.IMatrixCsr;
+import ic.matrix.VectorDc;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.jetbrains.annotations.NotNull;
+import org.jgrapht.graph.TestEdge;
+import org.jgrapht.graph.TestVertex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DcMeshSolverTest {
+
+    private final int timesToRepeat = 20_000;
+    private final SchemaGraphTestDataProvider td = new SchemaGraphTestDataProvider();
+    private final SchemaGraph<TestVertex, TestEdge> graph = td.g6();
+    private final int numEdges = graph.getEdges().size();
+    private final CycleBasis<TestVertex, TestEdge, SchemaGraph<TestVertex, TestEdge>> basis = GraphUtils.cycleBasis(graph);
+
+    @Test
+    void solve() {
+        solve(new DcMeshSolver());
+    }
+
+    @Test
+    void solveSparse() {
+        solve(new DcMeshSolver(new DcSparseCholesky()));
+    }
+
+    @Test
+    void solveIterative() {
+        solve(new DcMeshSolver(new DcConjugateGradient()));
+    }
+
+    private void solve(DcMeshSolver solver) {
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        Random r = ThreadLocalRandom.current();
+        for (int step = 0; step < 5; step++) {
+            ZMatrixDc Z = randomZ(r);
+            VectorDc E = randomVector(r, 3);
+            VectorDc I = randomVector(r, 5);
+            solver.setImpedances(Z);
+            DMatrixRMaj J = solver.solve(E, I);
+            DMatrixRMaj refJ = refJ(solver.getK(), Z, E, I);
+            assertArrayEquals(refJ.data, J.data, 0.5e-6);
+            DMatrixRMaj refDu = new DMatrixRMaj(numEdges, 1);
+            CommonOps_DDRM.mult(diag(Z), refJ, refDu);
+            assertArrayEquals(refDu.data, solver.getDU().data, 0.5e-6);
+        }
+    }
+
+    @Test
+    void solveWithoutImpedances() {
+        DcMeshSolver solver = new DcMeshSolver();
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        Random r = ThreadLocalRandom.current();
+        VectorDc E = randomVector(r, 3);
+        VectorDc I = randomVector(r, 5);
+        assertThrows(IllegalStateException.class, () -> solver.solve(E, I));
+        assertThrows(IllegalStateException.class, () -> solver.solveBatch(List.of(E), List.of(I)));
+    }
+
+    @Test
+    void solveWithUnchangedImpedances() {
+        int[] factorizations = { 0 };
+        DcMeshSolver solver = new DcMeshSolver(new DcDenseCholesky() {
+            @Override
+            public boolean setImpedances(@NotNull ZMatrixDc Z) {
+                factorizations[0]++;
+                return super.setImpedances(Z);
+            }
+        });
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        Random r = ThreadLocalRandom.current();
+        ZMatrixDc Z = randomZ(r);
+        solver.setImpedances(Z);
+        VectorDc E = randomVector(r, 3);
+        VectorDc I = randomVector(r, 5);
+        measureTimeMs("solve", timesToRepeat, () -> solver.solve(E, I));
+        assertEquals(1, factorizations[0]);
+        solver.setImpedances(Z);
+        solver.solve(E, I);
+        assertEquals(2, factorizations[0]);
+        measureTimeMs("setImpedances + solve", timesToRepeat, () -> {
+            solver.setImpedances(Z);
+            solver.solve(E, I);
+        });
+        assertArrayEquals(refJ(solver.getK(), Z, E, I).data, solver.getJ().data, 0.5e-6);
+    }
+
+    @Test
+    void solveBatch() {
+        solveBatch(new DcMeshSolver());
+        solveBatch(new DcMeshSolver(new DcSparseCholesky()));
+    }
+
+    private void solveBatch(DcMeshSolver solver) {
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        Random r = ThreadLocalRandom.current();
+        int m = 16;
+        ZMatrixDc Z = randomZ(r);
+        solver.setImpedances(Z);
+        List<VectorDc> E = new ArrayList<>();
+        List<VectorDc> I = new ArrayList<>();
+        for (int c = 0; c < m; c++) {
+            E.add(randomVector(r, 3));
+            I.add(randomVector(r, 5));
+        }
+        DMatrixRMaj J = solver.solveBatch(E, I).copy();
+        DMatrixRMaj dU = solver.getDUBatch().copy();
+        for (int c = 0; c < m; c++) {
+            solver.solve(E.get(c), I.get(c));
+            assertArrayEquals(solver.getJ().data, CommonOps_DDRM.extractColumn(J, c, null).data, 1e-9);
+            assertArrayEquals(solver.getDU().data, CommonOps_DDRM.extractColumn(dU, c, null).data, 1e-9);
+        }
+        measureTimeMs("solve x " + m, timesToRepeat / m, () -> {
+            for (int c = 0; c < m; c++) {
+                solver.solve(E.get(c), I.get(c));
+            }
+        });
+        measureTimeMs("solveBatch(" + m + ")", timesToRepeat / m, () -> solver.solveBatch(E, I));
+    }
+
+    @Test
+    void lowRankUpdate() {
+        lowRankUpdate(new DcMeshSolver());
+        lowRankUpdate(new DcMeshSolver(new DcSparseCholesky()));
+    }
+
+    @Test
+    void lowRankUpdateMatrixFree() {
+        DcMeshSolver solver = new DcMeshSolver(new DcConjugateGradient(1e-12, 0, true));
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        solver.setMaxUpdateRank(4);
+        Random r = ThreadLocalRandom.current();
+        ZMatrixDc Z = randomZ(r);
+        VectorDc E = randomVector(r, 3);
+        VectorDc I = randomVector(r, 5);
+        solver.setImpedances(Z);
+        solver.solve(E, I);
+        for (int step = 0; step < 6; step++) {
+            /* Оператор читает Z по ссылке: поправка по формуле Вудбери учла бы изменение дважды. */
+            Z.set(step % numEdges, r.nextDouble(1, 2));
+            solver.setImpedances(Z);
+            DMatrixRMaj J = solver.solve(E, I);
+            assertEquals(0, solver.getUpdateRank());
+            assertArrayEquals(refJ(solver.getK(), Z, E, I).data, J.data, 0.5e-6);
+        }
+    }
+
+    private void lowRankUpdate(DcMeshSolver solver) {
+        int maxRank = 4;
+        solver.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        solver.setMaxUpdateRank(maxRank);
+        Random r = ThreadLocalRandom.current();
+        ZMatrixDc Z = randomZ(r);
+        VectorDc E = randomVector(r, 3);
+        VectorDc I = randomVector(r, 5);
+        solver.setImpedances(Z);
+        solver.solve(E, I);
+        for (int step = 0; step < 12; step++) {
+            /* Поезд переходит на следующее ребро: изменившиеся ребра накапливаются до полной факторизации. */
+            Z.set(step % numEdges, r.nextDouble(1, 2));
+            solver.setImpedances(Z);
+            DMatrixRMaj J = solver.solve(E, I);
+            assertEquals((step + 1) % (maxRank + 1), solver.getUpdateRank());
+            assertArrayEquals(refJ(solver.getK(), Z, E, I).data, J.data, 0.5e-6);
+        }
+        DcMeshSolver full = new DcMeshSolver();
+        full.setTopology(basis, CycleBasis.Traversing.QUEUE_BASED);
+        measureTimeMs("refactorize", timesToRepeat, () -> {
+            Z.set(0, r.nextDouble(1, 2));
+            full.setImpedances(Z);
+            full.solve(E, I);
+        });
+        measureTimeMs("low-rank update", timesToRepeat, () -> {
+            Z.set(0, r.nextDouble(1, 2));
+            solver.setImpedances(Z);
+            solver.solve(E, I);
+        });
+        assertArrayEquals(refJ(solver.getK(), Z, E, I).data, solver.getJ().data, 0.5e-6);
+    }
+
+    private DMatrixRMaj refJ(IMatrixCsr K, ZMatrixDc Z, VectorDc E, VectorDc I) {
+        DMatrixRMaj k = dense(K);
+        DMatrixRMaj z = diag(Z);
+        DMatrixRMaj kz = CommonOps_DDRM.mult(k, z, null);
+        DMatrixRMaj kzkt = CommonOps_DDRM.multTransB(kz, k, null);
+        DMatrixRMaj rhs = CommonOps_DDRM.mult(k, dense(E), null);
+        CommonOps_DDRM.multAdd(kz, dense(I), rhs);
+        DMatrixRMaj icc = new DMatrixRMaj(K.numRows(), 1);
+        CommonOps_DDRM.solve(kzkt, rhs, icc);
+        return CommonOps_DDRM.multTransA(k, icc, null);
+    }
+
+    private ZMatrixDc randomZ(Random r) {
+        ZMatrixDc Z = new ZMatrixDc(numEdges);
+        for (int i = 0; i < numEdges; i++) {
+            Z.set(i, r.nextDouble(1, 2));
+        }
+        return Z;
+    }
+
+    private VectorDc randomVector(Random r, int nzCnt) {
+        VectorDc v = new VectorDc(numEdges);
+        for (int i = 0; i < nzCnt; i++) {
+            int idx = r.nextInt(0, numEdges);
+            if (v.data.get(idx) == 0) {
+                v.insert(idx, r.nextDouble(-1, 1));
+            }
+        }
+        return v;
+    }
+
+    private DMatrixRMaj dense(IMatrixCsr K) {
+        DMatrixRMaj res = new DMatrixRMaj(K.numRows(), K.numCols());
+        for (int i = 0; i < K.numRows(); i++) {
+            for (int j = K.begin(i); j < K.end(i); j++) {
+                res.set(i, K.col(j), K.value(j));
+            }
+        }
+        return res;
+    }
+
+    private DMatrixRMaj dense(VectorDc v) {
+        DMatrixRMaj res = new DMatrixRMaj(numEdges, 1);
+        for (int i = 0; i < numEdges; i++) {
+            res.set(i, 0, v.data.get(i));
+        }
+        return res;
+    }
+
+    private DMatrixRMaj diag(ZMatrixDc Z) {
+        return CommonOps_DDRM.diag(Z.data);
+    }
+}
@@ -0,0 +1,90 @@
+package ic.solver;
+
+import graph.CycleBasis;
+import graph.GraphUtils;
+import graph.SchemaGraph;
+import graph.data.SchemaGraphTestDataProvider;
+import ic.matrix.DcMatrixOps;
+import ic.matrix.IMatrixCsr;
+import ic.matrix.KZKTPattern;
+import ic.matrix.ZMatrixDc;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.RandomMatrices_DDRM;
+import org.jgrapht.graph.TestEdge;
+import org.jgrapht.graph.TestVertex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static ic.matrix.util.IcMatrixTestHelper.measureTimeMs;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DcSparseCholeskyTest {
+
+    private final int timesToRepeat = 500;
+    private final SchemaGraphTestDataProvider td = new SchemaGraphTestDataProvider();
+    private final Random r = ThreadLocalRandom.current();
+
+    @Test
+    void solve() {
+        KZKTPattern pattern = pattern(td.g6());
+        DcDenseCholesky dense = new DcDenseCholesky();
+        DcSparseCholesky sparse = new DcSparseCholesky();
+        dense.setPattern(pattern);
+        sparse.setPattern(pattern);
+        for (int step = 0; step < 5; step++) {
+            ZMatrixDc Z = randomZ(pattern.edgesCnt());
+            DMatrixRMaj B = RandomMatrices_DDRM.rectangle(pattern.size(), 3, r);
+            DMatrixRMaj expected = new DMatrixRMaj(pattern.size(), 3);
+            DMatrixRMaj actual = new DMatrixRMaj(pattern.size(), 3);
+            assertTrue(dense.setImpedances(Z));
+            assertTrue(sparse.setImpedances(Z));
+            dense.solve(B, expected);
+            sparse.solve(B, actual);
+            assertArrayEquals(expected.data, actual.data, 0.5e-6);
+        }
+    }
+
+    @Test
+    void fillReducingOrdering() {
+        KZKTPattern pattern = pattern(td.grid(20, 20));
+        ZMatrixDc Z = randomZ(pattern.edgesCnt());
+        DMatrixRMaj b = RandomMatrices_DDRM.rectangle(pattern.size(), 1, r);
+        DMatrixRMaj x = new DMatrixRMaj(pattern.size(), 1);
+        DMatrixRMaj expected = new DMatrixRMaj(pattern.size(), 1);
+        DcDenseCholesky dense = new DcDenseCholesky();
+        DcSparseCholesky natural = new DcSparseCholesky(null);
+        DcSparseCholesky minDegree = new DcSparseCholesky();
+        dense.setPattern(pattern);
+        natural.setPattern(pattern);
+        minDegree.setPattern(pattern);
+        measureTimeMs("dense", timesToRepeat, () -> dense.setImpedances(Z));
+        measureTimeMs("sparse, natural order", timesToRepeat, () -> natural.setImpedances(Z));
+        measureTimeMs("sparse, minimum degree", timesToRepeat, () -> minDegree.setImpedances(Z));
+        System.out.printf("n = %d, nnz(A) = %d, nnz(L): natural = %d, minimum degree = %d\n",
+                          pattern.size(), pattern.nzCnt(), natural.nzCntL(), minDegree.nzCntL());
+        assertTrue(minDegree.nzCntL() <= natural.nzCntL());
+        dense.solve(b, expected);
+        minDegree.solve(b, x);
+        assertArrayEquals(expected.data, x.data, 0.5e-6);
+    }
+
+    private KZKTPattern pattern(SchemaGraph<TestVertex, TestEdge> graph) {
+        CycleBasis<TestVertex, TestEdge, SchemaGraph<TestVertex, TestEdge>> basis = GraphUtils.cycleBasis(graph);
+        IMatrixCsr K = basis.getCycles(null, CycleBasis.Traversing.QUEUE_BASED);
+        IMatrixCsr KT = DcMatrixOps.transpose(K, null);
+        return new KZKTPattern().symbolicDc(K, KT);
+    }
+
+    private ZMatrixDc randomZ(int size) {
+        ZMatrixDc Z = new ZMatrixDc(size);
+        for (int i = 0; i < size; i++) {
+            Z.set(i, r.nextDouble(1, 2));
+        }
+        return Z;
+    }
+}